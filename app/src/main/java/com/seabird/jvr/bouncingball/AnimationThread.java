@@ -1,35 +1,69 @@
 package com.seabird.jvr.bouncingball;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.Rect;
 import android.os.Handler;
 import android.support.v4.content.ContextCompat;
 import android.view.SurfaceHolder;
 
+import com.seabird.jvr.ballslibrary.BallStore;
+import com.seabird.jvr.ballslibrary.BilliardTable;
+import com.seabird.jvr.ballslibrary.ContactSolver;
+import com.seabird.jvr.ballslibrary.FrameMetrics;
+import com.seabird.jvr.ballslibrary.SimulationLoop;
+import com.seabird.jvr.ballslibrary.SnapshotExchange;
+import com.seabird.jvr.ballslibrary.StateSnapshot;
+import com.seabird.jvr.ballslibrary.SweptCollider;
+import com.seabird.jvr.ballslibrary.World;
+
 /**
  * Created by jvr on 28.08.2016.
+ * Drawing thread. The physics runs separately in a SimulationLoop
+ * with a fixed time step; this thread only picks up the latest
+ * state snapshot and draws the balls interpolated between the last
+ * two physics states, one step behind real time.
+ * The surface holder lock is taken for the drawing only.
+ * Frame timings go into the FrameMetrics of the simulation.
+ *
+ * With dirty rendering on (the default) only the union of what was
+ * drawn in the last frame and what is drawn now is locked, cleared
+ * and redrawn; if that covers more than DirtyRegion.FULL_REDRAW of
+ * the surface the whole canvas is redrawn as before.
  */
 public class AnimationThread extends Thread
 {
+    private static final double STEP_MILLI = 10;    // physics time step, sub-stepped per sensor sample
+    private static final float ARROW_WIDTH = 6f;
+
     private final Paint paint = new Paint( Paint.ANTI_ALIAS_FLAG );
+    private final Path arrow = new Path();      // reused every frame
+    private final SpriteCache sprites;
+    private long[] spriteKey = new long[0];     // sprites last used per ball
+    private Bitmap[] ballSprite = new Bitmap[0];
+    private Bitmap[] markerSprite = new Bitmap[0];
+    private float[] drawX = new float[0], drawY = new float[0];
+    private final DirtyRegion drawn = new DirtyRegion();      // this frame
+    private final DirtyRegion lastDrawn = new DirtyRegion();  // the frame before
+    private final DirtyRegion dirty = new DirtyRegion();
+    private final Rect dirtyRect = new Rect();
+    private volatile boolean dirtyRendering = true;
+    private boolean fullRedraw = true;      // next frame must paint everything
     private int canvasWidth = 200;
     private int canvasHeight = 400;
+    private volatile long surfaceSize = -1; // set by the UI thread: width high, height low half
+    private long appliedSize = -1;
     private boolean running = false;
 
-    private float accelX = 0;
-    private float accelY = 0;
-    private float accelZ = 0;
-
-    private long nowTime, newTime, delTime;
-
     SurfaceHolder threadHolder;
     Context threadContext;
     Handler threadHandler;
     BilliardTable table;
-    RollingBall ball;
+    SimulationLoop simulation;
 
     public AnimationThread( SurfaceHolder surfaceHolder, Context context, Handler handler, BilliardTable table )
     {
@@ -37,17 +71,47 @@ public class AnimationThread extends Thread
         threadHandler = handler;
         threadContext = context;
         this.table = table;
-        int clr = ContextCompat.getColor( threadContext, R.color.ball_ivory);
-        ball = new RollingBall(300,300,50,clr,table);
+        simulation = newSimulation( context, table );
+
+        // An 8th of the heap, at most; balls of one size and colour share a sprite
+        sprites = new SpriteCache( (int) Math.min( Runtime.getRuntime().maxMemory()/8, Integer.MAX_VALUE ) );
+    }
+
+    // The balls on the table and their physics thread, not started;
+    // driven by the accelerometer samples of the MainActivity
+    static SimulationLoop newSimulation( Context context, BilliardTable table )
+    {
+        int clr = ContextCompat.getColor( context, R.color.ball_ivory);
+        World world = new World( new BallStore( table, 1 ) );
+        world.getStore().friction = true;
+        world.getStore().sleep = true;
+        world.setSolver( new ContactSolver( world.getStore() ) );
+        world.setCollider( new SweptCollider( world.getStore() ) );
+        world.add( 300, 300, 50, clr );
+        SimulationLoop sim = new SimulationLoop( world, ((MainActivity) context).accelSamples, STEP_MILLI );
+        sim.setSubStepping( true );
+        return sim;
+    }
+
+    public FrameMetrics getMetrics()
+    {
+        return simulation.getMetrics();
+    }
+
+    // Redraw only what changed (true) or the whole surface each frame
+    public void setDirtyRendering( boolean b )
+    {
+        dirtyRendering = b;
+    }
+
+    public SimulationLoop getSimulation()
+    {
+        return simulation;
     }
 
     public void doInitParams()
     {
-        synchronized( threadHolder )
-        {
-            nowTime = System.currentTimeMillis();
-            delTime = 0;
-        }
+        simulation.resetClock();
     }
 
     //Set and reset running flag
@@ -56,79 +120,179 @@ public class AnimationThread extends Thread
         running = b;
     }
 
+    // Called on the UI thread; this thread takes the new size at the
+    // start of its next frame, the simulation before its next step
     public void setSurfaceSize( int width, int height )
     {
-        synchronized( threadHolder )
-        {
-            canvasWidth = width;
-            canvasHeight = height;
-
-            table.xMin = 0;
-            table.xMax = width;
-            table.yMin = 0;
-            table.yMax = height;
+        surfaceSize = ((long) width << 32) | (height & 0xFFFFFFFFL);
+        simulation.setTableSize( width, height );
+    }
 
-            doInitParams();
+    private void applySurfaceSize()
+    {
+        long size = surfaceSize;
+        if( size != appliedSize )
+        {
+            appliedSize = size;
+            canvasWidth = (int) (size >>> 32);
+            canvasHeight = (int) size;
+            fullRedraw = true;
         }
     }
 
     public void run()
     {
+        simulation.setRunning( true );
+        simulation.start();
+
+        SnapshotExchange exchange = simulation.getExchange();
+        FrameMetrics metrics = simulation.getMetrics();
+        long lag = simulation.getStepNanos();
+        long frameStart = 0;
+
         // forever - as long as running flag set
+        // unlockCanvasAndPost paces the loop to the display
         while( running )
         {
+            long t0 = System.nanoTime();
+            if( frameStart != 0 )
+            {
+                metrics.record( FrameMetrics.FRAME_INTERVAL, t0 - frameStart );
+            }
+            frameStart = t0;
+
+            applySurfaceSize();
+            StateSnapshot s = exchange.latest();
+            float alpha = s.alpha( t0 - lag );
+
             Canvas c = null;
             try
             {
-                c = threadHolder.lockCanvas( null );
+                layout( s, alpha );
+                c = threadHolder.lockCanvas( lockRect() );
+                long t1 = System.nanoTime();
+                metrics.record( FrameMetrics.LOCK_CANVAS, t1 - t0 );
                 synchronized( threadHolder )
                 {
                     if( c != null )
                     {
-                        synchronized(((MainActivity) threadContext).accelValues)
-                        {
-                            accelX = ((MainActivity) threadContext).accelValues.x;
-                            accelY = ((MainActivity) threadContext).accelValues.y;
-                            accelZ = ((MainActivity) threadContext).accelValues.z;
-                        }
-                        doDrawing( c );
+                        doDrawing( c, s );
+                        lastDrawn.set( drawn );
                     }
                 }
+                metrics.record( FrameMetrics.DRAW, System.nanoTime() - t1 );
             }
             finally
             {
                 if( c != null )
                 {
+                    long t2 = System.nanoTime();
                     threadHolder.unlockCanvasAndPost( c );
+                    metrics.record( FrameMetrics.POST, System.nanoTime() - t2 );
+                    metrics.countFrame();
                 }
             }
-            try{ Thread.sleep( 10 ); }
-            catch(InterruptedException ex){ Thread.currentThread().interrupt(); }
         }
+
+        simulation.setRunning( false );
+        boolean retry = true;
+        while( retry )
+        {
+            try
+            {
+                simulation.join();
+                retry = false;
+            }
+            catch( InterruptedException ex )
+            {
+            }
+        }
+    }
+
+    // Positions and sprites of this frame, balls alpha of the way
+    // from state 0 to state 1, and the region they cover
+    private void layout( StateSnapshot s, float alpha )
+    {
+        ensureSprites( s.count );
+        drawn.clear();
+        for( int i = 0; i < s.count; i++ )
+        {
+            float x = s.x0[i] + alpha*(s.x1[i] - s.x0[i]);
+            float y = s.y0[i] + alpha*(s.y1[i] - s.y0[i]);
+            long key = SpriteCache.key( s.color[i], s.radius[i] );
+            if( (ballSprite[i] == null) || (spriteKey[i] != key) )
+            {
+                // Only when a ball changes; the cache lookup boxes the key
+                ballSprite[i] = sprites.sprite( s.color[i], s.radius[i] );
+                markerSprite[i] = sprites.sprite( Color.RED, s.radius[i]/10 );
+                spriteKey[i] = key;
+            }
+            drawX[i] = x;
+            drawY[i] = y;
+            addSprite( ballSprite[i], x, y );
+            addSprite( markerSprite[i], x + s.mx[i], y + s.my[i] );
+        }
+
+        // The arrow: its ends, the barbs stick out by 0.1 of its length
+        float x0 = canvasWidth/2, y0 = canvasHeight/2;
+        float x1 = x0 + 20*s.ax, y1 = y0 + 20*s.ay;
+        float pad = 0.1f*(Math.abs( x1 - x0 ) + Math.abs( y1 - y0 )) + ARROW_WIDTH;
+        drawn.add( Math.min( x0, x1 ) - pad, Math.min( y0, y1 ) - pad,
+                   Math.max( x0, x1 ) + pad, Math.max( y0, y1 ) + pad );
     }
 
-    //This runs synchronized and does the actual drawing
-    //
-    private void doDrawing( Canvas canvas )
+    private void addSprite( Bitmap b, float x, float y )
     {
-        newTime = System.currentTimeMillis();
-        delTime = newTime - nowTime;
-        nowTime = newTime;
+        float w = 0.5f*b.getWidth();
+        float h = 0.5f*b.getHeight();
+        drawn.add( x - w, y - h, x + w, y + h );
+    }
+
+    // Rectangle to lock: last and this frame's drawing, or null for all
+    private Rect lockRect()
+    {
+        boolean partial = dirty.setUnion( lastDrawn, drawn, canvasWidth, canvasHeight );
+        if( !dirtyRendering || fullRedraw || !partial )
+        {
+            fullRedraw = false;
+            return null;
+        }
+        dirtyRect.set( dirty.left, dirty.top, dirty.right, dirty.bottom );
+        return dirtyRect;
+    }
 
+    //This runs synchronized and does the actual drawing; the canvas
+    //is clipped to the locked rectangle, so everything is drawn
+    private void doDrawing( Canvas canvas, StateSnapshot s )
+    {
         canvas.drawColor( 0xFF2E7D32 );
         paint.setStyle( Paint.Style.FILL );
-        fillArrow(canvas, canvasWidth/2, canvasHeight/2, (canvasWidth/2) + 20*accelX, (canvasHeight/2) + 20*accelY);
-        D3 a = new D3(accelX, accelY, accelZ);
-        ball.doStep( a, delTime );
-//        ball.railReflection( );
-        ball.draw(canvas);
+        fillArrow(canvas, canvasWidth/2, canvasHeight/2, (canvasWidth/2) + 20*s.ax, (canvasHeight/2) + 20*s.ay);
+
+        for( int i = 0; i < s.count; i++ )
+        {
+            sprites.draw( canvas, ballSprite[i], drawX[i], drawY[i] );
+            sprites.draw( canvas, markerSprite[i], drawX[i] + s.mx[i], drawY[i] + s.my[i] );
+        }
+    }
+
+    private void ensureSprites( int n )
+    {
+        if( ballSprite.length < n )
+        {
+            spriteKey = new long[n];
+            ballSprite = new Bitmap[n];
+            markerSprite = new Bitmap[n];
+            drawX = new float[n];
+            drawY = new float[n];
+        }
     }
 
     private void fillArrow(Canvas canvas, float x0, float y0, float x1, float y1)
     {
         paint.setColor(Color.YELLOW);
         paint.setStyle(Paint.Style.FILL_AND_STROKE);
-        paint.setStrokeWidth( 6f );
+        paint.setStrokeWidth( ARROW_WIDTH );
 
         float deltaX = x1 - x0;
         float deltaY = y1 - y0;
@@ -143,7 +307,8 @@ public class AnimationThread extends Thread
         float point_x_3 = x0 + (float) ((1 - frac) * deltaX - frac * deltaY);
         float point_y_3 = y0 + (float) ((1 - frac) * deltaY + frac * deltaX);
 
-        Path path = new Path();
+        Path path = arrow;
+        path.reset();
         path.setFillType(Path.FillType.EVEN_ODD);
 
         path.moveTo(x0,y0);
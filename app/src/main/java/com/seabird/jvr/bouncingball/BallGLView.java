@@ -0,0 +1,93 @@
+package com.seabird.jvr.bouncingball;
+
+import android.content.Context;
+import android.opengl.GLSurfaceView;
+import android.util.AttributeSet;
+import android.view.SurfaceHolder;
+
+import com.seabird.jvr.ballslibrary.BilliardTable;
+import com.seabird.jvr.ballslibrary.SimulationLoop;
+
+/**
+ * OpenGL ES 3.0 alternative to BallSurfaceView, chosen at startup
+ * by MainActivity. Same table and simulation; the balls are drawn
+ * by a BallRenderer on the GLSurfaceView render thread, which is
+ * paced by the display. The simulation runs while there is a surface.
+ * The activity must pass on onPause/onResume.
+ */
+public class BallGLView extends GLSurfaceView implements BallView
+{
+    private final BallRenderer renderer = new BallRenderer();
+    private SimulationLoop simulation;
+    Context mainContext;
+
+    BilliardTable table = new BilliardTable();
+
+    public BallGLView( Context context )
+    {
+        super( context );
+        Initialize( context );
+    }
+
+    public BallGLView( Context context, AttributeSet attrs )
+    {
+        super( context, attrs );
+        Initialize( context );
+    }
+
+    private void Initialize( Context context )
+    {
+        mainContext = context;
+        setEGLContextClientVersion( 3 );
+        setPreserveEGLContextOnPause( true );
+        setRenderer( renderer );
+        setFocusable( true );
+    }
+
+    @Override
+    public void surfaceCreated( SurfaceHolder holder )
+    {
+        super.surfaceCreated( holder );
+        table.xMax = holder.getSurfaceFrame().width();
+        table.yMax = holder.getSurfaceFrame().height();
+
+        simulation = AnimationThread.newSimulation( mainContext, table );
+        renderer.setSimulation( simulation );
+        simulation.setRunning( true );
+        simulation.start();
+    }
+
+    @Override
+    public void surfaceChanged( SurfaceHolder holder, int format, int width, int height )
+    {
+        super.surfaceChanged( holder, format, width, height );
+        // The table belongs to the simulation thread now
+        simulation.setTableSize( width, height );
+    }
+
+    @Override
+    public void surfaceDestroyed( SurfaceHolder holder )
+    {
+        renderer.setSimulation( null );
+        super.surfaceDestroyed( holder );
+
+        simulation.setRunning( false );
+        boolean retry = true;
+        while( retry )
+        {
+            try
+            {
+                simulation.join();
+                retry = false;
+            }
+            catch( InterruptedException e )
+            {
+            }
+        }
+    }
+
+    public SimulationLoop getSimulation()
+    {
+        return simulation;
+    }
+}
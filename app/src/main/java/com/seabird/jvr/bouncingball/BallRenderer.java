@@ -0,0 +1,215 @@
+package com.seabird.jvr.bouncingball;
+
+import android.opengl.GLES30;
+import android.opengl.GLSurfaceView;
+import android.util.Log;
+
+import com.seabird.jvr.ballslibrary.FrameMetrics;
+import com.seabird.jvr.ballslibrary.InstanceBuffer;
+import com.seabird.jvr.ballslibrary.SimulationLoop;
+import com.seabird.jvr.ballslibrary.StateSnapshot;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * OpenGL ES 3.0 renderer: all balls in one instanced draw call.
+ * A quad (4 corners, triangle strip) is drawn once per ball; the
+ * per-ball attributes come from an InstanceBuffer packed from the
+ * latest state snapshot, interpolated one step behind real time as
+ * in AnimationThread. The fragment shader cuts the disc and the red
+ * orientation marker out of the quad, with a one pixel soft edge.
+ *
+ * Frame intervals and the time to pack and issue the draw go into
+ * the FRAME_INTERVAL and DRAW histograms of the simulation.
+ */
+public class BallRenderer implements GLSurfaceView.Renderer
+{
+    private static final String TAG = "BallRenderer";
+
+    private static final String VERTEX_SHADER =
+            "#version 300 es\n" +
+            "uniform vec2 uSize;\n" +                       // surface in pixels
+            "layout(location = 0) in vec2 aCorner;\n" +     // -1..1
+            "layout(location = 1) in vec3 aBall;\n" +       // x, y, radius
+            "layout(location = 2) in vec2 aMarker;\n" +
+            "layout(location = 3) in vec3 aColor;\n" +
+            "out vec2 vPos;\n" +
+            "out vec2 vMarker;\n" +
+            "out vec3 vColor;\n" +
+            "out float vRadius;\n" +
+            "void main() {\n" +
+            "    vPos = aCorner*(1.1*aBall.z + 1.0);\n" +   // room for marker and edge
+            "    vMarker = aMarker;\n" +
+            "    vColor = aColor;\n" +
+            "    vRadius = aBall.z;\n" +
+            "    vec2 p = aBall.xy + vPos;\n" +
+            "    gl_Position = vec4( 2.0*p.x/uSize.x - 1.0, 1.0 - 2.0*p.y/uSize.y, 0.0, 1.0 );\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "#version 300 es\n" +
+            "precision mediump float;\n" +
+            "in vec2 vPos;\n" +
+            "in vec2 vMarker;\n" +
+            "in vec3 vColor;\n" +
+            "in float vRadius;\n" +
+            "out vec4 fragColor;\n" +
+            "void main() {\n" +
+            "    float disc = clamp( vRadius - length( vPos ), 0.0, 1.0 );\n" +
+            "    float marker = clamp( 0.1*vRadius - length( vPos - vMarker ), 0.0, 1.0 );\n" +
+            "    float a = max( disc, marker );\n" +
+            "    if( a <= 0.0 ) discard;\n" +
+            "    fragColor = vec4( mix( vColor, vec3( 1.0, 0.0, 0.0 ), marker ), a );\n" +
+            "}\n";
+
+    private static final float[] QUAD = { -1, -1,  1, -1,  -1, 1,  1, 1 };
+
+    private final InstanceBuffer instances = new InstanceBuffer( 64 );
+    private volatile SimulationLoop simulation;
+    private int program;
+    private int uSize;
+    private int vao;
+    private int instanceVbo;
+    private int width = 1, height = 1;
+    private long frameStart;
+
+    // Simulation to draw; null draws the empty table
+    public void setSimulation( SimulationLoop sim )
+    {
+        simulation = sim;
+    }
+
+    @Override
+    public void onSurfaceCreated( GL10 unused, EGLConfig config )
+    {
+        program = link( compile( GLES30.GL_VERTEX_SHADER, VERTEX_SHADER ),
+                        compile( GLES30.GL_FRAGMENT_SHADER, FRAGMENT_SHADER ) );
+        uSize = GLES30.glGetUniformLocation( program, "uSize" );
+
+        int[] ids = new int[2];
+        GLES30.glGenVertexArrays( 1, ids, 0 );
+        vao = ids[0];
+        GLES30.glGenBuffers( 2, ids, 0 );
+        int quadVbo = ids[0];
+        instanceVbo = ids[1];
+
+        GLES30.glBindVertexArray( vao );
+
+        FloatBuffer quad = ByteBuffer.allocateDirect( 4*QUAD.length )
+                                     .order( ByteOrder.nativeOrder() )
+                                     .asFloatBuffer();
+        quad.put( QUAD ).flip();
+        GLES30.glBindBuffer( GLES30.GL_ARRAY_BUFFER, quadVbo );
+        GLES30.glBufferData( GLES30.GL_ARRAY_BUFFER, 4*QUAD.length, quad, GLES30.GL_STATIC_DRAW );
+        GLES30.glEnableVertexAttribArray( 0 );
+        GLES30.glVertexAttribPointer( 0, 2, GLES30.GL_FLOAT, false, 0, 0 );
+
+        // One set of these per ball
+        int stride = InstanceBuffer.STRIDE;
+        GLES30.glBindBuffer( GLES30.GL_ARRAY_BUFFER, instanceVbo );
+        instanceAttribute( 1, 3, stride, InstanceBuffer.X );
+        instanceAttribute( 2, 2, stride, InstanceBuffer.MX );
+        instanceAttribute( 3, 3, stride, InstanceBuffer.RED );
+
+        GLES30.glBindVertexArray( 0 );
+
+        GLES30.glEnable( GLES30.GL_BLEND );
+        GLES30.glBlendFunc( GLES30.GL_SRC_ALPHA, GLES30.GL_ONE_MINUS_SRC_ALPHA );
+        GLES30.glClearColor( 0x2E/255f, 0x7D/255f, 0x32/255f, 1 );    // the felt
+    }
+
+    @Override
+    public void onSurfaceChanged( GL10 unused, int width, int height )
+    {
+        GLES30.glViewport( 0, 0, width, height );
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public void onDrawFrame( GL10 unused )
+    {
+        long t0 = System.nanoTime();
+        GLES30.glClear( GLES30.GL_COLOR_BUFFER_BIT );
+
+        SimulationLoop sim = simulation;
+        if( sim == null )
+        {
+            frameStart = 0;
+            return;
+        }
+        FrameMetrics metrics = sim.getMetrics();
+        if( frameStart != 0 )
+        {
+            metrics.record( FrameMetrics.FRAME_INTERVAL, t0 - frameStart );
+        }
+        frameStart = t0;
+
+        StateSnapshot s = sim.getExchange().latest();
+        int n = instances.pack( s, s.alpha( t0 - sim.getStepNanos() ) );
+        if( n > 0 )
+        {
+            // A new store each frame, so the driver need not wait for the last draw
+            GLES30.glBindBuffer( GLES30.GL_ARRAY_BUFFER, instanceVbo );
+            GLES30.glBufferData( GLES30.GL_ARRAY_BUFFER, n*InstanceBuffer.STRIDE,
+                                 instances.getBuffer(), GLES30.GL_STREAM_DRAW );
+
+            GLES30.glUseProgram( program );
+            GLES30.glUniform2f( uSize, width, height );
+            GLES30.glBindVertexArray( vao );
+            GLES30.glDrawArraysInstanced( GLES30.GL_TRIANGLE_STRIP, 0, 4, n );
+            GLES30.glBindVertexArray( 0 );
+        }
+        metrics.record( FrameMetrics.DRAW, System.nanoTime() - t0 );
+        metrics.countFrame();
+    }
+
+    private static void instanceAttribute( int location, int size, int stride, int offset )
+    {
+        GLES30.glEnableVertexAttribArray( location );
+        GLES30.glVertexAttribPointer( location, size, GLES30.GL_FLOAT, false, stride, 4*offset );
+        GLES30.glVertexAttribDivisor( location, 1 );
+    }
+
+    private static int compile( int type, String source )
+    {
+        int shader = GLES30.glCreateShader( type );
+        GLES30.glShaderSource( shader, source );
+        GLES30.glCompileShader( shader );
+        int[] ok = new int[1];
+        GLES30.glGetShaderiv( shader, GLES30.GL_COMPILE_STATUS, ok, 0 );
+        if( ok[0] == 0 )
+        {
+            String log = GLES30.glGetShaderInfoLog( shader );
+            GLES30.glDeleteShader( shader );
+            Log.e( TAG, "Shader not compiled: " + log );
+            throw new IllegalStateException( "Shader not compiled: " + log );
+        }
+        return shader;
+    }
+
+    private static int link( int vertexShader, int fragmentShader )
+    {
+        int p = GLES30.glCreateProgram();
+        GLES30.glAttachShader( p, vertexShader );
+        GLES30.glAttachShader( p, fragmentShader );
+        GLES30.glLinkProgram( p );
+        int[] ok = new int[1];
+        GLES30.glGetProgramiv( p, GLES30.GL_LINK_STATUS, ok, 0 );
+        if( ok[0] == 0 )
+        {
+            String log = GLES30.glGetProgramInfoLog( p );
+            GLES30.glDeleteProgram( p );
+            Log.e( TAG, "Program not linked: " + log );
+            throw new IllegalStateException( "Program not linked: " + log );
+        }
+        GLES30.glDeleteShader( vertexShader );      // freed with the program
+        GLES30.glDeleteShader( fragmentShader );
+        return p;
+    }
+}
@@ -10,11 +10,14 @@ import android.util.AttributeSet;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
+import com.seabird.jvr.ballslibrary.BilliardTable;
+import com.seabird.jvr.ballslibrary.SimulationLoop;
+
 /**
  * Created by jvr on 28.08.2016.
  */
 public class BallSurfaceView extends SurfaceView
-        implements SurfaceHolder.Callback
+        implements SurfaceHolder.Callback, BallView
 
 {
     private SurfaceHolder holder;
@@ -88,11 +91,7 @@ public class BallSurfaceView extends SurfaceView
 
     public void surfaceChanged(SurfaceHolder holder, int format, int width, int height)
     {
-        table.xMin = 0;
-        table.xMax = width;
-        table.yMin = 0;
-        table.yMax = height;
-
+        // The table belongs to the simulation thread now
         thread.setSurfaceSize(width, height);
     }
     public void surfaceDestroyed(SurfaceHolder holder)
@@ -118,4 +117,9 @@ public class BallSurfaceView extends SurfaceView
     {
         return thread;
     }
+
+    public SimulationLoop getSimulation()
+    {
+        return (thread != null) ? thread.getSimulation() : null;
+    }
 }
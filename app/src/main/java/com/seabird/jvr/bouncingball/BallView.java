@@ -0,0 +1,13 @@
+package com.seabird.jvr.bouncingball;
+
+import com.seabird.jvr.ballslibrary.SimulationLoop;
+
+/**
+ * A view that shows the balls of a SimulationLoop; BallSurfaceView
+ * draws them with a Canvas, BallGLView with OpenGL ES.
+ */
+public interface BallView
+{
+    // The running simulation, null while there is no surface
+    SimulationLoop getSimulation();
+}
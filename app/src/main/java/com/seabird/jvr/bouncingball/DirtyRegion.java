@@ -0,0 +1,88 @@
+package com.seabird.jvr.bouncingball;
+
+/**
+ * Bounding rectangle of everything drawn in a frame, in whole
+ * pixels, left/top inclusive, right/bottom exclusive. Kept free of
+ * android classes so the dirty region logic can be tried headless.
+ */
+public class DirtyRegion
+{
+    public static final float FULL_REDRAW = 0.5f;  // dirty fraction above which all is redrawn
+
+    public int left, top, right, bottom;
+    private boolean empty = true;
+
+    public void clear()
+    {
+        empty = true;
+        left = top = right = bottom = 0;
+    }
+
+    public boolean isEmpty()
+    {
+        return empty;
+    }
+
+    // Grows the region to cover the rectangle l,t - r,b
+    public void add( float l, float t, float r, float b )
+    {
+        int il = (int) Math.floor( l );
+        int it = (int) Math.floor( t );
+        int ir = (int) Math.ceil( r );
+        int ib = (int) Math.ceil( b );
+        if( empty )
+        {
+            left = il;  top = it;  right = ir;  bottom = ib;
+            empty = false;
+        }
+        else
+        {
+            left = Math.min( left, il );
+            top = Math.min( top, it );
+            right = Math.max( right, ir );
+            bottom = Math.max( bottom, ib );
+        }
+    }
+
+    public void add( DirtyRegion d )
+    {
+        if( !d.empty )
+        {
+            add( d.left, d.top, d.right, d.bottom );
+        }
+    }
+
+    public void set( DirtyRegion d )
+    {
+        left = d.left;  top = d.top;  right = d.right;  bottom = d.bottom;
+        empty = d.empty;
+    }
+
+    // Cut to the surface 0,0 - width,height
+    public void clip( int width, int height )
+    {
+        left = Math.max( left, 0 );
+        top = Math.max( top, 0 );
+        right = Math.min( right, width );
+        bottom = Math.min( bottom, height );
+        if( (right <= left) || (bottom <= top) )
+        {
+            clear();
+        }
+    }
+
+    public long area()
+    {
+        return empty ? 0 : (long) (right - left)*(bottom - top);
+    }
+
+    // Union of a and b cut to the surface; false if that covers more
+    // than FULL_REDRAW of it, so that all had better be redrawn
+    public boolean setUnion( DirtyRegion a, DirtyRegion b, int width, int height )
+    {
+        set( a );
+        add( b );
+        clip( width, height );
+        return area() <= FULL_REDRAW*((long) width*height);
+    }
+}
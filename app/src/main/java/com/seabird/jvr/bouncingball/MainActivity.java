@@ -1,5 +1,6 @@
 package com.seabird.jvr.bouncingball;
 
+import android.app.ActivityManager;
 import android.graphics.Color;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
@@ -14,16 +15,29 @@ import android.util.Log;
 import android.view.View;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
 import android.widget.Spinner;
 
+import com.seabird.jvr.ballslibrary.InputRecorder;
+import com.seabird.jvr.ballslibrary.SampleRing;
+import com.seabird.jvr.ballslibrary.SimulationLoop;
+
+import java.io.File;
+import java.io.IOException;
+
 public class MainActivity extends AppCompatActivity implements SensorEventListener
 {
     private static final int ACCELCOUNT = 10;
-    BallSurfaceView ballSurfaceView;
+    // Start with -e renderer gl to draw with OpenGL ES 3.0, if there is one
+    public static final String EXTRA_RENDERER = "renderer";
+    View ballView;      // BallSurfaceView or BallGLView, a BallView
     public SensorManager sensorManager;
     public Sensor accelSensor;
-    D3 accelValues = new D3();
+    final SampleRing accelSamples = new SampleRing( 256 );  // to the physics thread, lock-free
+    volatile InputRecorder recorder;    // non null while recording input
+    private long sensorOffset;          // System.nanoTime() - event.timestamp
+    private boolean haveSensorOffset = false;
     int nCount = 0;
     int nStep = 0;
 
@@ -36,7 +50,18 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         Toolbar toolbar = (Toolbar) findViewById( R.id.toolbar );
         setSupportActionBar( toolbar );
 
-        ballSurfaceView = (BallSurfaceView) findViewById( R.id.bouncingview );
+        ballView = findViewById( R.id.bouncingview );
+        if( "gl".equals( getIntent().getStringExtra( EXTRA_RENDERER ) ) && hasGles3() )
+        {
+            // Put the GL view in place of the canvas one before it gets a surface
+            ViewGroup parent = (ViewGroup) ballView.getParent();
+            int index = parent.indexOfChild( ballView );
+            ViewGroup.LayoutParams params = ballView.getLayoutParams();
+            parent.removeViewAt( index );
+            ballView = new BallGLView( this );
+            ballView.setId( R.id.bouncingview );
+            parent.addView( ballView, index, params );
+        }
         // ballSurfaceView.setBackgroundColor(Color.rgb( 0, 80, 00 ));
 
         sensorManager = (SensorManager) (this.getSystemService( SENSOR_SERVICE ));
@@ -67,16 +92,100 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         {
             return true;
         }
+        if( id == R.id.action_dump_metrics )
+        {
+            dumpMetrics();
+            return true;
+        }
+        if( id == R.id.action_record_input )
+        {
+            toggleRecording();
+            return true;
+        }
         return super.onOptionsItemSelected( item );
     }
 
+    private boolean hasGles3()
+    {
+        ActivityManager am = (ActivityManager) getSystemService( ACTIVITY_SERVICE );
+        return am.getDeviceConfigurationInfo().reqGlEsVersion >= 0x30000;
+    }
+
+    private SimulationLoop getSimulation()
+    {
+        return ((BallView) ballView).getSimulation();
+    }
+
+    // Writes the frame timings to the app's external files directory,
+    // pull with adb; e.g. Android/data/<package>/files/frame-metrics.txt
+    private void dumpMetrics()
+    {
+        SimulationLoop sim = getSimulation();
+        if( sim == null )
+        {
+            return;
+        }
+        File dir = getExternalFilesDir( null );
+        File file = new File( (dir != null) ? dir : getFilesDir(), "frame-metrics.txt" );
+        try
+        {
+            sim.getMetrics().dump( file );
+            Snackbar.make( ballView, "Metrics written to " + file, Snackbar.LENGTH_LONG ).show();
+        }
+        catch( IOException e )
+        {
+            Log.e( "BouncingBall", "Metrics not written", e );
+        }
+    }
+
+    // Starts or stops logging sensor samples and physics steps to
+    // input-<time>.bblog next to the metrics, for ReplayDriver
+    private void toggleRecording()
+    {
+        SimulationLoop sim = getSimulation();
+        if( sim == null )
+        {
+            return;
+        }
+        InputRecorder rec = recorder;
+        try
+        {
+            if( rec != null )
+            {
+                recorder = null;
+                sim.setRecorder( null );
+                rec.close();
+                Snackbar.make( ballView, "Recording stopped", Snackbar.LENGTH_SHORT ).show();
+            }
+            else
+            {
+                File dir = getExternalFilesDir( null );
+                File file = new File( (dir != null) ? dir : getFilesDir(),
+                                      "input-" + System.currentTimeMillis() + ".bblog" );
+                rec = new InputRecorder( file );
+                recorder = rec;
+                sim.setRecorder( rec );
+                Snackbar.make( ballView, "Recording to " + file, Snackbar.LENGTH_LONG ).show();
+            }
+        }
+        catch( IOException e )
+        {
+            Log.e( "BouncingBall", "Recording failed", e );
+        }
+    }
+
     @Override
     protected void onResume()
     {
         super.onResume();
         // register this class as a listener for the orientation and
         // accelerometer sensors
+        haveSensorOffset = false;   // the clocks may have drifted apart while asleep
         sensorManager.registerListener( this, accelSensor, SensorManager.SENSOR_DELAY_GAME );
+        if( ballView instanceof BallGLView )
+        {
+            ((BallGLView) ballView).onResume();
+        }
     }
 
     @Override
@@ -85,6 +194,10 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         // unregister listener
         super.onPause();
         sensorManager.unregisterListener( this );
+        if( ballView instanceof BallGLView )
+        {
+            ((BallGLView) ballView).onPause();
+        }
     }
 
     @Override
@@ -97,15 +210,29 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
     }
 
+    // Stamped with the time the sensor took the sample, moved onto
+    // System.nanoTime(), the physics clock: event.timestamp may run on
+    // a different clock, so the offset between the two is taken once
+    // from the first event. The ring and the recorder get the same stamp
     private void getAccelerometer( SensorEvent event )
     {
-        synchronized(accelValues)
+        if( !haveSensorOffset )
+        {
+            sensorOffset = System.nanoTime() - event.timestamp;
+            haveSensorOffset = true;
+        }
+        long t = event.timestamp + sensorOffset;
+        float[] values = event.values;
+        // Movement
+        float ax = - values[0];
+        float ay =   values[1];
+        float az = - values[2];
+        accelSamples.offer( t, ax, ay, az );
+
+        InputRecorder rec = recorder;
+        if( rec != null )
         {
-            float[] values = event.values;
-            // Movement
-            accelValues.x = - values[0];
-            accelValues.y =   values[1];
-            accelValues.z = - values[2];
+            rec.accel( t, ax, ay, az );
         }
     }
 
@@ -0,0 +1,81 @@
+package com.seabird.jvr.bouncingball;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Pre-rendered ball images. A disc of a given colour and radius is
+ * drawn once into a bitmap and from then on copied with drawBitmap,
+ * which is much cheaper than an anti-aliased drawCircle per ball and
+ * frame. The orientation marker is a sprite of its own (a small red
+ * disc) laid over the ball, so it can sit at any position exactly.
+ *
+ * Bitmaps are kept in a SpriteLru bounded in bytes. Radii are taken
+ * to the nearest 1/4 dp, so balls of the same size share a sprite.
+ *
+ * sprite(color, r)          bitmap for a disc, made on first use
+ * draw(canvas, b, x, y)     draws a sprite centered at x,y
+ */
+public class SpriteCache
+{
+    private static final int QUANT = 4;        // radius steps per dp
+
+    private final SpriteLru<Bitmap> cache;
+    private final Paint fill = new Paint( Paint.ANTI_ALIAS_FLAG );
+    private final Paint blit = new Paint( Paint.FILTER_BITMAP_FLAG );
+
+    public SpriteCache( int maxBytes )
+    {
+        cache = new SpriteLru<Bitmap>( maxBytes )
+        {
+            @Override
+            protected int sizeOf( Bitmap b )
+            {
+                return b.getByteCount();
+            }
+        };
+        fill.setStyle( Paint.Style.FILL );
+    }
+
+    // Key of the sprite for a disc; equal keys give the same bitmap
+    public static long key( int color, float r )
+    {
+        return ((long) Math.round( r*QUANT ) << 32) | (color & 0xFFFFFFFFL);
+    }
+
+    // Disc of colour and radius r; drawn if not (or no longer) cached
+    public Bitmap sprite( int color, float r )
+    {
+        long key = key( color, r );
+        Bitmap b = cache.get( key );
+        if( b == null )
+        {
+            b = render( color, Math.round( r*QUANT )/(float) QUANT );
+            cache.put( key, b );
+        }
+        return b;
+    }
+
+    // Sprite centered at x,y
+    public void draw( Canvas canvas, Bitmap b, float x, float y )
+    {
+        canvas.drawBitmap( b, x - 0.5f*b.getWidth(), y - 0.5f*b.getHeight(), blit );
+    }
+
+    public void clear()
+    {
+        cache.clear();
+    }
+
+    private Bitmap render( int color, float r )
+    {
+        // one pixel of margin for the anti-aliased edge
+        int size = 2*(int) Math.ceil( r ) + 2;
+        Bitmap b = Bitmap.createBitmap( size, size, Bitmap.Config.ARGB_8888 );
+        Canvas c = new Canvas( b );
+        fill.setColor( color );
+        c.drawCircle( 0.5f*size, 0.5f*size, r, fill );
+        return b;
+    }
+}
@@ -0,0 +1,65 @@
+package com.seabird.jvr.bouncingball;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least recently used store of sprites by SpriteCache.key, bounded
+ * by the bytes of the sprites rather than by their number. Plain
+ * Java (android.util.LruCache is not), so that the eviction can be
+ * tested on the JVM.
+ */
+abstract class SpriteLru<V>
+{
+    private final LinkedHashMap<Long, V> map = new LinkedHashMap<Long, V>( 16, 0.75f, true );
+    private final long maxBytes;
+    private long bytes;
+
+    SpriteLru( long maxBytes )
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    protected abstract int sizeOf( V v );
+
+    // null if not cached; a hit makes v the most recently used
+    V get( long key )
+    {
+        return map.get( key );
+    }
+
+    // Adds v, then drops the least recently used until the rest fits;
+    // that may be v itself if it alone is over the bound
+    void put( long key, V v )
+    {
+        V old = map.put( key, v );
+        if( old != null )
+        {
+            bytes -= sizeOf( old );
+        }
+        bytes += sizeOf( v );
+
+        Iterator<V> it = map.values().iterator();
+        while( (bytes > maxBytes) && it.hasNext() )
+        {
+            bytes -= sizeOf( it.next() );
+            it.remove();
+        }
+    }
+
+    void clear()
+    {
+        map.clear();
+        bytes = 0;
+    }
+
+    int size()
+    {
+        return map.size();
+    }
+
+    long bytes()
+    {
+        return bytes;
+    }
+}
@@ -0,0 +1,116 @@
+package com.seabird.jvr.bouncingball;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * DirtyRegion must cover every rectangle added, grown outwards to
+ * whole pixels, cut to the surface, and ask for a full redraw once
+ * last and this frame's drawing cover more than FULL_REDRAW of it.
+ */
+public class DirtyRegionTest
+{
+    private static DirtyRegion region( float l, float t, float r, float b )
+    {
+        DirtyRegion d = new DirtyRegion();
+        d.add( l, t, r, b );
+        return d;
+    }
+
+    @Test
+    public void add_unionOfTheRectangles()
+    {
+        DirtyRegion d = new DirtyRegion();
+        assertTrue( d.isEmpty() );
+        assertEquals( 0, d.area() );
+
+        d.add( 10, 20, 30, 40 );
+        d.add( 50, 5, 60, 25 );
+        assertFalse( d.isEmpty() );
+        assertEquals( 10, d.left );
+        assertEquals( 5, d.top );
+        assertEquals( 60, d.right );
+        assertEquals( 40, d.bottom );
+        assertEquals( 50*35, d.area() );
+
+        // An empty region adds nothing
+        d.add( new DirtyRegion() );
+        assertEquals( 50*35, d.area() );
+    }
+
+    @Test
+    public void add_growsToWholePixels()
+    {
+        // A sprite at 10.2,10.7 must not lose its partly covered pixels
+        DirtyRegion d = region( 10.2f, 10.7f, 20.1f, 20.9f );
+        assertEquals( 10, d.left );
+        assertEquals( 10, d.top );
+        assertEquals( 21, d.right );
+        assertEquals( 21, d.bottom );
+
+        d = region( -3.5f, -0.5f, 2.5f, 4 );
+        assertEquals( -4, d.left );
+        assertEquals( -1, d.top );
+        assertEquals( 3, d.right );
+        assertEquals( 4, d.bottom );
+    }
+
+    @Test
+    public void clip_toTheSurface()
+    {
+        DirtyRegion d = region( -20, -10, 150, 90 );
+        d.clip( 100, 50 );
+        assertEquals( 0, d.left );
+        assertEquals( 0, d.top );
+        assertEquals( 100, d.right );
+        assertEquals( 50, d.bottom );
+
+        // Entirely off the surface: nothing left to redraw
+        d = region( 120, 10, 140, 20 );
+        d.clip( 100, 50 );
+        assertTrue( d.isEmpty() );
+        assertEquals( 0, d.area() );
+    }
+
+    @Test
+    public void setUnion_lastAndThisFrame()
+    {
+        DirtyRegion last = region( 10, 10, 30, 30 );
+        DirtyRegion now = region( 20, 25, 40, 45 );
+        DirtyRegion dirty = new DirtyRegion();
+
+        assertTrue( dirty.setUnion( last, now, 1000, 1000 ) );
+        assertEquals( 10, dirty.left );
+        assertEquals( 10, dirty.top );
+        assertEquals( 40, dirty.right );
+        assertEquals( 45, dirty.bottom );
+        // the inputs are left alone
+        assertEquals( 30, last.right );
+        assertEquals( 20, now.left );
+    }
+
+    @Test
+    public void setUnion_fullRedrawAboveTheFraction()
+    {
+        DirtyRegion dirty = new DirtyRegion();
+        DirtyRegion none = new DirtyRegion();
+        assertEquals( 0.5f, DirtyRegion.FULL_REDRAW, 0 );
+
+        // Exactly half of 100 x 100 is still drawn partially
+        assertTrue( dirty.setUnion( region( 0, 0, 100, 50 ), none, 100, 100 ) );
+        // one row more is not
+        assertFalse( dirty.setUnion( region( 0, 0, 100, 51 ), none, 100, 100 ) );
+
+        // Two small corners far apart make a large union
+        assertFalse( dirty.setUnion( region( 0, 0, 10, 10 ), region( 90, 90, 100, 100 ), 100, 100 ) );
+
+        // What lies off the surface does not count
+        assertTrue( dirty.setUnion( region( -500, -500, 40, 40 ), none, 100, 100 ) );
+        assertEquals( 1600, dirty.area() );
+
+        // Nothing drawn at all
+        assertTrue( dirty.setUnion( none, none, 100, 100 ) );
+        assertTrue( dirty.isEmpty() );
+    }
+}
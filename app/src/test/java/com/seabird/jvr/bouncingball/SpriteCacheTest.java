@@ -0,0 +1,47 @@
+package com.seabird.jvr.bouncingball;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * SpriteCache.key must take radii to the nearest 1/4 dp, so that
+ * balls of about the same size share a sprite, and must never give
+ * two different colours or quantised radii the same key.
+ */
+public class SpriteCacheTest
+{
+    private static final int RED = 0xFFFF0000;
+
+    @Test
+    public void key_radiusToQuarterDp()
+    {
+        assertEquals( SpriteCache.key( RED, 10 ), SpriteCache.key( RED, 10.1f ) );
+        assertEquals( SpriteCache.key( RED, 10 ), SpriteCache.key( RED, 9.9f ) );
+        assertEquals( SpriteCache.key( RED, 10.25f ), SpriteCache.key( RED, 10.2f ) );
+        assertEquals( SpriteCache.key( RED, 10.25f ), SpriteCache.key( RED, 10.3f ) );
+        assertTrue( SpriteCache.key( RED, 10 ) != SpriteCache.key( RED, 10.25f ) );
+        assertTrue( SpriteCache.key( RED, 10 ) != SpriteCache.key( RED, 11 ) );
+    }
+
+    @Test
+    public void key_noCollisions()
+    {
+        // Colours with the sign bit set or not, and radii from 0 to
+        // 500 dp in quarter steps
+        int[] colors = { 0, 1, RED, 0xFF00FF00, 0xFF0000FF, 0x80FFFFFF, 0xFFFFFFFF, 0x7FFFFFFF, 0x80000000 };
+        Set<Long> keys = new HashSet<Long>();
+        for( int color : colors )
+        {
+            for( int q = 0; q <= 2000; q++ )
+            {
+                assertTrue( "color " + Integer.toHexString( color ) + " r " + q/4f,
+                            keys.add( SpriteCache.key( color, q/4f ) ) );
+            }
+        }
+        assertEquals( colors.length*2001, keys.size() );
+    }
+}
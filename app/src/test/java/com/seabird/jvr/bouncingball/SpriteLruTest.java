@@ -0,0 +1,80 @@
+package com.seabird.jvr.bouncingball;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * SpriteLru must keep the sprites within its byte bound, dropping
+ * the least recently used first, a hit counting as a use.
+ */
+public class SpriteLruTest
+{
+    // "Sprites" of n bytes
+    private static SpriteLru<byte[]> lru( long maxBytes )
+    {
+        return new SpriteLru<byte[]>( maxBytes )
+        {
+            @Override
+            protected int sizeOf( byte[] b )
+            {
+                return b.length;
+            }
+        };
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedByBytes()
+    {
+        SpriteLru<byte[]> c = lru( 1000 );
+        c.put( 1, new byte[400] );
+        c.put( 2, new byte[400] );
+        c.put( 3, new byte[100] );
+        assertEquals( 3, c.size() );
+        assertEquals( 900, c.bytes() );
+
+        // 1 is used again, so 2 is the oldest and has to go
+        assertNotNull( c.get( 1 ) );
+        c.put( 4, new byte[300] );
+        assertNull( c.get( 2 ) );
+        assertNotNull( c.get( 1 ) );
+        assertNotNull( c.get( 3 ) );
+        assertNotNull( c.get( 4 ) );
+        assertEquals( 800, c.bytes() );
+
+        // One large sprite can push out several small ones
+        c.put( 5, new byte[900] );
+        assertEquals( 1, c.size() );
+        assertNotNull( c.get( 5 ) );
+        assertEquals( 900, c.bytes() );
+    }
+
+    @Test
+    public void put_replacingCountsTheNewSize()
+    {
+        SpriteLru<byte[]> c = lru( 1000 );
+        c.put( 1, new byte[600] );
+        c.put( 1, new byte[200] );
+        assertEquals( 1, c.size() );
+        assertEquals( 200, c.bytes() );
+        c.put( 2, new byte[800] );
+        assertEquals( 2, c.size() );
+        assertEquals( 1000, c.bytes() );
+    }
+
+    @Test
+    public void put_tooLargeIsNotKept()
+    {
+        SpriteLru<byte[]> c = lru( 1000 );
+        c.put( 1, new byte[100] );
+        c.put( 2, new byte[1001] );
+        assertNull( c.get( 2 ) );
+        assertEquals( 0, c.bytes() );
+
+        c.put( 3, new byte[10] );
+        c.clear();
+        assertEquals( 0, c.size() );
+        assertEquals( 0, c.bytes() );
+        assertNull( c.get( 3 ) );
+    }
+}
@@ -1,15 +0,0 @@
-package com.seabird.jvr.ballslibrary;
-
-import android.app.Application;
-import android.test.ApplicationTestCase;
-
-/**
- * <a href="http://d.android.com/tools/testing/testing_android.html">Testing Fundamentals</a>
- */
-public class ApplicationTest extends ApplicationTestCase<Application>
-{
-    public ApplicationTest()
-    {
-        super( Application.class );
-    }
-}
\ No newline at end of file
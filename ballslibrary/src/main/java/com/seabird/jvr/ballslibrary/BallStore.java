@@ -0,0 +1,1180 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for many balls on one table.
+ * Every per-ball quantity lives in its own primitive array,
+ * indexed by ball number, so stepping all balls walks the arrays
+ * sequentially instead of chasing six D3 objects per ball.
+ * RollingBall is a view onto one slot of a store.
+ *
+ * Friction (frictionStep), sleep (updateSleep) and doublePrecision
+ * (moveDouble) are off unless set; the orientation is brought up to
+ * date on demand (updateOrientation). Overlaps are resolved over the
+ * pairs of a broad phase (setBroadPhase, resolveOverlaps).
+ */
+public class BallStore
+{
+    private static final int MIN_CAPACITY = 4;
+    private static final float SQRT2 = (float) Math.sqrt(2.);
+
+    public static final byte SLIDING = 0;
+    public static final byte ROLLING = 1;
+    public static final byte RESTING = 2;
+
+    static final float G = 9.81f;           // m/sec*sec, normal force per mass
+    static final float SLIP_EPS = 1f;       // dp/sec, slower slip counts as rolling
+    static final float REST_EPS = 1f;       // dp/sec, slower counts as standing still
+    static final float REST_TOL = 0.5f;     // dp, ball counts as touching the rail
+    private static final int MAX_PHASES = 3;
+
+    public float eps = 0.0001f;
+    public float dpm = 6400;            // 6400dp/m
+    public boolean friction = false;    // table friction acts (see frictionStep)
+    public boolean sleep = false;       // still balls go to sleep (see updateSleep)
+    public boolean doublePrecision = false; // centers, velocities in double (see moveDouble)
+    public float sleepSpeed = 20;       // dp/sec, mean speed of a still ball at most
+    public float sleepTime = 0.5f;      // sec a ball must keep still to sleep
+    public float wakeTilt = 0.2f;       // m/sec*sec change of A that wakes all
+
+    public BilliardTable table;         //Supplies physical parameters of the table
+
+    // Scratch state for single threaded stepping through this store
+    private final StepContext ctx = new StepContext();
+    // Broad phase for resolveOverlaps and its candidate pairs
+    private BroadPhase broadPhase = new UniformGrid();
+    private final IntPairBuffer pairs = new IntPairBuffer();
+
+    private int count;
+    private int nSleeping;              // as of the last updateSleep
+    private boolean tiltSet;            // sleepAx, sleepAy hold the tilt of the sleepers
+    private float sleepAx, sleepAy;
+    float wakeSpeed;                    // approach speed that wakes a sleeper
+
+    // Ball center, device coordinates
+    public float[] cx, cy, cz;
+    // Velocity of the center dp/sec
+    public float[] vx, vy, vz;
+    // Center and velocity in double, with doublePrecision only
+    public double[] dcx, dcy, dvx, dvy;
+    // Angular velocity vector
+    public float[] px, py, pz;
+    // Orientation, unit quaternion w + (x,y,z): rotation from the
+    // starting frame (see add) to the present one
+    public float[] qw, qx, qy, qz;
+    // Center at which q was last brought up to date
+    public float[] qcx, qcy;
+    // Moving frame fixed in the ball: North, East and their normal Y;
+    // not kept up to date by the step, see updateFrame
+    public float[] nx, ny, nz;
+    public float[] ex, ey, ez;
+    public float[] yx, yy, yz;
+    // Radius (dp), mass (kg) and int Color
+    public float[] radius;
+    public float[] mass;
+    public int[]   color;
+    // Ball-ball restitution and friction of each ball, the table's
+    // when it was added; ContactSolver combines those of a pair
+    public float[] restitution, grip;
+    // SLIDING, ROLLING or RESTING after the last step; with friction only
+    public byte[]  phase;
+    // Sleeping; the center where the ball was when it slowed down and
+    // the time (sec) it has kept near it since
+    public boolean[] asleep;
+    public float[] sx, sy;
+    public float[] still;
+
+    public static class RailsCollision
+    {
+        boolean left;
+        boolean right;
+        boolean top;
+        boolean bot;
+
+        public RailsCollision( boolean l, boolean r, boolean t, boolean b)
+        {
+            left = l;
+            right = r;
+            top = t;
+            bot = b;
+        }
+        public RailsCollision()
+        {
+            left = false;
+            right = false;
+            top = false;
+            bot = false;
+        }
+    }
+
+    public BallStore( BilliardTable table )
+    {
+        this( table, MIN_CAPACITY );
+    }
+
+    public BallStore( BilliardTable table, int capacity )
+    {
+        this.table = table;
+        allocate( Math.max( capacity, 1 ) );
+        count = 0;
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public int capacity()
+    {
+        return radius.length;
+    }
+
+    // Appends a ball at rest with center (x,y,z=r); returns its index
+    // The moving frame starts as NS = z, E = x tilted by 45 deg,
+    // mass is that of a billiard ball
+    public int add( float x, float y, float r, int nC )
+    {
+        ensureCapacity( count + 1 );
+        int i = count++;
+
+        cx[i] = x;  cy[i] = y;  cz[i] = r;
+        vx[i] = 0;  vy[i] = 0;  vz[i] = 0;
+        dcx[i] = x; dcy[i] = y;
+        dvx[i] = 0; dvy[i] = 0;
+        px[i] = 0;  py[i] = 0;  pz[i] = 0;
+        qw[i] = 1;  qx[i] = 0;  qy[i] = 0;  qz[i] = 0;
+        qcx[i] = x; qcy[i] = y;
+        nx[i] = 1f/SQRT2;  ny[i] = 0;  nz[i] = 1f/SQRT2;
+        ex[i] = 1f/SQRT2;  ey[i] = 0;  ez[i] = -1f/SQRT2;
+        yx[i] = 0;         yy[i] = 1;  yz[i] = 0;
+        radius[i] = r;
+        mass[i]   = 0.17f;  // mass kg, 6oz = 170g
+        color[i]  = nC;
+        restitution[i] = table.collidingRestitution;
+        grip[i]   = table.collidingFriction;
+        phase[i]  = RESTING;
+        asleep[i] = false;
+        sx[i] = x;  sy[i] = y;
+        still[i] = 0;
+        return i;
+    }
+
+    // Removes ball i; the last ball moves into its slot and so takes
+    // index i, the indices of all others stay. A RollingBall view of
+    // the moved ball then shows the wrong ball; re-fetch views after
+    // a remove
+    public void remove( int i )
+    {
+        if( asleep[i] )
+        {
+            nSleeping--;
+        }
+        int last = --count;
+        if( i != last )
+        {
+            copySlot( last, i );
+        }
+    }
+
+    public void clear()
+    {
+        count = 0;
+        nSleeping = 0;
+        tiltSet = false;
+    }
+
+    public void ensureCapacity( int n )
+    {
+        if( n > radius.length )
+        {
+            grow( Math.max( n, radius.length + (radius.length >> 1) ) );
+        }
+    }
+
+    //Impose axial velocity; wakes the ball
+    public void setVelocity( int i, float x, float y, float z )
+    {
+        if( asleep[i] )
+        {
+            wake( i );
+        }
+        vx[i] = x;
+        vy[i] = y;
+        vz[i] = z;
+        dvx[i] = x;
+        dvy[i] = y;
+    }
+
+    // Shifts the center without changing anything else, but not
+    // beyond the rails: a push out of an overlap stops there. The
+    // velocity is left alone; the next step reflects it if it points
+    // out of the table
+    public void shiftCenter( int i, float dx, float dy, float dz )
+    {
+        float R = radius[i];
+        cx[i] = Math.min( Math.max( cx[i] + dx, table.xMin + R ), table.xMax - R );
+        cy[i] = Math.min( Math.max( cy[i] + dy, table.yMin + R ), table.yMax - R );
+        cz[i] += dz;
+    }
+
+    // Steps every ball with the same acceleration
+    public void stepAll( D3 A, double tMilli )
+    {
+        stepAll( A.x, A.y, tMilli, ctx );
+    }
+
+    public void stepAll( float ax, float ay, double tMilli, StepContext sc )
+    {
+        updateSleep( ax, ay, tMilli );
+        for( int i = 0; i < count; i++ )
+        {
+            if( !asleep[i] )
+            {
+                doStep( i, ax, ay, tMilli, sc );
+            }
+        }
+    }
+
+    // Increments the center coordinates of ball i given time increment
+    // and acceleration. Acceleration is m/sec*sec. Time is ms.
+    // Rail reflection is taken into account
+    public void doStep( int i, D3 A, double tMilli )
+    {
+        doStep( i, A.x, A.y, tMilli, ctx );
+    }
+
+    public void doStep( int i, float ax, float ay, double tMilli )
+    {
+        doStep( i, ax, ay, tMilli, ctx );
+    }
+
+    // As above; all scratch state is taken from sc so nothing is
+    // allocated. sc must not be shared between threads
+    public void doStep( int i, float ax, float ay, double tMilli, StepContext sc )
+    {
+        double tSec = tMilli/1000.; // 1000ms/sec
+        if( friction )
+        {
+            frictionStep( i, ax, ay, tSec, sc );
+        }
+        else
+        {
+            move( i, ax, ay, tSec, sc );
+        }
+    }
+
+    // True if ball i stood still through the last step (friction only)
+    public boolean isResting( int i )
+    {
+        return phase[i] == RESTING;
+    }
+
+    public boolean isAsleep( int i )
+    {
+        return asleep[i];
+    }
+
+    // Balls asleep as of the start of the last step
+    public int getSleepingCount()
+    {
+        return nSleeping;
+    }
+
+    // Sleep bookkeeping at the start of a step with acceleration ax, ay
+    // of tMilli; stepAll and BatchIntegrator call it, anyone stepping
+    // the balls one by one must do so too. Does nothing unless sleep is on.
+    //
+    // A ball is still while it stays within sleepSpeed*sleepTime of
+    // where it was when it slowed down, i.e. its mean speed stays below
+    // sleepSpeed; after sleepTime of that it sleeps: velocity and spin
+    // are zeroed, stepAll and BatchIntegrator pass it by and it is never
+    // the moving side of an overlap. A ball that runs into a sleeper no
+    // faster than one step of the tilt makes it (so merely leans on it)
+    // is pushed out and stopped as by a rail, which lets piles go to
+    // sleep from the bottom up. Sleepers wake
+    //   - when a faster ball hits them,
+    //   - when the acceleration differs from the one the first of them
+    //     fell asleep at by more than wakeTilt (all of them),
+    //   - by wake(i) or wakeAll(), e.g. after the table changed.
+    public void updateSleep( float ax, float ay, double tMilli )
+    {
+        if( !sleep )
+        {
+            return;
+        }
+        float tSec = (float) (tMilli/1000.);
+        if( tiltSet )
+        {
+            float dax = ax - sleepAx;
+            float day = ay - sleepAy;
+            if( dax*dax + day*day > wakeTilt*wakeTilt )
+            {
+                wakeAll();
+            }
+        }
+        // One step of the tilt; more than that into a sleeper wakes it
+        wakeSpeed = sleepSpeed + (float) Math.sqrt( ax*ax + ay*ay )*dpm*tSec;
+
+        float d = sleepSpeed*sleepTime;
+        int n = 0;
+        for( int i = 0; i < count; i++ )
+        {
+            if( asleep[i] )
+            {
+                n++;
+                continue;
+            }
+            float dx = cx[i] - sx[i];
+            float dy = cy[i] - sy[i];
+            if( dx*dx + dy*dy > d*d )
+            {
+                // Moved on; a new window starts here
+                sx[i] = cx[i];
+                sy[i] = cy[i];
+                still[i] = 0;
+                continue;
+            }
+            still[i] += tSec;
+            if( still[i] >= sleepTime )
+            {
+                asleep[i] = true;
+                vx[i] = 0;  vy[i] = 0;  vz[i] = 0;
+                px[i] = 0;  py[i] = 0;  pz[i] = 0;
+                phase[i] = RESTING;
+                n++;
+            }
+        }
+        if( n == 0 )
+        {
+            tiltSet = false;
+        }
+        else if( !tiltSet )
+        {
+            tiltSet = true;
+            sleepAx = ax;
+            sleepAy = ay;
+        }
+        nSleeping = n;
+    }
+
+    // Wakes ball i; it has to keep still for sleepTime to sleep again
+    public void wake( int i )
+    {
+        asleep[i] = false;
+        sx[i] = cx[i];
+        sy[i] = cy[i];
+        still[i] = 0;
+    }
+
+    public void wakeAll()
+    {
+        for( int i = 0; i < count; i++ )
+        {
+            wake( i );
+        }
+        nSleeping = 0;
+        tiltSet = false;
+    }
+
+    // The step with friction: the table's slidingFriction,
+    // rollingFriction and spinDeceleration act. It is cut into up to
+    // three phases of constant acceleration, at the moments the phase
+    // changes, which follow in closed form from the slip and velocity
+    // at the start of the phase; each phase is moved by move():
+    //   SLIDING  the contact point slips; kinetic friction mu_s*g against
+    //            the slip slows the center and spins the ball up until
+    //            it rolls, for a flat table after t = 2|u|/(7 mu_s g);
+    //            a tilt beyond 7/2 mu_s*g keeps it sliding
+    //   ROLLING  angular velocity (z x V)/R; the center accelerates with
+    //            5/7 of the table tilt less mu_r*g along V
+    //   RESTING  at rest as long as 5/7 of the tilt (less what a rail
+    //            takes) stays below mu_r*g; a candidate for skipping
+    // Spin about the vertical decays by spinDeceleration independently.
+    void frictionStep( int i, float ax, float ay, double tSec, StepContext sc )
+    {
+        float R = radius[i];
+        float muS = table.slidingFriction*G;
+        float muR = table.rollingFriction*G;
+        double left = tSec;
+
+        for( int k = 0; (k < MAX_PHASES) && (left > 0); k++ )
+        {
+            boolean last = (k == MAX_PHASES - 1);
+
+            // A rail takes the push of a ball that rests against it
+            float fx = pin( i, ax, cx[i] - table.xMin - R, table.xMax - R - cx[i], true, left );
+            float fy = pin( i, ay, cy[i] - table.yMin - R, table.yMax - R - cy[i], false, left );
+
+            float ux = vx[i] - R*py[i];
+            float uy = vy[i] + R*px[i];
+            float u = (float) Math.sqrt( ux*ux + uy*uy );
+            double t = left;
+
+            if( u > SLIP_EPS )
+            {
+                // Sliding: friction against the slip on the center, and
+                // as torque R*mu_s*g*(z x u), I = 2/5 m R^2, on the spin
+                ux /= u;
+                uy /= u;
+                float gx = pinned( fx, ax - muS*ux );
+                float gy = pinned( fy, ay - muS*uy );
+                float spin = 2.5f*muS*dpm/R;
+
+                // Slip rate; the phase ends where |u| is least. Unless
+                // the slip is gone there the tilt has turned it, and
+                // the ball slides on in the new direction
+                float dux = (gx - 2.5f*muS*ux)*dpm;
+                float duy = (gy - 2.5f*muS*uy)*dpm;
+                double tRoll = -(u*ux*dux + u*uy*duy)/(dux*dux + duy*duy);
+                boolean turns = !last && (tRoll > 0) && (tRoll < left);
+                if( turns ) t = tRoll;
+
+                move( i, gx, gy, t, sc );
+                px[i] -= (float) (spin*uy*t);
+                py[i] += (float) (spin*ux*t);
+                float nux = vx[i] - R*py[i];
+                float nuy = vy[i] + R*px[i];
+                if( turns && (nux*nux + nuy*nuy <= SLIP_EPS*SLIP_EPS) )
+                {
+                    px[i] = -vy[i]/R;
+                    py[i] =  vx[i]/R;
+                }
+                phase[i] = SLIDING;
+            }
+            else
+            {
+                // Rolling, or at rest if the tilt cannot overcome mu_r
+                float rx = pinned( fx, (5f/7)*ax );
+                float ry = pinned( fy, (5f/7)*ay );
+                float v = (float) Math.sqrt( vx[i]*vx[i] + vy[i]*vy[i] );
+                if( v <= REST_EPS )
+                {
+                    float r = (float) Math.sqrt( rx*rx + ry*ry );
+                    if( r <= muR )
+                    {
+                        vx[i] = 0;
+                        vy[i] = 0;
+                        px[i] = 0;
+                        py[i] = 0;
+                        phase[i] = RESTING;
+                        break;
+                    }
+                    // Starts to roll down the tilt
+                    float gx = pinned( fx, rx - muR*rx/r );
+                    float gy = pinned( fy, ry - muR*ry/r );
+                    move( i, gx, gy, t, sc );
+                }
+                else
+                {
+                    float gx = pinned( fx, rx - muR*vx[i]/v );
+                    float gy = pinned( fy, ry - muR*vy[i]/v );
+
+                    // Friction along V may bring the ball to a stop
+                    double gv = (gx*vx[i] + gy*vy[i])*dpm;
+                    double tStop = -gv/((gx*gx + gy*gy)*dpm*dpm);
+                    boolean stops = !last && (gv < 0) && (tStop < left);
+                    if( stops ) t = tStop;
+
+                    move( i, gx, gy, t, sc );
+                    if( stops && (rx*rx + ry*ry <= muR*muR) )
+                    {
+                        vx[i] = 0;
+                        vy[i] = 0;
+                    }
+                }
+                px[i] = -vy[i]/R;
+                py[i] =  vx[i]/R;
+                phase[i] = ROLLING;
+            }
+            left -= t;
+        }
+
+        // Spin about the vertical
+        float dSpin = (float) (table.spinDeceleration*tSec);
+        pz[i] = (pz[i] > 0) ? Math.max( pz[i] - dSpin, 0 ) : Math.min( pz[i] + dSpin, 0 );
+    }
+
+    // Acceleration a along one axis unless ball i rests against a rail
+    // of that axis and a pushes it there: then the velocity across is
+    // zeroed and NaN returned. lo, hi are the gaps to the two rails
+    private float pin( int i, float a, float lo, float hi, boolean xAxis, double tSec )
+    {
+        float[] v = xAxis ? vx : vy;
+        boolean touches = ((a < 0) && (lo < REST_TOL)) || ((a > 0) && (hi < REST_TOL));
+        // Slower than one step of a gives: no longer bouncing
+        if( touches && (Math.abs( v[i] ) <= Math.abs( a )*dpm*tSec) )
+        {
+            v[i] = 0;
+            return Float.NaN;
+        }
+        return a;
+    }
+
+    // g, or 0 along an axis that pin() found pinned
+    private static float pinned( float pin, float g )
+    {
+        return (pin != pin) ? 0 : g;
+    }
+
+    // Moves ball i with constant acceleration ax, ay (m/sec*sec)
+    // for tSec, reflecting it off the rails
+    void move( int i, float ax, float ay, double tSec, StepContext sc )
+    {
+        if( doublePrecision )
+        {
+            moveDouble( i, ax, ay, tSec, sc );
+            return;
+        }
+        RailsCollision coll = sc.coll;
+        D3 roots = sc.roots;
+        double dtSec;
+        float R = radius[i];
+        int loopCount;
+
+        checkRailReflection( i, tSec, ax, ay, coll );
+
+        // If rail rebound; move only up to rail, reflect,
+        // then do the rest both coordinates independently
+        loopCount = 0;
+        dtSec = tSec;
+        while( (coll.left || coll.right) && (dtSec > eps) && (loopCount < 5)  )
+        {
+            loopCount++;
+
+            float tLeft;
+            float tRight;
+
+            // Time to each rail; none within the step means the ball
+            // starts beyond the rail (pushed there by an overlap)
+            // Correct center and velocity; so now the ball is
+            // exactly on the rail and velociy reversed.
+            // Then do up to next collision if any
+            if( coll.left )
+            {
+                tLeft = solveQuadratic(0.5f*dpm*ax, vx[i], cx[i] - table.xMin - R, roots);
+                if( (roots.x > eps) && (roots.y > roots.x) ) tLeft = roots.x;
+                if( (roots.y > eps) && (roots.x > roots.y) ) tLeft = roots.y;
+                if( (tLeft < 0) || (tLeft > dtSec) ) tLeft = eps;
+
+                cx[i] = table.xMin + R;
+                vx[i] = -(vx[i] + ax * tLeft * dpm)* table.railRestitution;
+
+                dtSec = dtSec - tLeft;
+                sc.railHits++;
+            }
+            if( coll.right )
+            {
+                tRight = solveQuadratic(0.5f*dpm*ax, vx[i], cx[i] - table.xMax + R, roots);
+                if( (roots.x > eps) && (roots.y > roots.x) ) tRight = roots.x;
+                if( (roots.y > eps) && (roots.x > roots.y) ) tRight = roots.y;
+                if( (tRight < 0) || (tRight > dtSec) ) tRight = eps;
+
+                cx[i] = table.xMax - R;
+                vx[i] = -(vx[i] + ax * tRight * dpm) * table.railRestitution;
+
+                dtSec = dtSec - tRight;
+                sc.railHits++;
+            }
+
+            checkRailReflection( i, dtSec, ax, ay, coll );
+        }
+        if( loopCount < 5)
+        {
+            cx[i] = (float) (cx[i] + vx[i] * dtSec + 0.5 * dpm * ax * dtSec * dtSec);
+            vx[i] = (float) (vx[i] + ax * dtSec * dpm);
+        }
+        else
+        {
+            sc.loopLimitHits++;
+        }
+
+        dtSec = tSec;
+        loopCount = 0;
+        while( (coll.top || coll.bot) && (dtSec > eps) && (loopCount < 5))
+        {
+            loopCount++;
+
+            float tTop;
+            float tBot;
+
+            if( coll.top )
+            {
+                tTop = solveQuadratic(0.5f*dpm*ay, vy[i], cy[i] - table.yMin - R, roots);
+                if( (roots.x > eps) && (roots.y > roots.x) ) tTop = roots.x;
+                if( (roots.y > eps) && (roots.x > roots.y) ) tTop = roots.y;
+                if( (tTop < 0) || (tTop > dtSec) ) tTop = eps;
+
+                cy[i] = table.yMin + R;
+                vy[i] = -(vy[i] + ay * tTop * dpm) * table.railRestitution;
+
+                dtSec = dtSec - tTop;
+                sc.railHits++;
+            }
+            if( coll.bot )
+            {
+                tBot = solveQuadratic(0.5f*dpm*ay, vy[i], cy[i] - table.yMax + R, roots);
+                if( (roots.x > eps) && (roots.y > roots.x) ) tBot = roots.x;
+                if( (roots.y > eps) && (roots.x > roots.y) ) tBot = roots.y;
+                if( (tBot < 0) || (tBot > dtSec) ) tBot = eps;
+
+                cy[i] = table.yMax - R;
+                vy[i] = -(vy[i] + ay * tBot * dpm) * table.railRestitution;
+
+                dtSec = dtSec - tBot;
+                sc.railHits++;
+            }
+
+            checkRailReflection( i, dtSec, ax, ay, coll );
+        }
+
+        if( loopCount < 5 )
+        {
+            cy[i] = (float) (cy[i] + vy[i] * dtSec + 0.5 * dpm * ay * dtSec * dtSec);
+            vy[i] = (float) (vy[i] + ay * dtSec * dpm);
+        }
+        else
+        {
+            sc.loopLimitHits++;
+        }
+
+        cx[i] = Math.max(cx[i], table.xMin + R);
+        cx[i] = Math.min(cx[i], table.xMax - R);
+        cy[i] = Math.max(cy[i], table.yMin + R);
+        cy[i] = Math.min(cy[i], table.yMax - R);
+    }
+
+    // move() in double on dcx, dcy, dvx, dvy, after taking over the
+    // floats that were changed since the last step. cx, cy, vx, vy,
+    // which all else reads, are the same rounded to float: in float
+    // the rounding of every step's increment adds up over a long run,
+    // this way only the copies are rounded and the double keeps what
+    // the float loses, as a compensated sum would. Anyone may still
+    // write the floats; one that no longer equals its double rounded
+    // was changed since (by a collision, setVelocity, ...). The
+    // friction phases and the rest of the state stay float
+    private void moveDouble( int i, float ax, float ay, double tSec, StepContext sc )
+    {
+        takeFloats( i );
+        double R = radius[i];
+        moveAxis( dcx, dvx, i, dpm*(double) ax, table.xMin + R, table.xMax - R, tSec, sc );
+        moveAxis( dcy, dvy, i, dpm*(double) ay, table.yMin + R, table.yMax - R, tSec, sc );
+        cx[i] = (float) dcx[i];
+        cy[i] = (float) dcy[i];
+        vx[i] = (float) dvx[i];
+        vy[i] = (float) dvy[i];
+    }
+
+    // The doubles of ball i, but those whose float was changed since
+    void takeFloats( int i )
+    {
+        if( cx[i] != (float) dcx[i] ) dcx[i] = cx[i];
+        if( cy[i] != (float) dcy[i] ) dcy[i] = cy[i];
+        if( vx[i] != (float) dvx[i] ) dvx[i] = vx[i];
+        if( vy[i] != (float) dvy[i] ) dvy[i] = vy[i];
+    }
+
+    // One axis of move(): c[i], v[i] with acceleration g (dp/sec*sec)
+    // between the rails at lo and hi (of the center)
+    private void moveAxis( double[] c, double[] v, int i, double g, double lo, double hi,
+                           double tSec, StepContext sc )
+    {
+        D3d roots = sc.rootsD;
+        double rest = table.railRestitution;
+        double dtSec = tSec;
+        int loopCount = 0;
+        double x = c[i];
+        double u = v[i];
+        double end = x + u*dtSec + 0.5*g*dtSec*dtSec;
+        boolean low = end < lo;
+        boolean high = end > hi;
+
+        while( (low || high) && (dtSec > eps) && (loopCount < 5) )
+        {
+            loopCount++;
+            if( low )
+            {
+                double t = railTime( g, u, x - lo, dtSec, roots );
+                x = lo;
+                u = -(u + g*t)*rest;
+                dtSec -= t;
+                sc.railHits++;
+            }
+            if( high )
+            {
+                double t = railTime( g, u, x - hi, dtSec, roots );
+                x = hi;
+                u = -(u + g*t)*rest;
+                dtSec -= t;
+                sc.railHits++;
+            }
+            end = x + u*dtSec + 0.5*g*dtSec*dtSec;
+            low = end < lo;
+            high = end > hi;
+        }
+        if( loopCount < 5 )
+        {
+            x = x + u*dtSec + 0.5*g*dtSec*dtSec;
+            u = u + g*dtSec;
+        }
+        else
+        {
+            sc.loopLimitHits++;
+        }
+        c[i] = Math.min( Math.max( x, lo ), hi );
+        v[i] = u;
+    }
+
+    // Time until the gap d to a rail is closed, picked as move() does
+    private double railTime( double g, double u, double d, double dtSec, D3d roots )
+    {
+        double t = solveQuadratic( 0.5*g, u, d, roots );
+        if( (roots.x > eps) && (roots.y > roots.x) ) t = roots.x;
+        if( (roots.y > eps) && (roots.x > roots.y) ) t = roots.y;
+        if( (t < 0) || (t > dtSec) ) t = eps;
+        return t;
+    }
+
+    // Drops what the doubles hold beyond their floats, e.g. so that a
+    // log of the floats can redo the run exactly
+    public void roundToFloat()
+    {
+        for( int i = 0; i < count; i++ )
+        {
+            dcx[i] = cx[i];
+            dcy[i] = cy[i];
+            dvx[i] = vx[i];
+            dvy[i] = vy[i];
+        }
+    }
+
+    // Rolls ball i over the way its center went since the last call
+    // (or since add); straight, which back and forth against a rail is exact.
+    // The orientation is a unit quaternion q per ball, turned by the
+    // rolling angular velocity P = (z x V)/R integrated over the way
+    // the center went, (z x d)/R. The step does not touch q: qcx, qcy
+    // keep the center at which q was last brought up to date, and the
+    // way since is rolled in here, for drawing once per published
+    // state. The frame N, E, Y follows from q in updateFrame
+    public void updateOrientation( int i )
+    {
+        float x = cx[i], y = cy[i];
+        roll( i, x - qcx[i], y - qcy[i] );
+        qcx[i] = x;
+        qcy[i] = y;
+    }
+
+    // Turns ball i as it rolls without slipping over the displacement
+    // dx,dy of its center: by the angle vector (z x d)/R, which is
+    // P = (z x V)/R times the step. For a half-angle h up to 0.25
+    // (half a radius rolled) the exponential is taken to 3rd order,
+    // relative error h^4/30, and q brought back to unit length with one
+    // Newton step for 1/sqrt; farther it takes cos and sin
+    public void roll( int i, float dx, float dy )
+    {
+        float h = 0.5f/radius[i];
+        float hx = -h*dy;
+        float hy =  h*dx;
+        float h2 = hx*hx + hy*hy;
+        float c, s;
+        if( h2 <= 0.0625f )
+        {
+            c = 1 - 0.5f*h2;            // cos h
+            s = 1 - h2*(1f/6);          // sin h / h
+        }
+        else
+        {
+            double a = Math.sqrt( h2 );
+            c = (float) Math.cos( a );
+            s = (float) (Math.sin( a )/a);
+        }
+        float ux = s*hx;
+        float uy = s*hy;
+
+        // q = (c, ux, uy, 0) * q, the turn is about a world axis
+        float w = qw[i], x = qx[i], y = qy[i], z = qz[i];
+        float nw = c*w - ux*x - uy*y;
+        float nX = c*x + ux*w + uy*z;
+        float nY = c*y + uy*w - ux*z;
+        float nZ = c*z + ux*y - uy*x;
+        float k = 1.5f - 0.5f*(nw*nw + nX*nX + nY*nY + nZ*nZ);
+        qw[i] = k*nw;  qx[i] = k*nX;  qy[i] = k*nY;  qz[i] = k*nZ;
+    }
+
+    // Brings the orientation of ball i up to date and sets its moving
+    // frame N, E, Y from it: the columns c0, c1, c2 of the rotation
+    // turn the starting frame N = (c0 + c2)/sqrt2, E = (c0 - c2)/sqrt2, Y = c1
+    public void updateFrame( int i )
+    {
+        updateOrientation( i );
+        float w = qw[i], x = qx[i], y = qy[i], z = qz[i];
+        float c0x = 1 - 2*(y*y + z*z), c0y = 2*(x*y + w*z),     c0z = 2*(x*z - w*y);
+        float c2x = 2*(x*z + w*y),     c2y = 2*(y*z - w*x),     c2z = 1 - 2*(x*x + y*y);
+        float r = 1f/SQRT2;
+        nx[i] = r*(c0x + c2x);  ny[i] = r*(c0y + c2y);  nz[i] = r*(c0z + c2z);
+        ex[i] = r*(c0x - c2x);  ey[i] = r*(c0y - c2y);  ez[i] = r*(c0z - c2z);
+        yx[i] = 2*(x*y - w*z);  yy[i] = 1 - 2*(x*x + z*z);  yz[i] = 2*(y*z + w*x);
+    }
+
+    // Given center coordinates check if ball i hits the rail
+    // Returns specific rail
+    boolean checkRailReflection( int i, double tSec, D3 A, RailsCollision rc )
+    {
+        return checkRailReflection( i, tSec, A.x, A.y, rc );
+    }
+
+    boolean checkRailReflection( int i, double tSec, float ax, float ay, RailsCollision rc )
+    {
+        boolean bReply = false;
+        float R = radius[i];
+        rc.left = false;
+        rc.right = false;
+        rc.top = false;
+        rc.bot = false;
+
+        // Projected displacement
+        float x = (float) (cx[i] + vx[i] * tSec + 0.5 * dpm * ax * tSec*tSec);
+        float y = (float) (cy[i] + vy[i] * tSec + 0.5 * dpm * ay * tSec*tSec);
+
+        if((y < (table.yMin + R)) )
+        {
+            bReply = true;
+            rc.top = true;
+        }
+        if((y > (table.yMax - R)) )
+        {
+            bReply = true;
+            rc.bot = true;
+        }
+        if((x < (table.xMin + R)) )
+        {
+            bReply = true;
+            rc.left = true;
+        }
+        if((x > (table.xMax - R)) )
+        {
+            bReply = true;
+            rc.right = true;
+        }
+
+        return bReply;
+    }
+
+    /**
+     * Reflection of ball i against rectangular borders
+     * Both position af the center and velocity are corrected
+     */
+    public void railReflection( int i )
+    {
+        float R = radius[i];
+        float rTop = table.yMin;
+        float rBot = table.yMax;
+        float rLeft = table.xMin;
+        float rRight = table.xMax;
+
+        if( cy[i] <= (R + rTop - 1.) )
+        {
+            cy[i] = 2*R + 2*rTop - cy[i];
+            vy[i] = -vy[i] * table.railRestitution;
+        }
+        if( cy[i] >= (rBot - R + 1.) )
+        {
+            cy[i] = -2*R + 2*rBot - cy[i];
+            vy[i] = -vy[i] * table.railRestitution;
+        }
+        if( cx[i] <= (R + rLeft - 1.) )
+        {
+            cx[i] = 2*R + 2*rLeft - cx[i];
+            vx[i] = -vx[i] * table.railRestitution;
+        }
+        if( cx[i] >= (rRight - R + 1.) )
+        {
+            cx[i] = -2*R + 2*rRight - cx[i];
+            vx[i] = -vx[i] * table.railRestitution;
+        }
+    }
+
+    // Selects the broad phase used by resolveOverlaps
+    public void setBroadPhase( BroadPhase bp )
+    {
+        broadPhase = bp;
+    }
+
+    public BroadPhase getBroadPhase()
+    {
+        return broadPhase;
+    }
+
+    // Resolves all overlapping pairs; the broad phase limits the
+    // exact tests to balls that are near each other
+    public void resolveOverlaps()
+    {
+        if( nSleeping == count )
+        {
+            // Nothing moved, so nothing can overlap anew
+            return;
+        }
+        broadPhase.findPairs( this, pairs );
+        for( int k = 0; k < pairs.size(); k++ )
+        {
+            resolvePair( pairs.second(k), pairs.first(k) );
+        }
+    }
+
+    // Checks whether ball nBix would collide (i.e. overlap)
+    // any of the other balls in the store. If so position and
+    // velocity of both is corrected
+    // This tests against all balls; resolveOverlaps is the
+    // cheap way to do it for every ball
+    public void checkBallOverlap( int nBix )
+    {
+        if( asleep[nBix] )
+        {
+            return;
+        }
+        for( int i = 0; i < count; i++ )
+        {
+            if( i != nBix )
+            {
+                resolvePair( i, nBix );
+            }
+        }
+    }
+
+    // If ball i overlaps ball nBix both are pushed apart
+    // and the collision is done. Sleepers stay put unless hit hard
+    public void resolvePair( int i, int nBix )
+    {
+        float dx = cx[i] - cx[nBix];
+        float dy = cy[i] - cy[nBix];
+        float rS = radius[i] + radius[nBix];
+
+        // if overlap
+        if( dx*dx + dy*dy < rS*rS )
+        {
+            if( asleep[i] | asleep[nBix] )
+            {
+                if( asleep[i] & asleep[nBix] )
+                {
+                    return;
+                }
+                int s = asleep[i] ? i : nBix;
+                if( leanOn( asleep[i] ? nBix : i, s ) )
+                {
+                    return;
+                }
+                wake( s );
+            }
+            undoOverlap( this, i, this, nBix );
+            doBallCollision( this, i, this, nBix );
+        }
+    }
+
+    // Ball i overlaps the sleeping ball s. Unless it runs into s faster
+    // than wakeSpeed, i alone is pushed out and loses its velocity
+    // towards s, as at a rail; false if s has to wake instead
+    private boolean leanOn( int i, int s )
+    {
+        float ux = cx[i] - cx[s];
+        float uy = cy[i] - cy[s];
+        float d = (float) Math.sqrt( ux*ux + uy*uy );
+        if( d == 0 )
+        {
+            return false;
+        }
+        ux /= d;
+        uy /= d;
+        float vn = vx[i]*ux + vy[i]*uy;
+        if( vn < -wakeSpeed )
+        {
+            return false;
+        }
+        float push = radius[i] + radius[s] - d;
+        shiftCenter( i, push*ux, push*uy, 0 );
+        if( vn < 0 )
+        {
+            vx[i] -= vn*ux;
+            vy[i] -= vn*uy;
+        }
+        return true;
+    }
+
+    // The two balls touch. The velocity components in the
+    // direction of the line joining the centers are interchanged
+    // This is correct only for equal masses
+    // Ball 1 is (s1,i1), ball 2 is (s2,i2); they may live in different stores
+    static void doBallCollision( BallStore s2, int i2, BallStore s1, int i1 )
+    {
+        float rDx = s2.cx[i2] - s1.cx[i1];
+        float rDy = s2.cy[i2] - s1.cy[i1];
+        float rD  = (float) Math.sqrt( rDx*rDx + rDy*rDy );
+        rDx = rDx/rD;
+        rDy = rDy/rD;
+
+        float rProj1 = s1.vx[i1] * rDx + s1.vy[i1] * rDy;
+        float rProj2 = s2.vx[i2] * rDx + s2.vy[i2] * rDy;
+
+        s1.vx[i1] = s1.vx[i1] - rProj1*rDx + rProj2*rDx;
+        s1.vy[i1] = s1.vy[i1] - rProj1*rDy + rProj2*rDy;
+        s2.vx[i2] = s2.vx[i2] - rProj2*rDx + rProj1*rDx;
+        s2.vy[i2] = s2.vy[i2] - rProj2*rDy + rProj1*rDy;
+    }
+
+    // Two balls overlap (or might overlap). Step back
+    // to correct so they just touch.
+    static void undoOverlap( BallStore s2, int i2, BallStore s1, int i1 )
+    {
+        float rDx = s2.cx[i2] - s1.cx[i1];
+        float rDy = s2.cy[i2] - s1.cy[i1];
+        float rD  = (float) Math.sqrt( rDx*rDx + rDy*rDy );
+        float rDelta = s2.radius[i2] + s1.radius[i1] - rD;
+
+        float rDeltaX = rDelta*rDx/rD;
+        float rDeltaY = rDelta*rDy/rD;
+
+        s1.shiftCenter( i1, -rDeltaX/2, -rDeltaY/2, 0 );
+        s2.shiftCenter( i2, rDeltaX/2, rDeltaY/2, 0 );
+    }
+
+    //Return value is the smaller positive root, if any;
+    //otherwise returns a negative value, roots returns both
+    //roots
+    public static float solveQuadratic( float a, float b, float c, D3 roots )
+    {
+        float r = -1;
+        float r1;
+        float r2;
+        float disc;
+
+        roots.x = -1;
+        roots.y = -1;
+        roots.z = -1;
+
+        disc = b*b - 4f*a*c;
+        if( disc >= 0 )
+        {
+            disc = (float) Math.sqrt( disc );
+            r1 = (-b + disc)/(2*a);
+            r2 = (-b - disc)/(2*a);
+            if( (r1 >= 0) && ((r2 >= r1) || (r2 < 0)) )
+            {
+                r = r1;
+            }
+            if( (r2 >= 0) && ((r1 >= r2) || (r1 < 0)) )
+            {
+                r = r2; //The smaller positive root
+                r2 = r1;
+                r1 = r;
+            }
+
+            roots.x = r1;
+            roots.y = r2;
+        }
+        return r;
+    }
+
+    // solveQuadratic in double
+    public static double solveQuadratic( double a, double b, double c, D3d roots )
+    {
+        double r = -1;
+        double r1;
+        double r2;
+        double disc;
+
+        roots.x = -1;
+        roots.y = -1;
+        roots.z = -1;
+
+        disc = b*b - 4*a*c;
+        if( disc >= 0 )
+        {
+            disc = Math.sqrt( disc );
+            r1 = (-b + disc)/(2*a);
+            r2 = (-b - disc)/(2*a);
+            if( (r1 >= 0) && ((r2 >= r1) || (r2 < 0)) )
+            {
+                r = r1;
+            }
+            if( (r2 >= 0) && ((r1 >= r2) || (r1 < 0)) )
+            {
+                r = r2;
+                r2 = r1;
+                r1 = r;
+            }
+
+            roots.x = r1;
+            roots.y = r2;
+        }
+        return r;
+    }
+
+    // Copies everything of ball from into slot to
+    private void copySlot( int from, int to )
+    {
+        cx[to] = cx[from];  cy[to] = cy[from];  cz[to] = cz[from];
+        vx[to] = vx[from];  vy[to] = vy[from];  vz[to] = vz[from];
+        dcx[to] = dcx[from];  dcy[to] = dcy[from];
+        dvx[to] = dvx[from];  dvy[to] = dvy[from];
+        px[to] = px[from];  py[to] = py[from];  pz[to] = pz[from];
+        qw[to] = qw[from];  qx[to] = qx[from];  qy[to] = qy[from];  qz[to] = qz[from];
+        qcx[to] = qcx[from];  qcy[to] = qcy[from];
+        nx[to] = nx[from];  ny[to] = ny[from];  nz[to] = nz[from];
+        ex[to] = ex[from];  ey[to] = ey[from];  ez[to] = ez[from];
+        yx[to] = yx[from];  yy[to] = yy[from];  yz[to] = yz[from];
+        radius[to] = radius[from];
+        mass[to]   = mass[from];
+        color[to]  = color[from];
+        restitution[to] = restitution[from];
+        grip[to]   = grip[from];
+        phase[to]  = phase[from];
+        asleep[to] = asleep[from];
+        sx[to] = sx[from];  sy[to] = sy[from];
+        still[to]  = still[from];
+    }
+
+    private void allocate( int n )
+    {
+        cx = new float[n];  cy = new float[n];  cz = new float[n];
+        vx = new float[n];  vy = new float[n];  vz = new float[n];
+        dcx = new double[n];  dcy = new double[n];
+        dvx = new double[n];  dvy = new double[n];
+        px = new float[n];  py = new float[n];  pz = new float[n];
+        qw = new float[n];  qx = new float[n];  qy = new float[n];  qz = new float[n];
+        qcx = new float[n]; qcy = new float[n];
+        nx = new float[n];  ny = new float[n];  nz = new float[n];
+        ex = new float[n];  ey = new float[n];  ez = new float[n];
+        yx = new float[n];  yy = new float[n];  yz = new float[n];
+        radius = new float[n];
+        mass   = new float[n];
+        color  = new int[n];
+        restitution = new float[n];
+        grip   = new float[n];
+        phase  = new byte[n];
+        asleep = new boolean[n];
+        sx = new float[n];  sy = new float[n];
+        still  = new float[n];
+    }
+
+    private void grow( int n )
+    {
+        cx = Arrays.copyOf( cx, n );  cy = Arrays.copyOf( cy, n );  cz = Arrays.copyOf( cz, n );
+        vx = Arrays.copyOf( vx, n );  vy = Arrays.copyOf( vy, n );  vz = Arrays.copyOf( vz, n );
+        dcx = Arrays.copyOf( dcx, n );  dcy = Arrays.copyOf( dcy, n );
+        dvx = Arrays.copyOf( dvx, n );  dvy = Arrays.copyOf( dvy, n );
+        px = Arrays.copyOf( px, n );  py = Arrays.copyOf( py, n );  pz = Arrays.copyOf( pz, n );
+        qw = Arrays.copyOf( qw, n );  qx = Arrays.copyOf( qx, n );  qy = Arrays.copyOf( qy, n );  qz = Arrays.copyOf( qz, n );
+        qcx = Arrays.copyOf( qcx, n );  qcy = Arrays.copyOf( qcy, n );
+        nx = Arrays.copyOf( nx, n );  ny = Arrays.copyOf( ny, n );  nz = Arrays.copyOf( nz, n );
+        ex = Arrays.copyOf( ex, n );  ey = Arrays.copyOf( ey, n );  ez = Arrays.copyOf( ez, n );
+        yx = Arrays.copyOf( yx, n );  yy = Arrays.copyOf( yy, n );  yz = Arrays.copyOf( yz, n );
+        radius = Arrays.copyOf( radius, n );
+        mass   = Arrays.copyOf( mass, n );
+        color  = Arrays.copyOf( color, n );
+        restitution = Arrays.copyOf( restitution, n );
+        grip   = Arrays.copyOf( grip, n );
+        phase  = Arrays.copyOf( phase, n );
+        asleep = Arrays.copyOf( asleep, n );
+        sx = Arrays.copyOf( sx, n );  sy = Arrays.copyOf( sy, n );
+        still  = Arrays.copyOf( still, n );
+    }
+}
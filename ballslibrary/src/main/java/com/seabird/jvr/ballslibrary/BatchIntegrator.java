@@ -0,0 +1,327 @@
+package com.seabird.jvr.ballslibrary;
+
+/**
+ * Integrates a whole BallStore like stepAll, but in passes over the
+ * arrays instead of ball by ball:
+ *
+ * 1. for every ball the free flight position and velocity
+ *    C + V*dt + 0.5*dpm*A*dt^2, V + A*dt*dpm, and a flag if that
+ *    position is beyond a rail. The same arithmetic for all balls,
+ *    no branches, no calls: a plain counted loop over primitive
+ *    arrays that the JIT compiles to SIMD instructions
+ * 2. balls without flag take the new values; flagged balls go
+ *    through the exact BallStore.doStep (solveQuadratic etc.)
+ *
+ * Pass 1 is evaluated in float, doStep in double, so a free flying
+ * ball can end up a few ulps (of the order of 1e-4 dp) away from
+ * where stepAll puts it; flagged balls get exactly the doStep result.
+ * A ball whose position was not flagged is inside the table, so the
+ * batch never lets a ball past a rail.
+ *
+ * With friction on (BallStore.friction) pass 1 takes only balls that
+ * roll freely: the acceleration is 5/7 of the tilt less mu_r*g along
+ * V, per ball. Balls that slide, stand still, may come to a stop in
+ * the step or touch a rail are flagged and get frictionStep.
+ *
+ * With doublePrecision (BallStore) pass 1 is evaluated in double on
+ * the double state, which gives exactly what doStep gives; friction
+ * then takes every ball through doStep. Pass 1 reads each float
+ * changed since the last step (by a collision) instead of its double,
+ * picked per element by a select, not a branch, so the loop stays
+ * free of calls.
+ *
+ * Sleeping balls (BallStore.sleep) go through pass 1 like all others,
+ * which keeps it branch free, but pass 2 leaves them alone.
+ *
+ * Disjoint index ranges may be stepped from different threads, each
+ * with its own StepContext, once prepare() has sized the arrays.
+ */
+public class BatchIntegrator
+{
+    private final BallStore store;
+    private final StepContext ctx = new StepContext();
+
+    private float[] xs = new float[0], ys = new float[0];
+    private float[] vxs = new float[0], vys = new float[0];
+    private boolean[] hit = new boolean[0];
+    private double[] dxs = new double[0], dys = new double[0];
+    private double[] dvxs = new double[0], dvys = new double[0];
+    private int flagged;
+
+    public BatchIntegrator( BallStore store )
+    {
+        this.store = store;
+    }
+
+    // Balls that needed the exact path in the last step()
+    public int getFlaggedCount()
+    {
+        return flagged;
+    }
+
+    // Steps every ball of the store
+    public void step( float ax, float ay, double tMilli )
+    {
+        step( ax, ay, tMilli, ctx );
+    }
+
+    // As above, rail hits are counted in sc
+    public void step( float ax, float ay, double tMilli, StepContext sc )
+    {
+        store.updateSleep( ax, ay, tMilli );
+        if( store.getSleepingCount() == store.size() )
+        {
+            flagged = 0;
+            return;
+        }
+        prepare();
+        flagged = step( 0, store.size(), ax, ay, tMilli, sc );
+    }
+
+    // Grows the scratch arrays to the store size
+    public void prepare()
+    {
+        int n = store.capacity();
+        if( hit.length < n )
+        {
+            xs  = new float[n];  ys  = new float[n];
+            vxs = new float[n];  vys = new float[n];
+            hit = new boolean[n];
+        }
+        if( store.doublePrecision && (dxs.length < n) )
+        {
+            dxs  = new double[n];  dys  = new double[n];
+            dvxs = new double[n];  dvys = new double[n];
+        }
+    }
+
+    // Steps balls lo..hi-1, returns the number of flagged balls;
+    // the caller does the store's updateSleep first
+    public int step( int lo, int hi, float ax, float ay, double tMilli, StepContext sc )
+    {
+        BallStore s = store;
+        if( s.doublePrecision )
+        {
+            return doubleStep( lo, hi, ax, ay, tMilli, sc );
+        }
+        if( s.friction )
+        {
+            return frictionStep( lo, hi, ax, ay, tMilli, sc );
+        }
+
+        BilliardTable table = s.table;
+        double tSec = tMilli/1000.;
+
+        // Float throughout: float <-> double conversions keep the
+        // JIT from vectorising the loop
+        float t   = (float) tSec;
+        float dx  = (float) (0.5 * s.dpm * ax * tSec*tSec);
+        float dy  = (float) (0.5 * s.dpm * ay * tSec*tSec);
+        float dvx = (float) (ax * tSec * s.dpm);
+        float dvy = (float) (ay * tSec * s.dpm);
+        int xMin = table.xMin, xMax = table.xMax;
+        int yMin = table.yMin, yMax = table.yMax;
+
+        float[] cx = s.cx, cy = s.cy, vx = s.vx, vy = s.vy, radius = s.radius;
+        float[] xs = this.xs, ys = this.ys, vxs = this.vxs, vys = this.vys;
+        boolean[] hit = this.hit;
+
+        // Pass 1: free flight and rail flags
+        for( int i = lo; i < hi; i++ )
+        {
+            float R = radius[i];
+            float x = cx[i] + vx[i]*t + dx;
+            float y = cy[i] + vy[i]*t + dy;
+            xs[i]  = x;
+            ys[i]  = y;
+            vxs[i] = vx[i] + dvx;
+            vys[i] = vy[i] + dvy;
+            hit[i] = (x < (xMin + R)) | (x > (xMax - R)) | (y < (yMin + R)) | (y > (yMax - R));
+        }
+
+        // Pass 2: take over, or the exact path
+        boolean[] asleep = s.asleep;
+        int nHit = 0;
+        for( int i = lo; i < hi; i++ )
+        {
+            if( asleep[i] )
+            {
+                continue;
+            }
+            if( hit[i] )
+            {
+                s.doStep( i, ax, ay, tMilli, sc );
+                nHit++;
+            }
+            else
+            {
+                cx[i] = xs[i];
+                cy[i] = ys[i];
+                vx[i] = vxs[i];
+                vy[i] = vys[i];
+            }
+        }
+        return nHit;
+    }
+
+    // step() in double; with friction all exact
+    private int doubleStep( int lo, int hi, float ax, float ay, double tMilli, StepContext sc )
+    {
+        BallStore s = store;
+        BilliardTable table = s.table;
+        boolean[] asleep = s.asleep;
+        int nHit = 0;
+
+        if( s.friction )
+        {
+            for( int i = lo; i < hi; i++ )
+            {
+                if( !asleep[i] )
+                {
+                    s.doStep( i, ax, ay, tMilli, sc );
+                    nHit++;
+                }
+            }
+            return nHit;
+        }
+
+        double t   = tMilli/1000.;
+        double gx  = s.dpm*(double) ax;
+        double gy  = s.dpm*(double) ay;
+        int xMin = table.xMin, xMax = table.xMax;
+        int yMin = table.yMin, yMax = table.yMax;
+
+        float[] cx = s.cx, cy = s.cy, vx = s.vx, vy = s.vy, radius = s.radius;
+        double[] dcx = s.dcx, dcy = s.dcy, dvx = s.dvx, dvy = s.dvy;
+        double[] xs = this.dxs, ys = this.dys, vxs = this.dvxs, vys = this.dvys;
+        boolean[] hit = this.hit;
+
+        // Pass 1: free flight and rail flags, as BallStore.moveAxis. A
+        // float changed since the last step (a collision) replaces its
+        // double, as in BallStore.takeFloats, but by a select, not a branch
+        for( int i = lo; i < hi; i++ )
+        {
+            double R = radius[i];
+            double x0 = (cx[i] == (float) dcx[i]) ? dcx[i] : cx[i];
+            double y0 = (cy[i] == (float) dcy[i]) ? dcy[i] : cy[i];
+            double u0 = (vx[i] == (float) dvx[i]) ? dvx[i] : vx[i];
+            double w0 = (vy[i] == (float) dvy[i]) ? dvy[i] : vy[i];
+            double x = x0 + u0*t + 0.5*gx*t*t;
+            double y = y0 + w0*t + 0.5*gy*t*t;
+            xs[i]  = x;
+            ys[i]  = y;
+            vxs[i] = u0 + gx*t;
+            vys[i] = w0 + gy*t;
+            hit[i] = (x < (xMin + R)) | (x > (xMax - R)) | (y < (yMin + R)) | (y > (yMax - R));
+        }
+
+        // Pass 2: take over, or the exact path
+        for( int i = lo; i < hi; i++ )
+        {
+            if( asleep[i] )
+            {
+                continue;
+            }
+            if( hit[i] )
+            {
+                s.doStep( i, ax, ay, tMilli, sc );
+                nHit++;
+            }
+            else
+            {
+                dcx[i] = xs[i];
+                dcy[i] = ys[i];
+                dvx[i] = vxs[i];
+                dvy[i] = vys[i];
+                cx[i] = (float) xs[i];
+                cy[i] = (float) ys[i];
+                vx[i] = (float) vxs[i];
+                vy[i] = (float) vys[i];
+            }
+        }
+        return nHit;
+    }
+
+    // step() with friction: pass 1 for rolling balls, the rest exact
+    private int frictionStep( int lo, int hi, float ax, float ay, double tMilli, StepContext sc )
+    {
+        BallStore s = store;
+        BilliardTable table = s.table;
+        double tSec = tMilli/1000.;
+
+        float t   = (float) tSec;
+        float h   = (float) (0.5 * s.dpm * tSec*tSec);
+        float dv  = (float) (s.dpm * tSec);
+        float rx  = (5f/7)*ax;
+        float ry  = (5f/7)*ay;
+        float muR = table.rollingFriction*BallStore.G;
+        // Near the thresholds doStep decides: half the slip, twice the speed
+        float slip2 = 0.25f*BallStore.SLIP_EPS*BallStore.SLIP_EPS;
+        float rest2 = 4*BallStore.REST_EPS*BallStore.REST_EPS;
+        float tol = BallStore.REST_TOL + 1;
+        int xMin = table.xMin, xMax = table.xMax;
+        int yMin = table.yMin, yMax = table.yMax;
+
+        float[] cx = s.cx, cy = s.cy, vx = s.vx, vy = s.vy, radius = s.radius;
+        float[] px = s.px, py = s.py, pz = s.pz;
+        float[] xs = this.xs, ys = this.ys, vxs = this.vxs, vys = this.vys;
+        boolean[] hit = this.hit;
+
+        // Pass 1: rolling flight and flags
+        for( int i = lo; i < hi; i++ )
+        {
+            float R = radius[i];
+            float vxi = vx[i];
+            float vyi = vy[i];
+            float ux = vxi - R*py[i];
+            float uy = vyi + R*px[i];
+            float v2 = vxi*vxi + vyi*vyi;
+            float f = muR/(float) Math.sqrt( v2 );
+            float gx = rx - f*vxi;
+            float gy = ry - f*vyi;
+            float x = cx[i] + vxi*t + h*gx;
+            float y = cy[i] + vyi*t + h*gy;
+            float nvx = vxi + dv*gx;
+            float nvy = vyi + dv*gy;
+            xs[i]  = x;
+            ys[i]  = y;
+            vxs[i] = nvx;
+            vys[i] = nvy;
+            hit[i] = (x < (xMin + R)) | (x > (xMax - R)) | (y < (yMin + R)) | (y > (yMax - R))
+                   | (cx[i] < (xMin + R + tol)) | (cx[i] > (xMax - R - tol))
+                   | (cy[i] < (yMin + R + tol)) | (cy[i] > (yMax - R - tol))
+                   | (ux*ux + uy*uy > slip2) | (v2 <= rest2)
+                   | ((gx*vxi + gy*vyi < 0) & (gx*nvx + gy*nvy > 0));
+        }
+
+        // Pass 2: take over, or the exact path
+        float dSpin = table.spinDeceleration*t;
+        boolean[] asleep = s.asleep;
+        int nHit = 0;
+        for( int i = lo; i < hi; i++ )
+        {
+            if( asleep[i] )
+            {
+                continue;
+            }
+            if( hit[i] )
+            {
+                s.doStep( i, ax, ay, tMilli, sc );
+                nHit++;
+            }
+            else
+            {
+                float R = radius[i];
+                cx[i] = xs[i];
+                cy[i] = ys[i];
+                vx[i] = vxs[i];
+                vy[i] = vys[i];
+                px[i] = -vys[i]/R;
+                py[i] =  vxs[i]/R;
+                pz[i] = (pz[i] > 0) ? Math.max( pz[i] - dSpin, 0 ) : Math.min( pz[i] + dSpin, 0 );
+                s.phase[i] = BallStore.ROLLING;
+            }
+        }
+        return nHit;
+    }
+}
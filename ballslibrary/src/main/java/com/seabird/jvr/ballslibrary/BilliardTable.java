@@ -1,4 +1,4 @@
-package com.seabird.jvr.bouncingball;
+package com.seabird.jvr.ballslibrary;
 
 /**
  * Created by jvr on 30.08.2016.
@@ -13,6 +13,8 @@ public class BilliardTable
     public  float   spinDeceleration;   //5-15 rad/sec^2
     public  float   railRestitution;    //0.6-0.9 Ratio of velocity after to before collision
                                         // this is also sqrt(h/H), height after to before of dropped ball
+    public  float   collidingRestitution; //0.92-0.98 Ratio of normal velocity after to before ball-ball collision
+    public  float   collidingFriction;  //0.03-0.08 ball-ball, proportion of the normal impulse
 
     public BilliardTable()
     {
@@ -28,6 +30,8 @@ public class BilliardTable
         slidingFriction     = 0.25f;    //0.15-0.4 proportion of vertical force
         spinDeceleration    = 10f;      //5-15 rad/sec^2
         railRestitution     = 0.75f;    //0.6-0.9 Ratio of velocity after to before collision
+        collidingRestitution = 0.95f;   //0.92-0.98 Ratio of velocity after to before collision
+        collidingFriction   = 0.06f;    //0.03-0.08 proportion of normal impulse
     }
 
     public BilliardTable( int xMin, int xMax, int yMin, int yMax )
@@ -42,6 +46,8 @@ public class BilliardTable
         slidingFriction     = 0.25f;    //0.15-0.4 proportion of vertical force
         spinDeceleration    = 10f;      //5-15 rad/sec^2
         railRestitution     = 0.75f;    //0.6-0.9 Ratio of velocity after to before collision
+        collidingRestitution = 0.95f;   //0.92-0.98 Ratio of velocity after to before collision
+        collidingFriction   = 0.06f;    //0.03-0.08 proportion of normal impulse
     }
 
     public BilliardTable( int xMin, int xMax, int yMin, int yMax,
@@ -59,5 +65,9 @@ public class BilliardTable
         this.slidingFriction  = slidingFriction;
         this.spinDeceleration = spinDeceleration;
         this.railRestitution  = railRestitution;
+
+        // Mid values
+        collidingRestitution = 0.95f;   //0.92-0.98 Ratio of velocity after to before collision
+        collidingFriction   = 0.06f;    //0.03-0.08 proportion of normal impulse
     }
 }
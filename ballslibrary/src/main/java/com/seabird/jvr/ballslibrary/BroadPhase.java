@@ -0,0 +1,23 @@
+package com.seabird.jvr.ballslibrary;
+
+/**
+ * Broad phase of the ball overlap check: cheaply finds the pairs
+ * of balls that may overlap so that only those get the exact test
+ * (BallStore.resolvePair).
+ *
+ * Implementations:
+ * UniformGrid      buckets by square cells; best for similar radii
+ * SweepAndPrune    sorted x-intervals; copes with widely varying radii
+ */
+public interface BroadPhase
+{
+    // Clears pairs, then adds every candidate pair (i,j) of the store
+    // but those of two sleeping balls. Each pair is reported once;
+    // implementations must not allocate once their buffers have
+    // reached the size of the store
+    void findPairs( BallStore store, IntPairBuffer pairs );
+
+    // As findPairs, but also reports balls up to pad apart (ContactSolver
+    // takes pairs that nearly touch); pad 0 is the plain findPairs
+    void findPairs( BallStore store, float pad, IntPairBuffer pairs );
+}
@@ -0,0 +1,467 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.util.Arrays;
+
+/**
+ * Ball-ball contacts by impulses, for all touching pairs of a
+ * BallStore at once. Replaces the pairwise resolveOverlaps, whose
+ * doBallCollision swaps the normal velocities and so holds only for
+ * equal masses and perfectly elastic balls.
+ *
+ * Every pair the broad phase finds less than REST_TOL apart is a
+ * contact with normal n from ball i to ball j. An impulse along n
+ * changes the velocities by J/M (BallStore.mass); one along the
+ * tangent t = z x n changes them and the spin pz about the vertical,
+ * I = 2/5*M*R^2. Per contact:
+ *   normal      the balls must not approach each other
+ *   friction    the slip of the touching surfaces is stopped by at
+ *               most mu times the normal impulse
+ *   restitution a new contact approaching faster than restSpeed
+ *               separates with e of that speed; a contact that
+ *               already existed in the last step is a resting one
+ *               and does not bounce
+ * mu and e come from the two balls (BallStore.grip, restitution):
+ * mu = sqrt(mu_i*mu_j), so a frictionless ball slips on anything, and
+ * e = max(e_i, e_j), so a lively ball bounces off a dead one.
+ * The broad phase is asked for pairs up to REST_TOL apart, the
+ * distance up to which a pair counts as touching.
+ * A ball in contact that also touches a rail gets a contact with the
+ * rail as well, so that a pile is held by the rail instead of being
+ * pushed into it.
+ *
+ * In a cluster the contacts depend on each other, so solve() goes
+ * over all of them up to iterations times, each time applying only
+ * the change of the impulse (sequential impulses). The impulse
+ * accumulated per contact is clamped, not the change, so a later
+ * pass can take back what an earlier one overdid. A pass that changes
+ * no velocity by more than tolerance ends the loop early. Restitution
+ * is added in one more pass on top of the impulses that stopped the
+ * balls.
+ *
+ * Warm starting: contacts that already existed in the last step start
+ * with the impulses they ended with there, which in a pile at rest is
+ * nearly the answer, so one or two passes suffice where cold starts
+ * use them all and still jitter. The impulses are kept per pair of
+ * indices; reset() forgets them and is due whenever the indices change
+ * (World does it on remove).
+ *
+ * Afterwards each overlap is undone once along n, split in the inverse
+ * ratio of the masses, and balls pushed beyond a rail are put back.
+ *
+ * A sleeping ball (BallStore.sleep) counts as infinitely heavy unless
+ * it is hit faster than the store's wakeSpeed, in which case it wakes
+ * and takes part; two sleepers are no contact. Allocates nothing once
+ * the buffers have reached the number of contacts.
+ */
+public class ContactSolver
+{
+    private static final long EMPTY = -1L;
+
+    public int iterations = 8;
+    public boolean warmStart = true;
+    public float tolerance = 0.5f;      // dp/sec, smaller changes end the loop
+    public float restSpeed = 20;        // dp/sec, slower approach does not bounce
+
+    private final BallStore store;
+    private final IntPairBuffer pairs = new IntPairBuffer();
+
+    // Contacts of the current step
+    private int n;
+    private int[] ci = new int[0], cj = new int[0];
+    private float[] cnx = new float[0], cny = new float[0];
+    private float[] wi = new float[0], wj = new float[0];   // 1/M, 0 for a sleeper
+    private float[] kn = new float[0], kt = new float[0];   // 1/effective mass
+    private float[] bounce = new float[0];                  // normal speed to reach
+    private float[] mu = new float[0];                      // friction of the pair
+    private float[] jn = new float[0], jt = new float[0];   // accumulated impulses
+
+    // Contacts of balls with the rails: ball, normal towards the rail,
+    // mass, side (0..3 for xMin, xMax, yMin, yMax), impulse
+    private int nr;
+    private int[] rb = new int[0], side = new int[0];
+    private float[] rnx = new float[0], rny = new float[0];
+    private float[] rm = new float[0], rjn = new float[0];
+    private boolean[] marked = new boolean[0];
+
+    // Impulses of the last step by pair, open addressing
+    private long[] keys = new long[0];
+    private float[] keptJn = new float[0], keptJt = new float[0];
+
+    private int used;                   // passes in the last solve()
+
+    public ContactSolver( BallStore store )
+    {
+        this.store = store;
+    }
+
+    // Contacts in the last solve()
+    public int getContactCount()
+    {
+        return n;
+    }
+
+    // Passes over the contacts in the last solve()
+    public int getIterationsUsed()
+    {
+        return used;
+    }
+
+    // Forget the impulses kept for warm starting
+    public void reset()
+    {
+        Arrays.fill( keys, EMPTY );
+    }
+
+    public void solve()
+    {
+        BallStore s = store;
+        n = 0;
+        nr = 0;
+        used = 0;
+        if( s.getSleepingCount() == s.size() )
+        {
+            return;
+        }
+        s.getBroadPhase().findPairs( s, BallStore.REST_TOL, pairs );
+        for( int k = 0; k < pairs.size(); k++ )
+        {
+            // Lower index first, so a pair keeps its n from step to step
+            int i = pairs.first( k ), j = pairs.second( k );
+            addContact( Math.min( i, j ), Math.max( i, j ) );
+        }
+        addRailContacts();
+
+        for( int it = 0; it < iterations; it++ )
+        {
+            used++;
+            if( pass() <= tolerance )
+            {
+                break;
+            }
+        }
+        keep();
+        restitute();
+        separate();
+    }
+
+    // Contact between i and j if they touch, with its warm start
+    private void addContact( int i, int j )
+    {
+        BallStore s = store;
+        float dx = s.cx[j] - s.cx[i];
+        float dy = s.cy[j] - s.cy[i];
+        float rS = s.radius[i] + s.radius[j] + BallStore.REST_TOL;
+        float d2 = dx*dx + dy*dy;
+        if( d2 >= rS*rS )
+        {
+            return;
+        }
+        float d = (float) Math.sqrt( d2 );
+        float ux = 1, uy = 0;
+        if( d > 0 )
+        {
+            ux = dx/d;
+            uy = dy/d;
+        }
+        float vn = (s.vx[j] - s.vx[i])*ux + (s.vy[j] - s.vy[i])*uy;
+
+        boolean sleeper = s.asleep[i] | s.asleep[j];
+        if( sleeper )
+        {
+            if( s.asleep[i] & s.asleep[j] )
+            {
+                return;
+            }
+            if( vn < -s.wakeSpeed )
+            {
+                s.wake( s.asleep[i] ? i : j );
+                sleeper = false;
+            }
+        }
+
+        ensureCapacity( n + 1 );
+        int k = n++;
+        ci[k] = i;
+        cj[k] = j;
+        cnx[k] = ux;
+        cny[k] = uy;
+        wi[k] = s.asleep[i] ? 0 : 1f/s.mass[i];
+        wj[k] = s.asleep[j] ? 0 : 1f/s.mass[j];
+        kn[k] = 1f/(wi[k] + wj[k]);
+        // Contact point R away from the center along n: R^2/I = 5/(2M)
+        kt[k] = 1f/(3.5f*(wi[k] + wj[k]));
+
+        // A contact that existed in the last step is a resting one
+        int h = find( key( i, j ) );
+        boolean kept = (h >= 0) && (keys[h] != EMPTY);
+        float e = Math.max( s.restitution[i], s.restitution[j] );
+        bounce[k] = (!kept && (vn < -restSpeed) && !sleeper) ? -e*vn : 0;
+        // equal coefficients stay exact
+        mu[k] = (s.grip[i] == s.grip[j]) ? s.grip[i] : (float) Math.sqrt( s.grip[i]*s.grip[j] );
+        jn[k] = 0;
+        jt[k] = 0;
+        if( kept && warmStart )
+        {
+            jn[k] = keptJn[h];
+            jt[k] = keptJt[h];
+            apply( k, jn[k], jt[k] );
+        }
+    }
+
+    // The rails touched by balls that touch other balls: a pile lies
+    // on them, and must not be pushed through
+    private void addRailContacts()
+    {
+        BallStore s = store;
+        nr = 0;
+        if( marked.length < s.capacity() )
+        {
+            marked = new boolean[s.capacity()];
+        }
+        for( int k = 0; k < n; k++ )
+        {
+            if( wi[k] > 0 ) addRailContacts( ci[k] );
+            if( wj[k] > 0 ) addRailContacts( cj[k] );
+        }
+        for( int k = 0; k < n; k++ )
+        {
+            marked[ci[k]] = false;
+            marked[cj[k]] = false;
+        }
+    }
+
+    private void addRailContacts( int i )
+    {
+        if( marked[i] )
+        {
+            return;
+        }
+        marked[i] = true;
+        BallStore s = store;
+        BilliardTable t = s.table;
+        float r = s.radius[i] + BallStore.REST_TOL;
+        if( s.cx[i] - r < t.xMin ) addRailContact( i, -1, 0, 0 );
+        if( s.cx[i] + r > t.xMax ) addRailContact( i, 1, 0, 1 );
+        if( s.cy[i] - r < t.yMin ) addRailContact( i, 0, -1, 2 );
+        if( s.cy[i] + r > t.yMax ) addRailContact( i, 0, 1, 3 );
+    }
+
+    private void addRailContact( int i, float ux, float uy, int sd )
+    {
+        if( rb.length <= nr )
+        {
+            int c = Math.max( 64, 2*rb.length );
+            rb = Arrays.copyOf( rb, c );
+            side = Arrays.copyOf( side, c );
+            rnx = Arrays.copyOf( rnx, c );
+            rny = Arrays.copyOf( rny, c );
+            rm = Arrays.copyOf( rm, c );
+            rjn = Arrays.copyOf( rjn, c );
+        }
+        int k = nr++;
+        rb[k] = i;
+        side[k] = sd;
+        rnx[k] = ux;
+        rny[k] = uy;
+        rm[k] = store.mass[i];
+        rjn[k] = 0;
+        int h = find( key( i, -1 - sd ) );
+        if( warmStart && (h >= 0) && (keys[h] != EMPTY) )
+        {
+            rjn[k] = keptJn[h];
+            applyRail( k, rjn[k] );
+        }
+    }
+
+    // One pass over all contacts; returns the largest velocity change
+    private float pass()
+    {
+        BallStore s = store;
+        float[] vx = s.vx, vy = s.vy, pz = s.pz, r = s.radius;
+        float most = 0;
+        for( int k = 0; k < n; k++ )
+        {
+            int i = ci[k], j = cj[k];
+            float ux = cnx[k], uy = cny[k];
+
+            // Normal: no approach
+            float vn = (vx[j] - vx[i])*ux + (vy[j] - vy[i])*uy;
+            float old = jn[k];
+            jn[k] = Math.max( old - vn*kn[k], 0 );
+            float dn = jn[k] - old;
+
+            // Tangent t = z x n; slip of the surfaces at the contact
+            float vt = -(vx[j] - vx[i])*uy + (vy[j] - vy[i])*ux
+                       - (pz[i]*r[i] + pz[j]*r[j]);
+            float max = mu[k]*jn[k];
+            old = jt[k];
+            jt[k] = Math.max( -max, Math.min( old - vt*kt[k], max ) );
+            float dt = jt[k] - old;
+
+            apply( k, dn, dt );
+            most = Math.max( most, Math.abs( dn )*(wi[k] + wj[k]) );
+            most = Math.max( most, Math.abs( dt )*3.5f*(wi[k] + wj[k]) );
+        }
+        for( int k = 0; k < nr; k++ )
+        {
+            int i = rb[k];
+            float vn = -(vx[i]*rnx[k] + vy[i]*rny[k]);
+            float old = rjn[k];
+            rjn[k] = Math.max( old - vn*rm[k], 0 );
+            applyRail( k, rjn[k] - old );
+            most = Math.max( most, Math.abs( rjn[k] - old )/rm[k] );
+        }
+        return most;
+    }
+
+    // Impulse dn from the rail on its ball
+    private void applyRail( int k, float dn )
+    {
+        int i = rb[k];
+        store.vx[i] -= dn*rnx[k]/rm[k];
+        store.vy[i] -= dn*rny[k]/rm[k];
+    }
+
+    // Once over the contacts that bounce, on top of the impulses that
+    // stopped them
+    private void restitute()
+    {
+        BallStore s = store;
+        for( int k = 0; k < n; k++ )
+        {
+            if( (bounce[k] == 0) || (jn[k] == 0) )
+            {
+                continue;
+            }
+            int i = ci[k], j = cj[k];
+            float vn = (s.vx[j] - s.vx[i])*cnx[k] + (s.vy[j] - s.vy[i])*cny[k];
+            float old = jn[k];
+            jn[k] = Math.max( old + (bounce[k] - vn)*kn[k], 0 );
+            apply( k, jn[k] - old, 0 );
+        }
+    }
+
+    // Impulse dn along n and dt along t, +j and -i
+    private void apply( int k, float dn, float dt )
+    {
+        BallStore s = store;
+        int i = ci[k], j = cj[k];
+        float ux = cnx[k], uy = cny[k];
+        float jx = dn*ux - dt*uy;
+        float jy = dn*uy + dt*ux;
+        s.vx[i] -= jx*wi[k];
+        s.vy[i] -= jy*wi[k];
+        s.vx[j] += jx*wj[k];
+        s.vy[j] += jy*wj[k];
+        // R x J about the vertical is -R*dt for both balls
+        s.pz[i] -= 2.5f*dt*wi[k]/s.radius[i];
+        s.pz[j] -= 2.5f*dt*wj[k]/s.radius[j];
+    }
+
+    // Moves the balls of each contact apart until they just touch
+    private void separate()
+    {
+        BallStore s = store;
+        for( int k = 0; k < n; k++ )
+        {
+            int i = ci[k], j = cj[k];
+            float dx = s.cx[j] - s.cx[i];
+            float dy = s.cy[j] - s.cy[i];
+            float d = (float) Math.sqrt( dx*dx + dy*dy );
+            float depth = s.radius[i] + s.radius[j] - d;
+            if( depth <= 0 )
+            {
+                continue;
+            }
+            float ux = cnx[k], uy = cny[k];
+            if( d > 0 )
+            {
+                ux = dx/d;
+                uy = dy/d;
+            }
+            float a = depth*kn[k];
+            s.shiftCenter( i, -a*wi[k]*ux, -a*wi[k]*uy, 0 );
+            s.shiftCenter( j, a*wj[k]*ux, a*wj[k]*uy, 0 );
+        }
+        // and back from beyond the rails
+        BilliardTable t = s.table;
+        for( int k = 0; k < nr; k++ )
+        {
+            int i = rb[k];
+            float x = s.cx[i], y = s.cy[i], r = s.radius[i];
+            s.shiftCenter( i, Math.max( t.xMin + r - x, 0 ) - Math.max( x + r - t.xMax, 0 ),
+                           Math.max( t.yMin + r - y, 0 ) - Math.max( y + r - t.yMax, 0 ), 0 );
+        }
+    }
+
+    // Impulses of this step for the next one's warm start
+    private void keep()
+    {
+        int cap = Math.max( 16, Integer.highestOneBit( 2*(n + nr) + 1 )*2 );
+        if( keys.length < cap )
+        {
+            keys = new long[cap];
+            keptJn = new float[cap];
+            keptJt = new float[cap];
+        }
+        Arrays.fill( keys, EMPTY );
+        for( int k = 0; k < n; k++ )
+        {
+            long key = key( ci[k], cj[k] );
+            int h = find( key );
+            keys[h] = key;
+            keptJn[h] = jn[k];
+            keptJt[h] = jt[k];
+        }
+        for( int k = 0; k < nr; k++ )
+        {
+            long key = key( rb[k], -1 - side[k] );
+            int h = find( key );
+            keys[h] = key;
+            keptJn[h] = rjn[k];
+        }
+    }
+
+    private static long key( int i, int j )
+    {
+        return ((long) i << 32) | (j & 0xFFFFFFFFL);
+    }
+
+    // Slot of key, or the empty slot where it would go; -1 if no table yet
+    private int find( long key )
+    {
+        int mask = keys.length - 1;
+        if( mask < 0 )
+        {
+            return -1;
+        }
+        // Fibonacci hashing: the top bits of the product are well mixed
+        int h = (int) ((key*0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros( keys.length )));
+        while( (keys[h] != EMPTY) && (keys[h] != key) )
+        {
+            h = (h + 1) & mask;
+        }
+        return h;
+    }
+
+    private void ensureCapacity( int m )
+    {
+        if( ci.length >= m )
+        {
+            return;
+        }
+        int c = Math.max( 64, 2*ci.length );
+        ci = Arrays.copyOf( ci, c );
+        cj = Arrays.copyOf( cj, c );
+        cnx = Arrays.copyOf( cnx, c );
+        cny = Arrays.copyOf( cny, c );
+        wi = Arrays.copyOf( wi, c );
+        wj = Arrays.copyOf( wj, c );
+        kn = Arrays.copyOf( kn, c );
+        kt = Arrays.copyOf( kt, c );
+        bounce = Arrays.copyOf( bounce, c );
+        mu = Arrays.copyOf( mu, c );
+        jn = Arrays.copyOf( jn, c );
+        jt = Arrays.copyOf( jt, c );
+    }
+}
@@ -1,4 +1,4 @@
-package com.seabird.jvr.bouncingball;
+package com.seabird.jvr.ballslibrary;
 
 /**
  * Created by jvr on 30.08.2016.
@@ -15,17 +15,19 @@ package com.seabird.jvr.bouncingball;
     // ip(D3)       inner product
     // xp(D3 in, D3 out) cross product
     // phi()        x = r2d*cos(phi), y = r2d*sin(phi)
-    // theta()      z = r*sin(theta)
+    // theta()      z = r*cos(theta)
+    // rSquared(), r2dSquared()  squared lengths, no sqrt
+    // rFast(), phiFast(), thetaFast()  by the approximations of FastMath
     //
 public class D3
 {
     public float    x, y, z;
 
-    D3()
+    public D3()
     {
         x = 0;  y = 0;  z = 0;
     }
-    D3(float rx, float ry, float rz)
+    public D3(float rx, float ry, float rz)
     {
         x = rx;
         y = ry;
@@ -69,22 +71,23 @@ public class D3
         wout.y = z*vin.x - vin.z*x;
         wout.z = x*vin.y - vin.x*y;
     }
+    // Squared lengths, for comparisons without sqrt
+    public float rSquared()
+    {
+        return x*x + y*y + z*z;
+    }
+
+    public float r2dSquared()
+    {
+        return x*x + y*y;
+    }
+
     // x = r*cos(phi), y = r*sin(phi)
     // 0 <= phi <= 2PI
     public float phi()
     {
-        float p = 0;
-        float r = (float) Math.sqrt(x*x + y*y);
-
-        if( r > 10.*Float.MIN_NORMAL )
-        {
-            float c = x / r;
-            float s = y / r;
-            if( (c >= 0) && (s >= 0) )  p = (float) Math.asin( s );
-            if( (c <= 0) && (s >= 0) )  p = (float) Math.asin( s ) + (float)(Math.PI/2.);
-            if( (c <= 0) && (s <= 0) )  p = (float) Math.asin( s ) + (float)(Math.PI);
-            if( (c >= 0) && (s <= 0) )  p = (float) Math.asin( s ) + (float)(3.*Math.PI/2.);
-        }
+        float p = (float) Math.atan2( y, x );
+        if( p < 0 ) p += (float)(2.*Math.PI);
         return p;
     }
     // z = r*cos(theta)
@@ -92,12 +95,36 @@ public class D3
     public float theta()
     {
         float p = 0;
+        float r = r();
 
-        if( r() > 10.*Float.MIN_NORMAL )
+        if( r > 10.*Float.MIN_NORMAL )
         {
-            float s = z / r();
+            float s = Math.max( -1, Math.min( z / r, 1 ) );
             p = (float) Math.acos( s );
         }
         return p;
     }
+
+    // r(), phi() and theta() by FastMath, within 5e-6 of r resp. 1e-4
+    // rad; theta from atan2(r2d, z), which unlike acos(z/r) keeps its
+    // accuracy near the poles
+    public float rFast()
+    {
+        float r2 = x*x + y*y + z*z;
+        return (r2 > 0) ? r2*FastMath.invSqrt( r2 ) : 0;
+    }
+
+    public float phiFast()
+    {
+        float p = FastMath.atan2( y, x );
+        if( p < 0 ) p += 2*FastMath.PI;
+        return p;
+    }
+
+    public float thetaFast()
+    {
+        float r2 = x*x + y*y;
+        float r2d = (r2 > 0) ? r2*FastMath.invSqrt( r2 ) : 0;
+        return FastMath.atan2( r2d, z );
+    }
 }
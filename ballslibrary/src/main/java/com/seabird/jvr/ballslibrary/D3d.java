@@ -0,0 +1,91 @@
+package com.seabird.jvr.ballslibrary;
+
+/**
+ * D3 in double: the same vector functions for the double precision
+ * state (BallStore.doublePrecision), e.g. the roots of the double
+ * solveQuadratic.
+ *
+ * D3d()        constructor sets zeros
+ * D3d(x,y,z)   initializing constructor
+ * D3d(D3)      from a float vector
+ * r(), r2d(), set(D3d), ip(D3d), xp(D3d in, D3d out), phi(), theta()
+ *              as in D3
+ */
+public class D3d
+{
+    public double x, y, z;
+
+    public D3d()
+    {
+        x = 0;  y = 0;  z = 0;
+    }
+
+    public D3d( double rx, double ry, double rz )
+    {
+        x = rx;
+        y = ry;
+        z = rz;
+    }
+
+    public D3d( D3 d )
+    {
+        x = d.x;
+        y = d.y;
+        z = d.z;
+    }
+
+    // 3D length
+    public double r()
+    {
+        return Math.sqrt( x*x + y*y + z*z );
+    }
+
+    public void set( D3d d )
+    {
+        x = d.x;
+        y = d.y;
+        z = d.z;
+    }
+
+    // 2D length
+    public double r2d()
+    {
+        return Math.sqrt( x*x + y*y );
+    }
+
+    // Inner product
+    public double ip( D3d v )
+    {
+        return x*v.x + y*v.y + z*v.z;
+    }
+
+    // Crossproduct vout = (x,y,z) x vin
+    public void xp( D3d vin, D3d wout )
+    {
+        wout.x = y*vin.z - vin.y*z;
+        wout.y = z*vin.x - vin.z*x;
+        wout.z = x*vin.y - vin.x*y;
+    }
+
+    // x = r*cos(phi), y = r*sin(phi)
+    // 0 <= phi <= 2PI
+    public double phi()
+    {
+        double p = Math.atan2( y, x );
+        return (p < 0) ? p + 2.*Math.PI : p;
+    }
+
+    // z = r*cos(theta)
+    // 0 <= theta <= PI
+    public double theta()
+    {
+        double p = 0;
+        double r = r();
+
+        if( r > 10.*Double.MIN_NORMAL )
+        {
+            p = Math.acos( Math.max( -1, Math.min( z / r, 1 ) ) );
+        }
+        return p;
+    }
+}
@@ -0,0 +1,739 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Event driven (time of impact) simulation of all balls of a store.
+ * Instead of fixed steps the time of the next rail hit or ball-ball
+ * contact is predicted, the balls concerned are moved there analytically
+ * and the collision is resolved. A long interval thus costs in
+ * proportion to the number of collisions, not to its length.
+ *
+ * The motion between events is that of BallStore.doStep: constant
+ * acceleration, x = x0 + v*t + 0.5*dpm*a*t^2. Impact times come from
+ * the same quadratic (BallStore.solveQuadratic); two balls with the
+ * same acceleration approach each other linearly, so their contact
+ * time is a quadratic as well.
+ *
+ * Each ball keeps the time of its state and is only brought up to
+ * date when it takes part in an event. Predictions are invalidated
+ * by counting the events of each ball (a stale prediction carries an
+ * old count).
+ *
+ * Time is cut into windows (windowMilli). At the start of a window
+ * every ball gets the list of balls it can possibly reach before the
+ * window ends, and contacts are predicted only within those lists,
+ * so an event costs in proportion to its neighbours, not to all balls.
+ * The reach of a ball comes from its speed at the start of the window;
+ * a collision can pass a larger speed on to it (a ball at rest that
+ * is hit takes the speed of the other one). Whenever an event leaves
+ * a ball able to get beyond its reach before the window ends, its
+ * reach is grown to what it can still travel from where it is, and
+ * its neighbours are found anew by a search over the sorted order;
+ * every other ball checks the grown ones besides its list.
+ *
+ * A ball whose rebounds against a rail get shorter than minBounce
+ * comes to rest against that rail: the velocity and acceleration
+ * across the rail are then zero. Its acceleration differs from that
+ * of a free ball, so contact times of such pairs are found by
+ * conservative advancement instead of the quadratic.
+ *
+ * Resting stacks can produce an endless cascade of ever shorter
+ * events (inelastic collapse). When a window has more events than
+ * fixed steps of fallbackStepMilli would cost, the rest of that
+ * window and a growing number of following windows are done with
+ * ordinary fixed steps.
+ *
+ * Events are pooled; once the pool and the queue have grown to what a
+ * scene needs, running does not allocate.
+ *
+ * run(ax,ay,tMilli)    advance the store by tMilli; returns number of events
+ */
+public class EventDrivenSimulator
+{
+    private static final int RAIL_X  = 0;
+    private static final int RAIL_Y  = 1;
+    private static final int PAIR    = 2;
+    private static final int RECHECK = 3;   // pair prediction only valid up to here
+
+    private static final int   MAX_ADVANCE_ITER = 64;
+    private static final float CONTACT_TOL = 0.01f;    // dp
+    private static final float REST_TOL    = 0.5f;     // dp, ball counts as touching the rail
+    private static final int   EVENT_COST  = 8;        // an event costs about as much as 8 ball steps
+    private static final int   MAX_BACKOFF = 31;       // windows
+
+    public float  minBounce = 0.001f;       // sec; shorter rail rebounds end in rest
+    public double windowMilli = 100;        // neighbours are found per window
+    public double fallbackStepMilli = 2;    // fixed step when events come faster
+
+    private final BallStore store;
+    private final PriorityQueue<Event> queue = new PriorityQueue<Event>();
+    private final D3 roots = new D3();
+    private final StepContext stepContext = new StepContext();
+
+    private double now;                     // sec since start of the window
+    private long   eventCount = 0;          // events since construction
+    private int    backoff = 0;             // fixed step windows after the last overload
+    private int    fixedWindows = 0;        // fixed step windows still to do
+    private float  aX, aY;                  // acceleration dp/sec^2
+    private float  aMax;                    // |(aX,aY)|
+    private double[] tBall = new double[0]; // time of the state of each ball
+    private int[]    nHits = new int[0];    // events per ball
+    private byte[]   pinX  = new byte[0];   // -1 resting on min rail, +1 on max rail
+    private byte[]   pinY  = new byte[0];
+
+    // Neighbour lists of the current window
+    private final IntPairBuffer pairs = new IntPairBuffer();
+    private int[]   order   = new int[0];   // balls sorted by xLo
+    private int     nOrder  = 0;
+    private float[] xLo     = new float[0];
+    private float[] reach   = new float[0]; // around x0,y0
+    private float[] x0      = new float[0]; // centers at the start of the window
+    private float[] y0      = new float[0]; // or when the reach was grown
+    private float   wMax;                   // widest box, 2*reach, at the start
+    private boolean[] isGrown = new boolean[0];
+    private int[]   grown   = new int[0];   // balls whose reach was grown
+    private int     nGrown  = 0;
+    private int[]   nbStart = new int[1];
+    private int[]   nbFill  = new int[0];
+    private int[]   nb      = new int[0];
+
+    private Event[] pool = new Event[64];   // free events
+    private int     nPool = 0;
+
+    private static class Event implements Comparable<Event>
+    {
+        double t;
+        int type;
+        int i, j;
+        int hitsI, hitsJ;
+
+        public int compareTo( Event e )
+        {
+            return Double.compare( t, e.t );
+        }
+    }
+
+    public EventDrivenSimulator( BallStore store )
+    {
+        this.store = store;
+    }
+
+    // Advances all balls of the store by tMilli ms under the constant
+    // acceleration (ax,ay) m/sec^2. Returns the number of events
+    public int run( float ax, float ay, double tMilli )
+    {
+        long events = eventCount;
+        double done = 0;
+
+        while( done < tMilli )
+        {
+            double tw = Math.min( windowMilli, tMilli - done );
+            if( fixedWindows > 0 )
+            {
+                // Recently too many events; stay with fixed steps a while
+                fixedWindows--;
+                stepFixed( ax, ay, tw );
+            }
+            else if( runWindow( ax, ay, tw ) )
+            {
+                backoff = Math.min( 2*backoff + 1, MAX_BACKOFF );
+                fixedWindows = backoff;
+            }
+            else
+            {
+                backoff = 0;
+            }
+            done += tw;
+        }
+        events = eventCount - events;
+        return (int) events;
+    }
+
+    public long getEventCount()
+    {
+        return eventCount;
+    }
+
+    private void stepFixed( float ax, float ay, double tMilli )
+    {
+        double rest = tMilli;
+        while( rest > 0 )
+        {
+            double dt = Math.min( fallbackStepMilli, rest );
+            store.stepAll( ax, ay, dt, stepContext );
+            store.resolveOverlaps();
+            rest -= dt;
+        }
+    }
+
+    // One window: neighbours, predictions, events; then everything
+    // is brought up to the end of the window. Returns true if the
+    // event budget was exceeded
+    private boolean runWindow( float ax, float ay, double tMilli )
+    {
+        int n = store.size();
+        double tEnd = tMilli/1000.;
+        int events = 0;
+        int budget = (int) Math.max( n*tMilli/fallbackStepMilli/EVENT_COST, n );
+        boolean limited = false;
+
+        aX = store.dpm*ax;
+        aY = store.dpm*ay;
+        aMax = (float) Math.sqrt( aX*aX + aY*aY );
+        now = 0;
+        releaseAll();
+        ensureCapacity( n );
+        for( int i = 0; i < n; i++ )
+        {
+            tBall[i] = 0;
+            nHits[i] = 0;
+            x0[i] = store.cx[i];
+            y0[i] = store.cy[i];
+            isGrown[i] = false;
+            updatePins( i );
+        }
+        nGrown = 0;
+        findNeighbours( tEnd );
+
+        for( int i = 0; i < n; i++ )
+        {
+            predictRails( i, tEnd );
+            for( int k = nbStart[i]; k < nbStart[i + 1]; k++ )
+            {
+                if( nb[k] > i )
+                {
+                    predictPair( i, nb[k], tEnd );
+                }
+            }
+        }
+
+        Event e;
+        while( (e = queue.poll()) != null )
+        {
+            int type = e.type;
+            int i = e.i;
+            int j = e.j;
+            boolean stale = (nHits[i] != e.hitsI) || ((j >= 0) && (nHits[j] != e.hitsJ));
+            double t = e.t;
+            release( e );
+            if( stale )
+            {
+                continue;   // a ball has collided since the prediction
+            }
+            if( events >= budget )
+            {
+                limited = true;
+                break;
+            }
+            events++;
+            now = t;
+
+            switch( type )
+            {
+                case RAIL_X:
+                case RAIL_Y:
+                    advance( i, now );
+                    doRail( i, type == RAIL_X );
+                    nHits[i]++;
+                    predictAll( i, tEnd );
+                    break;
+
+                case PAIR:
+                    advance( i, now );
+                    advance( j, now );
+                    BallStore.doBallCollision( store, j, store, i );
+                    afterPairCollision( i );
+                    afterPairCollision( j );
+                    nHits[i]++;
+                    nHits[j]++;
+                    growReach( i, tEnd );
+                    growReach( j, tEnd );
+                    predictAll( i, tEnd );
+                    predictAll( j, tEnd );
+                    break;
+
+                case RECHECK:
+                    advance( i, now );
+                    advance( j, now );
+                    predictPair( i, j, tEnd );
+                    break;
+            }
+        }
+
+        releaseAll();
+        for( int i = 0; i < n; i++ )
+        {
+            advance( i, limited ? now : tEnd );
+        }
+        eventCount += events;
+        if( limited )
+        {
+            // Events come faster than fixed steps would; finish
+            // the window with those
+            stepFixed( ax, ay, (tEnd - now)*1000. );
+        }
+        clampToRails();
+        // Pairs that came within CONTACT_TOL without an event
+        store.resolveOverlaps();
+        return limited;
+    }
+
+    // If ball i, at time now, could get further from x0,y0 than its
+    // reach before the window ends, its box is moved to where it is
+    // and grown to what it can still travel
+    private void growReach( int i, double tEnd )
+    {
+        double rest = tEnd - now;
+        double dx = store.cx[i] - x0[i];
+        double dy = store.cy[i] - y0[i];
+        double v = Math.sqrt( store.vx[i]*store.vx[i] + store.vy[i]*store.vy[i] );
+        double way = Math.sqrt( dx*dx + dy*dy ) + v*rest + 0.5*aMax*rest*rest;
+        if( way <= reach[i] - store.radius[i] )
+        {
+            return;
+        }
+        x0[i] = store.cx[i];
+        y0[i] = store.cy[i];
+        reach[i] = (float) (store.radius[i] + 2*v*rest + 0.5*aMax*rest*rest);
+        if( !isGrown[i] )
+        {
+            isGrown[i] = true;
+            grown[nGrown++] = i;
+        }
+    }
+
+    private boolean boxesOverlap( int i, int j )
+    {
+        float w = reach[i] + reach[j];
+        return (Math.abs( x0[j] - x0[i] ) <= w) && (Math.abs( y0[j] - y0[i] ) <= w);
+    }
+
+    // Neighbours of a ball are the balls it can reach within the window:
+    // a sweep over x-intervals widened by the distance each ball can
+    // travel, then the y-intervals compared
+    private void findNeighbours( double tw )
+    {
+        int n = store.size();
+
+        wMax = 0;
+        for( int i = 0; i < n; i++ )
+        {
+            float v = (float) Math.sqrt( store.vx[i]*store.vx[i] + store.vy[i]*store.vy[i] );
+            // collisions may speed a ball up; allow for twice its speed
+            // before its reach has to be grown (growReach)
+            reach[i] = (float) (store.radius[i] + 2*v*tw + 0.5*aMax*tw*tw);
+            xLo[i] = store.cx[i] - reach[i];
+            wMax = Math.max( wMax, 2*reach[i] );
+        }
+
+        if( nOrder != n )
+        {
+            for( int i = 0; i < n; i++ )
+            {
+                order[i] = i;
+            }
+            nOrder = n;
+        }
+        // Insertion sort, the order of the previous window is almost right
+        for( int k = 1; k < n; k++ )
+        {
+            int b = order[k];
+            float key = xLo[b];
+            int m = k - 1;
+            while( (m >= 0) && (xLo[order[m]] > key) )
+            {
+                order[m + 1] = order[m];
+                m--;
+            }
+            order[m + 1] = b;
+        }
+
+        pairs.clear();
+        for( int k = 0; k < n; k++ )
+        {
+            int i = order[k];
+            float xHi = store.cx[i] + reach[i];
+            for( int m = k + 1; m < n; m++ )
+            {
+                int j = order[m];
+                if( xLo[j] > xHi )
+                {
+                    break;
+                }
+                if( Math.abs( store.cy[j] - store.cy[i] ) <= reach[i] + reach[j] )
+                {
+                    pairs.add( i, j );
+                }
+            }
+        }
+
+        // Both directions in one compressed list per ball
+        if( nb.length < 2*pairs.size() )
+        {
+            nb = new int[4*pairs.size()];
+        }
+        for( int i = 0; i <= n; i++ )
+        {
+            nbStart[i] = 0;
+        }
+        for( int k = 0; k < pairs.size(); k++ )
+        {
+            nbStart[pairs.first(k) + 1]++;
+            nbStart[pairs.second(k) + 1]++;
+        }
+        for( int i = 0; i < n; i++ )
+        {
+            nbStart[i + 1] += nbStart[i];
+        }
+        for( int i = 0; i < n; i++ )
+        {
+            nbFill[i] = nbStart[i];
+        }
+        for( int k = 0; k < pairs.size(); k++ )
+        {
+            int i = pairs.first(k);
+            int j = pairs.second(k);
+            nb[nbFill[i]++] = j;
+            nb[nbFill[j]++] = i;
+        }
+    }
+
+    // Brings ball i from its own time up to time t
+    private void advance( int i, double t )
+    {
+        double dt = t - tBall[i];
+        if( dt != 0 )
+        {
+            float axI = (pinX[i] != 0) ? 0 : aX;
+            float ayI = (pinY[i] != 0) ? 0 : aY;
+            store.cx[i] = (float) (store.cx[i] + store.vx[i]*dt + 0.5*axI*dt*dt);
+            store.vx[i] = (float) (store.vx[i] + axI*dt);
+            store.cy[i] = (float) (store.cy[i] + store.vy[i]*dt + 0.5*ayI*dt*dt);
+            store.vy[i] = (float) (store.vy[i] + ayI*dt);
+        }
+        tBall[i] = t;
+    }
+
+    private void predictAll( int i, double tEnd )
+    {
+        predictRails( i, tEnd );
+        if( isGrown[i] )
+        {
+            // Every ball whose box starts within wMax before that of i,
+            // along the order sorted at the start of the window
+            float lo = x0[i] - reach[i] - wMax;
+            float hi = x0[i] + reach[i];
+            int a = 0;
+            int b = nOrder;
+            while( a < b )
+            {
+                int m = (a + b) >>> 1;
+                if( xLo[order[m]] < lo ) a = m + 1;
+                else                     b = m;
+            }
+            for( int k = a; (k < nOrder) && (xLo[order[k]] <= hi); k++ )
+            {
+                int j = order[k];
+                if( !isGrown[j] && boxesOverlap( i, j ) )
+                {
+                    predictPair( i, j, tEnd );
+                }
+            }
+        }
+        else
+        {
+            for( int k = nbStart[i]; k < nbStart[i + 1]; k++ )
+            {
+                predictPair( i, nb[k], tEnd );
+            }
+        }
+        for( int k = 0; k < nGrown; k++ )
+        {
+            int j = grown[k];
+            if( (j != i) && boxesOverlap( i, j ) )
+            {
+                predictPair( i, j, tEnd );
+            }
+        }
+    }
+
+    // Ball i must be at time now
+    private void predictRails( int i, double tEnd )
+    {
+        float R = store.radius[i];
+        BilliardTable table = store.table;
+
+        if( pinX[i] == 0 )
+        {
+            double t = Math.min(
+                    crossingTime( store.cx[i], store.vx[i], aX, table.xMin + R, -1 ),
+                    crossingTime( store.cx[i], store.vx[i], aX, table.xMax - R, 1 ) );
+            if( now + t <= tEnd )
+            {
+                queue.add( obtain( now + t, RAIL_X, i, nHits[i], -1, 0 ) );
+            }
+        }
+        if( pinY[i] == 0 )
+        {
+            double t = Math.min(
+                    crossingTime( store.cy[i], store.vy[i], aY, table.yMin + R, -1 ),
+                    crossingTime( store.cy[i], store.vy[i], aY, table.yMax - R, 1 ) );
+            if( now + t <= tEnd )
+            {
+                queue.add( obtain( now + t, RAIL_Y, i, nHits[i], -1, 0 ) );
+            }
+        }
+    }
+
+    // Time until x + v*t + 0.5*A*t^2 reaches bound while moving
+    // in direction dir (-1 towards smaller, +1 towards larger values)
+    private double crossingTime( float x, float v, float A, float bound, int dir )
+    {
+        double t = Double.POSITIVE_INFINITY;
+
+        // Already on or past the rail and still pushing into it
+        if( ((x - bound)*dir >= 0) && ((v*dir > 0) || ((v == 0) && (A*dir > 0))) )
+        {
+            return 0;
+        }
+        if( A == 0 )
+        {
+            if( v*dir > 0 )
+            {
+                double r = (bound - x)/v;
+                if( r > 0 ) t = r;
+            }
+            return t;
+        }
+
+        BallStore.solveQuadratic( 0.5f*A, v, x - bound, roots );
+        if( (roots.x > 0) && ((v + A*roots.x)*dir > 0) ) t = roots.x;
+        if( (roots.y > 0) && (roots.y < t) && ((v + A*roots.y)*dir > 0) ) t = roots.y;
+        return t;
+    }
+
+    // Ball i must be at time now; ball j is evaluated at now
+    private void predictPair( int i, int j, double tEnd )
+    {
+        double dtj = now - tBall[j];
+        float axI = (pinX[i] != 0) ? 0 : aX;
+        float ayI = (pinY[i] != 0) ? 0 : aY;
+        float axJ = (pinX[j] != 0) ? 0 : aX;
+        float ayJ = (pinY[j] != 0) ? 0 : aY;
+
+        // Relative position, velocity, half acceleration of j seen from i
+        float px = (float) (store.cx[j] + store.vx[j]*dtj + 0.5*axJ*dtj*dtj) - store.cx[i];
+        float py = (float) (store.cy[j] + store.vy[j]*dtj + 0.5*ayJ*dtj*dtj) - store.cy[i];
+        float vx = (float) (store.vx[j] + axJ*dtj) - store.vx[i];
+        float vy = (float) (store.vy[j] + ayJ*dtj) - store.vy[i];
+        float hx = 0.5f*(axJ - axI);
+        float hy = 0.5f*(ayJ - ayI);
+        float S  = store.radius[i] + store.radius[j];
+        float c  = px*px + py*py - S*S;
+        double t;
+
+        if( (hx == 0) && (hy == 0) )
+        {
+            float a = vx*vx + vy*vy;
+            float b = 2*(px*vx + py*vy);
+
+            if( b >= 0 ) return;            // separating
+            if( c <= 0 )
+            {
+                t = 0;                      // touching and approaching
+            }
+            else
+            {
+                t = BallStore.solveQuadratic( a, b, c, roots );
+                if( t < 0 ) return;
+            }
+        }
+        else
+        {
+            // Conservative advancement: never step further than the gap
+            // can close at the largest possible relative speed
+            double horizon = tEnd - now;
+            double vMax = Math.sqrt( vx*vx + vy*vy )
+                    + 2*Math.sqrt( hx*hx + hy*hy )*horizon;
+            int iter = 0;
+            t = 0;
+            while( true )
+            {
+                double dx = px + vx*t + hx*t*t;
+                double dy = py + vy*t + hy*t*t;
+                double gap = Math.sqrt( dx*dx + dy*dy ) - S;
+                double closing = dx*(vx + 2*hx*t) + dy*(vy + 2*hy*t);
+
+                if( (gap <= CONTACT_TOL) && (closing < 0) )
+                {
+                    break;
+                }
+                t += Math.max( gap, CONTACT_TOL )/vMax;
+                if( t > horizon )
+                {
+                    return;
+                }
+                if( ++iter == MAX_ADVANCE_ITER )
+                {
+                    queue.add( obtain( now + t, RECHECK, i, nHits[i], j, nHits[j] ) );
+                    return;
+                }
+            }
+        }
+
+        if( now + t <= tEnd )
+        {
+            queue.add( obtain( now + t, PAIR, i, nHits[i], j, nHits[j] ) );
+        }
+    }
+
+    // Ball i (at time now) has reached a rail of the x or y axis
+    private void doRail( int i, boolean xAxis )
+    {
+        float R = store.radius[i];
+        BilliardTable table = store.table;
+        float rest = table.railRestitution;
+
+        if( xAxis )
+        {
+            float lo = table.xMin + R;
+            float hi = table.xMax - R;
+            int side = (Math.abs( store.cx[i] - lo ) <= Math.abs( store.cx[i] - hi )) ? -1 : 1;
+            store.cx[i] = (side < 0) ? lo : hi;
+            if( store.vx[i]*side > 0 ) store.vx[i] = -store.vx[i]*rest;
+            if( (aX*side > 0) && (Math.abs( store.vx[i] ) < restSpeed( aX )) )
+            {
+                store.vx[i] = 0;
+                pinX[i] = (byte) side;
+            }
+        }
+        else
+        {
+            float lo = table.yMin + R;
+            float hi = table.yMax - R;
+            int side = (Math.abs( store.cy[i] - lo ) <= Math.abs( store.cy[i] - hi )) ? -1 : 1;
+            store.cy[i] = (side < 0) ? lo : hi;
+            if( store.vy[i]*side > 0 ) store.vy[i] = -store.vy[i]*rest;
+            if( (aY*side > 0) && (Math.abs( store.vy[i] ) < restSpeed( aY )) )
+            {
+                store.vy[i] = 0;
+                pinY[i] = (byte) side;
+            }
+        }
+    }
+
+    // A ball resting against a rail may have been pushed into
+    // the rail (bounce or stay) or away from it (free again)
+    private void afterPairCollision( int i )
+    {
+        float rest = store.table.railRestitution;
+
+        if( pinX[i] != 0 )
+        {
+            if( store.vx[i]*pinX[i] > 0 ) store.vx[i] = -store.vx[i]*rest;
+            if( Math.abs( store.vx[i] ) < restSpeed( aX ) ) store.vx[i] = 0;
+            else                                            pinX[i] = 0;
+        }
+        if( pinY[i] != 0 )
+        {
+            if( store.vy[i]*pinY[i] > 0 ) store.vy[i] = -store.vy[i]*rest;
+            if( Math.abs( store.vy[i] ) < restSpeed( aY ) ) store.vy[i] = 0;
+            else                                            pinY[i] = 0;
+        }
+    }
+
+    // Below this speed the next rebound would come within minBounce
+    private float restSpeed( float A )
+    {
+        return 0.5f*minBounce*Math.abs( A );
+    }
+
+    // Sets the resting state of ball i for the current acceleration
+    private void updatePins( int i )
+    {
+        float R = store.radius[i];
+        BilliardTable table = store.table;
+
+        pinX[i] = 0;
+        if( Math.abs( store.vx[i] ) < restSpeed( aX ) )
+        {
+            if( (aX < 0) && (store.cx[i] - table.xMin - R < REST_TOL) ) pinX[i] = -1;
+            if( (aX > 0) && (table.xMax - R - store.cx[i] < REST_TOL) ) pinX[i] = 1;
+            if( pinX[i] != 0 ) store.vx[i] = 0;
+        }
+        pinY[i] = 0;
+        if( Math.abs( store.vy[i] ) < restSpeed( aY ) )
+        {
+            if( (aY < 0) && (store.cy[i] - table.yMin - R < REST_TOL) ) pinY[i] = -1;
+            if( (aY > 0) && (table.yMax - R - store.cy[i] < REST_TOL) ) pinY[i] = 1;
+            if( pinY[i] != 0 ) store.vy[i] = 0;
+        }
+    }
+
+    private void clampToRails()
+    {
+        BilliardTable table = store.table;
+        for( int i = 0; i < store.size(); i++ )
+        {
+            float R = store.radius[i];
+            store.cx[i] = Math.max( store.cx[i], table.xMin + R );
+            store.cx[i] = Math.min( store.cx[i], table.xMax - R );
+            store.cy[i] = Math.max( store.cy[i], table.yMin + R );
+            store.cy[i] = Math.min( store.cy[i], table.yMax - R );
+        }
+    }
+
+    private Event obtain( double t, int type, int i, int hitsI, int j, int hitsJ )
+    {
+        Event e = (nPool > 0) ? pool[--nPool] : new Event();
+        e.t = t;
+        e.type = type;
+        e.i = i;
+        e.j = j;
+        e.hitsI = hitsI;
+        e.hitsJ = hitsJ;
+        return e;
+    }
+
+    private void release( Event e )
+    {
+        if( nPool == pool.length )
+        {
+            pool = Arrays.copyOf( pool, 2*nPool );
+        }
+        pool[nPool++] = e;
+    }
+
+    // Returns the events still queued to the pool
+    private void releaseAll()
+    {
+        Event e;
+        while( (e = queue.poll()) != null )
+        {
+            release( e );
+        }
+    }
+
+    private void ensureCapacity( int n )
+    {
+        if( tBall.length < n )
+        {
+            tBall = new double[n];
+            nHits = new int[n];
+            pinX  = new byte[n];
+            pinY  = new byte[n];
+            order   = new int[n];
+            nOrder  = 0;
+            xLo     = new float[n];
+            reach   = new float[n];
+            x0      = new float[n];
+            y0      = new float[n];
+            isGrown = new boolean[n];
+            grown   = new int[n];
+            nbStart = new int[n + 1];
+            nbFill  = new int[n];
+        }
+    }
+}
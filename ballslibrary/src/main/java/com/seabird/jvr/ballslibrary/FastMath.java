@@ -0,0 +1,76 @@
+package com.seabird.jvr.ballslibrary;
+
+/**
+ * Cheap float approximations of atan, atan2, acos and 1/sqrt, for
+ * drawing and other places where an error of 1e-4 rad does not show.
+ * No table, no allocation; a few multiplies each instead of a call
+ * into StrictMath. Largest errors over the whole domain (FastMathTest
+ * checks them):
+ *
+ * atan(x)       2.0e-6 rad   odd polynomial on |x| <= 1, 1/x folded
+ * atan2(y,x)    2.0e-6 rad   atan of the smaller over the larger |.|
+ * acos(x)       7.0e-5 rad   sqrt(1 - x)*cubic (Abramowitz & Stegun
+ *                            4.4.45), x < 0 by symmetry
+ * invSqrt(x)    5.0e-6 rel.  bit trick, then two Newton steps
+ */
+public final class FastMath
+{
+    public static final float PI = (float) Math.PI;
+    public static final float HALF_PI = (float) (Math.PI/2);
+
+    private FastMath()
+    {
+    }
+
+    public static float atan( float x )
+    {
+        float a = Math.abs( x );
+        if( a <= 1 )
+        {
+            return atanUnit( x );
+        }
+        float r = HALF_PI - atanUnit( 1/a );
+        return (x < 0) ? -r : r;
+    }
+
+    // -PI < result <= PI, as Math.atan2; 0 for (0,0)
+    public static float atan2( float y, float x )
+    {
+        float ax = Math.abs( x );
+        float ay = Math.abs( y );
+        if( (ax == 0) && (ay == 0) )
+        {
+            return 0;
+        }
+        float r = (ay <= ax) ? atanUnit( ay/ax ) : HALF_PI - atanUnit( ax/ay );
+        if( x < 0 ) r = PI - r;
+        return (y < 0) ? -r : r;
+    }
+
+    // -1 <= x <= 1
+    public static float acos( float x )
+    {
+        float a = Math.abs( x );
+        float r = (float) Math.sqrt( 1 - a )
+                * (1.5707288f + a*(-0.2121144f + a*(0.0742610f - a*0.0187293f)));
+        return (x < 0) ? PI - r : r;
+    }
+
+    // 1/sqrt(x), x > 0
+    public static float invSqrt( float x )
+    {
+        float h = 0.5f*x;
+        float r = Float.intBitsToFloat( 0x5f375a86 - (Float.floatToRawIntBits( x ) >> 1) );
+        r = r*(1.5f - h*r*r);
+        r = r*(1.5f - h*r*r);
+        return r;
+    }
+
+    // atan on -1 <= x <= 1
+    private static float atanUnit( float x )
+    {
+        float x2 = x*x;
+        return x*(0.99997726f + x2*(-0.33262347f + x2*(0.19354346f
+                 + x2*(-0.11643287f + x2*(0.05265332f - x2*0.01172120f)))));
+    }
+}
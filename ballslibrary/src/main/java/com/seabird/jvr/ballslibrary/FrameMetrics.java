@@ -0,0 +1,183 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Where the time goes, per frame and per physics step: a Histogram
+ * for each phase plus event counters. The physics thread records
+ * PHYSICS and COLLISIONS, the drawing thread the others; each
+ * histogram has a single writer, so recording needs no lock and
+ * allocates nothing. The physics thread also reports how many balls
+ * are awake and how many sleep (BallStore.sleep).
+ *
+ * Query at run time with getHistogram(phase) and the counters, or
+ * write everything out with dump().
+ */
+public class FrameMetrics
+{
+    public static final int LOCK_CANVAS     = 0;   // waiting in lockCanvas
+    public static final int PHYSICS         = 1;   // doStep of all balls, per step
+    public static final int COLLISIONS      = 2;   // overlap resolution, per step
+    public static final int DRAW            = 3;   // drawing into the canvas
+    public static final int POST            = 4;   // unlockCanvasAndPost
+    public static final int FRAME_INTERVAL  = 5;   // start to start of frames
+    public static final int PHASES          = 6;
+
+    private static final String[] NAMES =
+            { "lockCanvas", "physics", "collisions", "draw", "post", "frameInterval" };
+    private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final Histogram[] phases = new Histogram[PHASES];
+
+    // Written by the physics thread
+    volatile long steps;
+    volatile long railCollisions;
+    volatile long loopLimitHits;
+    volatile long droppedSteps;      // backlog given up when falling behind
+    volatile int awakeBalls;         // as of the last step
+    volatile int sleepingBalls;
+    // Written by the drawing thread
+    volatile long frames;
+
+    public FrameMetrics()
+    {
+        for( int p = 0; p < PHASES; p++ )
+        {
+            phases[p] = new Histogram();
+        }
+    }
+
+    public void record( int phase, long nanos )
+    {
+        phases[phase].record( nanos );
+    }
+
+    public Histogram getHistogram( int phase )
+    {
+        return phases[phase];
+    }
+
+    public static String getName( int phase )
+    {
+        return NAMES[phase];
+    }
+
+    public long getSteps()
+    {
+        return steps;
+    }
+
+    public long getFrames()
+    {
+        return frames;
+    }
+
+    public long getRailCollisions()
+    {
+        return railCollisions;
+    }
+
+    public long getLoopLimitHits()
+    {
+        return loopLimitHits;
+    }
+
+    public long getDroppedSteps()
+    {
+        return droppedSteps;
+    }
+
+    public int getAwakeBalls()
+    {
+        return awakeBalls;
+    }
+
+    public int getSleepingBalls()
+    {
+        return sleepingBalls;
+    }
+
+    // Counted by the drawing thread, once per frame
+    public void countFrame()
+    {
+        frames++;
+    }
+
+    // Takes over and clears the rail counters of sc (physics thread)
+    public void countStep( StepContext sc )
+    {
+        steps++;
+        railCollisions += sc.railHits;
+        loopLimitHits += sc.loopLimitHits;
+        sc.railHits = 0;
+        sc.loopLimitHits = 0;
+    }
+
+    // Awake and sleeping balls of the store (physics thread)
+    public void countBalls( BallStore s )
+    {
+        int n = s.getSleepingCount();
+        awakeBalls = s.size() - n;
+        sleepingBalls = n;
+    }
+
+    public void countDropped( long n )
+    {
+        droppedSteps += n;
+    }
+
+    // Table of all phases, times in microseconds, then the counters
+    public void dump( Writer out )
+    {
+        PrintWriter w = new PrintWriter( out );
+        w.printf( Locale.US, "%-14s %9s %9s %9s %9s %9s %9s %9s%n",
+                  "phase [us]", "count", "mean", "p50", "p90", "p99", "p99.9", "max" );
+        for( int p = 0; p < PHASES; p++ )
+        {
+            Histogram h = phases[p];
+            w.printf( Locale.US, "%-14s %9d %9.1f", NAMES[p], h.getCount(), h.getMean()/1000 );
+            for( double q : PERCENTILES )
+            {
+                w.printf( Locale.US, " %9.1f", h.getPercentile( q )/1000. );
+            }
+            w.printf( Locale.US, " %9.1f%n", h.getMax()/1000. );
+        }
+        w.printf( Locale.US, "%nframes %d, steps %d, rail collisions %d, loop limit hits %d, dropped steps %d%n",
+                  frames, steps, railCollisions, loopLimitHits, droppedSteps );
+        w.printf( Locale.US, "balls awake %d, sleeping %d%n", awakeBalls, sleepingBalls );
+
+        // Raw buckets, for plotting: phase, lowest ns, highest ns, count
+        w.printf( Locale.US, "%nbuckets%n" );
+        for( int p = 0; p < PHASES; p++ )
+        {
+            Histogram h = phases[p];
+            for( int k = 0; k < h.getBucketCount(); k++ )
+            {
+                if( h.getBucket( k ) > 0 )
+                {
+                    w.printf( Locale.US, "%s,%d,%d,%d%n", NAMES[p],
+                              Histogram.lowestOf( k ), Histogram.highestOf( k ), h.getBucket( k ) );
+                }
+            }
+        }
+        w.flush();
+    }
+
+    public void dump( File file ) throws IOException
+    {
+        Writer out = new FileWriter( file );
+        try
+        {
+            dump( out );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
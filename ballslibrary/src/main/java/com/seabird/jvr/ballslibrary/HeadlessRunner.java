@@ -0,0 +1,274 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line driver: runs a Scenario without any UI and reports
+ * the throughput, for tuning and performance regression checks.
+ *
+ *   java -cp ballslibrary.jar com.seabird.jvr.ballslibrary.HeadlessRunner
+ *        [scenario.properties] [key=value ...]
+ *
+ * key=value pairs override the file (see Scenario for the keys).
+ * Wall clock time covers the stepping only, not the set up.
+ */
+public class HeadlessRunner
+{
+    private final Scenario scenario;
+    private final BallStore store;
+
+    private long steps;
+    private long wallNanos;
+    private long events;
+    private long passes;
+    private long sweptHits;
+    private long railHits;
+    private long pairs, chains;         // parallel engine: candidate pairs, longest chains
+    private double energy0, energy1;
+
+    public HeadlessRunner( Scenario scenario )
+    {
+        this.scenario = scenario;
+        this.store = scenario.build();
+    }
+
+    public BallStore getStore()
+    {
+        return store;
+    }
+
+    public void run()
+    {
+        Scenario s = scenario;
+        long nSteps = Math.max( 1, Math.round( s.seconds*1000./s.stepMilli ) );
+        String engine = s.engine;
+
+        EventDrivenSimulator events = null;
+        ParallelStepper parallel = null;
+        World world = new World( store );
+        world.setBatch( s.batch );
+        ContactSolver solver = null;
+        SweptCollider collider = null;
+        ForkJoinPool pool = null;
+
+        if( engine.equals( "sap" ) )
+        {
+            store.setBroadPhase( new SweepAndPrune() );
+        }
+        else if( engine.equals( "event" ) )
+        {
+            if( s.friction )
+            {
+                throw new IllegalArgumentException( "The event engine has no friction" );
+            }
+            if( s.sleep )
+            {
+                throw new IllegalArgumentException( "The event engine does not let balls sleep" );
+            }
+            if( store.doublePrecision )
+            {
+                throw new IllegalArgumentException( "The event engine is float only" );
+            }
+            events = new EventDrivenSimulator( store );
+        }
+        else if( engine.equals( "parallel" ) )
+        {
+            int n = (s.threads > 0) ? s.threads : Runtime.getRuntime().availableProcessors();
+            pool = new ForkJoinPool( n );
+            parallel = new ParallelStepper( store, pool );
+        }
+        else if( !engine.equals( "grid" ) )
+        {
+            throw new IllegalArgumentException( "Unknown engine: " + engine );
+        }
+        if( s.iterations > 0 )
+        {
+            if( (events != null) || (parallel != null) )
+            {
+                throw new IllegalArgumentException( "The " + engine + " engine has no contact solver" );
+            }
+            solver = new ContactSolver( store );
+            solver.iterations = s.iterations;
+            world.setSolver( solver );
+        }
+        if( s.ccd )
+        {
+            if( (events != null) || (parallel != null) )
+            {
+                throw new IllegalArgumentException( "The " + engine + " engine has no swept collisions" );
+            }
+            collider = new SweptCollider( store );
+            world.setCollider( collider );
+        }
+
+        energy0 = energy();
+        long t0 = System.nanoTime();
+        for( long k = 0; k < nSteps; k++ )
+        {
+            if( events != null )
+            {
+                events.run( s.ax, s.ay, s.stepMilli );
+            }
+            else if( parallel != null )
+            {
+                parallel.step( s.ax, s.ay, s.stepMilli );
+                pairs += parallel.getPairCount();
+                chains += parallel.getChainLength();
+            }
+            else
+            {
+                world.step( s.ax, s.ay, s.stepMilli );
+                if( solver != null )
+                {
+                    passes += solver.getIterationsUsed();
+                }
+                if( collider != null )
+                {
+                    sweptHits += collider.getHitCount();
+                }
+            }
+        }
+        wallNanos = System.nanoTime() - t0;
+        energy1 = energy();
+        steps = nSteps;
+        this.events = (events != null) ? events.getEventCount() : 0;
+        if( events == null )
+        {
+            StepContext sc = (parallel != null) ? parallel.getStepContext() : world.getStepContext();
+            railHits = sc.getRailHits();
+        }
+
+        if( pool != null )
+        {
+            pool.shutdown();
+        }
+    }
+
+    // Balls whose center has left the table; should always be 0
+    public int countEscaped()
+    {
+        BilliardTable t = store.table;
+        int escaped = 0;
+        for( int i = 0; i < store.size(); i++ )
+        {
+            if( (store.cx[i] < t.xMin) || (store.cx[i] > t.xMax)
+                || (store.cy[i] < t.yMin) || (store.cy[i] > t.yMax) )
+            {
+                escaped++;
+            }
+        }
+        return escaped;
+    }
+
+    // Kinetic and tilt potential energy of all balls, the potential
+    // from the lowest corner of the table; with the doubles of the
+    // double precision state (dp, kg, sec)
+    public double energy()
+    {
+        Scenario s = scenario;
+        BilliardTable t = store.table;
+        double x0 = (s.ax > 0) ? t.xMax : t.xMin;
+        double y0 = (s.ay > 0) ? t.yMax : t.yMin;
+        double gx = store.dpm*(double) s.ax;
+        double gy = store.dpm*(double) s.ay;
+        boolean d = store.doublePrecision;
+        double e = 0;
+        for( int i = 0; i < store.size(); i++ )
+        {
+            double x = d ? store.dcx[i] : store.cx[i];
+            double y = d ? store.dcy[i] : store.cy[i];
+            double vx = d ? store.dvx[i] : store.vx[i];
+            double vy = d ? store.dvy[i] : store.vy[i];
+            e += store.mass[i]*(0.5*(vx*vx + vy*vy) - gx*(x - x0) - gy*(y - y0));
+        }
+        return e;
+    }
+
+    // Balls that stood still through the last step (friction only)
+    public int countResting()
+    {
+        int resting = 0;
+        for( int i = 0; i < store.size(); i++ )
+        {
+            if( store.isResting( i ) ) resting++;
+        }
+        return resting;
+    }
+
+    public String report()
+    {
+        Scenario s = scenario;
+        double wallSec = wallNanos*1e-9;
+        double simSec = steps*s.stepMilli*1e-3;
+        StringBuilder b = new StringBuilder();
+        b.append( String.format( Locale.US, "engine        %s%s%n", s.engine,
+                                 (s.batch && (s.engine.equals( "grid" ) || s.engine.equals( "sap" ))) ? " (batch)" : "" ) );
+        b.append( String.format( Locale.US, "balls         %d%n", store.size() ) );
+        b.append( String.format( Locale.US, "table         %dx%d%n", s.width, s.height ) );
+        b.append( String.format( Locale.US, "steps         %d x %.3f ms%n", steps, s.stepMilli ) );
+        b.append( String.format( Locale.US, "simulated     %.3f s%n", simSec ) );
+        b.append( String.format( Locale.US, "wall          %.3f s%n", wallSec ) );
+        b.append( String.format( Locale.US, "steps/s       %.1f%n", steps/wallSec ) );
+        b.append( String.format( Locale.US, "ball-steps/s  %.4g%n", steps*(double) store.size()/wallSec ) );
+        b.append( String.format( Locale.US, "realtime      %.2fx%n", simSec/wallSec ) );
+        b.append( String.format( Locale.US, "precision     %s%n", s.precision ) );
+        b.append( String.format( Locale.US, "energy drift  %.3g%n", (energy1 - energy0)/energy0 ) );
+        if( events > 0 )
+        {
+            b.append( String.format( Locale.US, "events        %d%n", events ) );
+        }
+        if( !s.engine.equals( "event" ) )
+        {
+            b.append( String.format( Locale.US, "rail hits     %d%n", railHits ) );
+        }
+        if( chains > 0 )
+        {
+            // the most the threads can gain on the resolution
+            b.append( String.format( Locale.US, "pairs/chain   %.1f%n", pairs/(double) chains ) );
+        }
+        if( s.iterations > 0 )
+        {
+            b.append( String.format( Locale.US, "passes/step   %.2f of %d%n", passes/(double) steps, s.iterations ) );
+        }
+        if( s.ccd )
+        {
+            b.append( String.format( Locale.US, "swept hits    %d%n", sweptHits ) );
+        }
+        if( s.friction )
+        {
+            b.append( String.format( Locale.US, "resting       %d%n", countResting() ) );
+        }
+        if( s.sleep )
+        {
+            b.append( String.format( Locale.US, "sleeping      %d%n", store.getSleepingCount() ) );
+        }
+        b.append( String.format( Locale.US, "escaped       %d%n", countEscaped() ) );
+        return b.toString();
+    }
+
+    public static void main( String[] args ) throws Exception
+    {
+        // The scenario file first, then the key=value overrides
+        Scenario s = new Scenario();
+        for( String arg : args )
+        {
+            if( arg.indexOf( '=' ) < 0 )
+            {
+                s = Scenario.load( arg );
+            }
+        }
+        for( String arg : args )
+        {
+            int eq = arg.indexOf( '=' );
+            if( eq > 0 )
+            {
+                s.set( arg.substring( 0, eq ), arg.substring( eq + 1 ) );
+            }
+        }
+
+        HeadlessRunner runner = new HeadlessRunner( s );
+        runner.run();
+        System.out.print( runner.report() );
+    }
+}
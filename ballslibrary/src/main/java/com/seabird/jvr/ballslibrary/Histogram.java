@@ -0,0 +1,120 @@
+package com.seabird.jvr.ballslibrary;
+
+/**
+ * Histogram of durations in nanoseconds, HdrHistogram style:
+ * buckets are exact below 64 ns, above that every power of 2 is cut
+ * into 32 buckets, so any value is kept to within about 3%.
+ * Values from 0 up to 2^40 ns (18 min) are covered; larger ones go
+ * into the last bucket. The bucket array is allocated once, so
+ * record() never allocates.
+ *
+ * One thread records; others may read at any time, then they see
+ * a slightly stale but usable picture.
+ */
+public class Histogram
+{
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;          // buckets per power of 2
+    private static final int MAX_BIT = 40;
+    private static final int BUCKETS = (MAX_BIT - SUB_BITS + 1)*SUB + SUB;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public void record( long nanos )
+    {
+        long v = Math.max( nanos, 0 );
+        counts[bucketOf( v )]++;
+        count++;
+        total += v;
+        if( v < min ) min = v;
+        if( v > max ) max = v;
+    }
+
+    public void reset()
+    {
+        for( int k = 0; k < BUCKETS; k++ )
+        {
+            counts[k] = 0;
+        }
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getMin()
+    {
+        return (count > 0) ? min : 0;
+    }
+
+    public long getMax()
+    {
+        return max;
+    }
+
+    public double getMean()
+    {
+        return (count > 0) ? (double) total/count : 0;
+    }
+
+    // Smallest value v such that a fraction q (0..1) of all values
+    // is <= v, to bucket precision
+    public long getPercentile( double q )
+    {
+        if( count == 0 ) return 0;
+        long rank = Math.max( 1, (long) Math.ceil( q*count ) );
+        long seen = 0;
+        for( int k = 0; k < BUCKETS; k++ )
+        {
+            seen += counts[k];
+            if( seen >= rank )
+            {
+                return Math.min( highestOf( k ), max );
+            }
+        }
+        return max;
+    }
+
+    // Number of buckets; bucket k holds lowestOf(k) .. highestOf(k)
+    public int getBucketCount()
+    {
+        return BUCKETS;
+    }
+
+    public long getBucket( int k )
+    {
+        return counts[k];
+    }
+
+    static int bucketOf( long v )
+    {
+        if( v < 2*SUB ) return (int) v;
+        int msb = 63 - Long.numberOfLeadingZeros( v );
+        if( msb > MAX_BIT ) return BUCKETS - 1;
+        int shift = msb - SUB_BITS;
+        return (shift + 1)*SUB + (int) (v >> shift) - SUB;
+    }
+
+    static long lowestOf( int k )
+    {
+        if( k < 2*SUB ) return k;
+        int shift = k/SUB - 1;
+        return (long) (k % SUB + SUB) << shift;
+    }
+
+    static long highestOf( int k )
+    {
+        if( k < 2*SUB ) return k;
+        int shift = k/SUB - 1;
+        return lowestOf( k ) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,241 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only binary log of everything that drives a simulation:
+ * the table, the balls at the start, every accelerometer sample and
+ * every physics step with its dt and acceleration. Read back with
+ * InputTrace, replayed with ReplayDriver.
+ *
+ * The file is memory mapped in chunks, so appending a record is a
+ * few buffer puts and normally no system call. Records are a type
+ * byte and fixed fields per type (see InputTrace); a 0 byte, which
+ * is what the unused rest of a chunk holds, ends the log. On close
+ * the file is cut to the bytes written.
+ *
+ * Only the physics thread writes the file. Accelerometer samples
+ * from the sensor thread go lock-free into a SampleRing and are
+ * written by the next step (or close), ahead of it, so the sensor
+ * never waits for the physics thread; a sample that finds the ring
+ * full is dropped and counted (getDropped()). The remaining lock only
+ * keeps close() on another thread out of an append. An I/O error
+ * stops the recording (getError()) instead of reaching the caller.
+ */
+public class InputRecorder implements Closeable
+{
+    public static final int DEFAULT_CHUNK = 1 << 20;
+    public static final int SENSOR_RING = 1024;    // samples, ~20 s at 50 Hz
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int chunk;
+    private MappedByteBuffer buf;
+    private long base;              // file offset of buf
+    private boolean closed;
+    private IOException error;
+    private final SampleRing sensor = new SampleRing( SENSOR_RING );
+    private final D3 sample = new D3();
+
+    public InputRecorder( File f ) throws IOException
+    {
+        this( f, DEFAULT_CHUNK );
+    }
+
+    InputRecorder( File f, int chunkBytes ) throws IOException
+    {
+        file = new RandomAccessFile( f, "rw" );
+        file.setLength( 0 );
+        channel = file.getChannel();
+        chunk = chunkBytes;
+        buf = channel.map( FileChannel.MapMode.READ_WRITE, 0, chunk );
+        buf.putInt( InputTrace.MAGIC );
+        buf.putInt( InputTrace.VERSION );
+    }
+
+    public synchronized IOException getError()
+    {
+        return error;
+    }
+
+    // Bytes written so far
+    public synchronized long length()
+    {
+        return base + buf.position();
+    }
+
+    // Samples the sensor ring had no room for
+    public long getDropped()
+    {
+        return sensor.getDropped();
+    }
+
+    // Accelerometer sample, device time in ns, m/sec*sec; only from
+    // one thread, written with the next step
+    public void accel( long tNanos, float x, float y, float z )
+    {
+        sensor.offer( tNanos, x, y, z );
+    }
+
+    // Writes the samples waiting in the sensor ring
+    private void drainSamples()
+    {
+        while( sensor.size() > 0 )
+        {
+            long t = sensor.poll( sample );
+            if( !reserve( InputTrace.ACCEL_BYTES ) ) continue;
+            buf.put( InputTrace.ACCEL );
+            buf.putLong( t );
+            buf.putFloat( sample.x );
+            buf.putFloat( sample.y );
+            buf.putFloat( sample.z );
+        }
+    }
+
+    // One physics step as the simulation did it
+    public void step( long tNanos, double tMilli, float ax, float ay )
+    {
+        step( InputTrace.STEP, tNanos, tMilli, ax, ay );
+    }
+
+    // Part of a step: integration only, the overlaps are resolved
+    // after the last part (a STEP)
+    public void subStep( long tNanos, double tMilli, float ax, float ay )
+    {
+        step( InputTrace.SUBSTEP, tNanos, tMilli, ax, ay );
+    }
+
+    private synchronized void step( byte type, long tNanos, double tMilli, float ax, float ay )
+    {
+        drainSamples();
+        if( !reserve( InputTrace.STEP_BYTES ) ) return;
+        buf.put( type );
+        buf.putLong( tNanos );
+        buf.putDouble( tMilli );
+        buf.putFloat( ax );
+        buf.putFloat( ay );
+    }
+
+    public void table( BilliardTable t )
+    {
+        table( t.xMin, t.xMax, t.yMin, t.yMax );
+    }
+
+    public synchronized void table( int xMin, int xMax, int yMin, int yMax )
+    {
+        if( !reserve( InputTrace.TABLE_BYTES ) ) return;
+        buf.put( InputTrace.TABLE );
+        buf.putInt( xMin );
+        buf.putInt( xMax );
+        buf.putInt( yMin );
+        buf.putInt( yMax );
+    }
+
+    // Position, radius, velocity, spin, mass, restitution and grip of
+    // every ball of the store
+    public synchronized void balls( BallStore s )
+    {
+        for( int i = 0; i < s.size(); i++ )
+        {
+            if( !reserve( InputTrace.BALL_BYTES ) ) return;
+            buf.put( InputTrace.BALL );
+            buf.putFloat( s.cx[i] );
+            buf.putFloat( s.cy[i] );
+            buf.putFloat( s.radius[i] );
+            buf.putFloat( s.vx[i] );
+            buf.putFloat( s.vy[i] );
+            buf.putInt( s.color[i] );
+            buf.putFloat( s.px[i] );
+            buf.putFloat( s.py[i] );
+            buf.putFloat( s.pz[i] );
+            buf.putFloat( s.mass[i] );
+            buf.putFloat( s.restitution[i] );
+            buf.putFloat( s.grip[i] );
+        }
+    }
+
+    // Whether the store has friction, and the table's coefficients
+    public synchronized void friction( BallStore s )
+    {
+        if( !reserve( InputTrace.FRICTION_BYTES ) ) return;
+        buf.put( InputTrace.FRICTION );
+        buf.put( (byte) (s.friction ? 1 : 0) );
+        buf.putFloat( s.table.rollingFriction );
+        buf.putFloat( s.table.slidingFriction );
+        buf.putFloat( s.table.spinDeceleration );
+    }
+
+    // Whether the store lets still balls sleep, and its thresholds
+    public synchronized void sleep( BallStore s )
+    {
+        if( !reserve( InputTrace.SLEEP_BYTES ) ) return;
+        buf.put( InputTrace.SLEEP );
+        buf.put( (byte) (s.sleep ? 1 : 0) );
+        buf.putFloat( s.sleepSpeed );
+        buf.putFloat( s.sleepTime );
+        buf.putFloat( s.wakeTilt );
+    }
+
+    // Float or double state; the balls that follow are logged as floats
+    public synchronized void precision( BallStore s )
+    {
+        if( !reserve( InputTrace.PRECISION_BYTES ) ) return;
+        buf.put( InputTrace.PRECISION );
+        buf.put( (byte) (s.doublePrecision ? 1 : 0) );
+    }
+
+    // The world's contact solver and swept collisions with their settings
+    public synchronized void contacts( World w )
+    {
+        if( !reserve( InputTrace.CONTACTS_BYTES ) ) return;
+        ContactSolver c = w.getSolver();
+        BilliardTable t = w.getTable();
+        buf.put( InputTrace.CONTACTS );
+        buf.putInt( (c != null) ? c.iterations : 0 );
+        buf.put( (byte) ((c != null) && c.warmStart ? 1 : 0) );
+        buf.putFloat( (c != null) ? c.tolerance : 0 );
+        buf.putFloat( (c != null) ? c.restSpeed : 0 );
+        buf.putFloat( t.collidingRestitution );
+        buf.putFloat( t.collidingFriction );
+        SweptCollider sc = w.getCollider();
+        buf.put( (byte) ((sc != null) ? 1 : 0) );
+        buf.putFloat( (sc != null) ? sc.minSweep : 0 );
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if( closed ) return;
+        drainSamples();
+        closed = true;
+        long end = base + buf.position();
+        buf.force();
+        buf = null;
+        channel.truncate( end );
+        file.close();
+    }
+
+    // Room for a record plus the end mark; maps the next chunk if needed
+    private boolean reserve( int bytes )
+    {
+        if( closed || (error != null) ) return false;
+        if( buf.remaining() > bytes ) return true;
+        try
+        {
+            base += buf.position();
+            buf.force();
+            buf = channel.map( FileChannel.MapMode.READ_WRITE, base, chunk );
+            return true;
+        }
+        catch( IOException e )
+        {
+            error = e;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a log written by InputRecorder, one record per next().
+ * The fields of the current record are left in the public fields
+ * of this object; which ones depends on type:
+ *
+ * ACCEL   t (ns), x, y, z (m/sec*sec)
+ * STEP    t (ns), tMilli, ax, ay
+ * SUBSTEP as STEP, but integration only, no overlap resolution
+ * TABLE   xMin, xMax, yMin, yMax
+ * BALL    x, y, r, vx, vy, color, px, py, pz (spin from version 2 on),
+ *         mass (from version 4 on), restitution, grip (from version 7
+ *         on, else NaN: the table's)
+ * FRICTION friction, rollingFriction, slidingFriction, spinDeceleration
+ * SLEEP   sleep, sleepSpeed, sleepTime, wakeTilt (from version 3 on)
+ * CONTACTS iterations (0 = pairwise), warmStart, tolerance, restSpeed,
+ *         collidingRestitution, collidingFriction (from version 4 on),
+ *         swept, minSweep (from version 5 on)
+ * PRECISION doublePrecision (from version 6 on)
+ *
+ * All numbers big endian; the file starts with MAGIC and VERSION.
+ */
+public class InputTrace
+{
+    public static final int MAGIC   = 0x42424c47;      // "BBLG"
+    public static final int VERSION = 7;                // 1 to 6 still read
+
+    public static final byte END   = 0;
+    public static final byte ACCEL = 1;
+    public static final byte STEP  = 2;
+    public static final byte TABLE = 3;
+    public static final byte BALL  = 4;
+    public static final byte SUBSTEP = 5;
+    public static final byte FRICTION = 6;
+    public static final byte SLEEP = 7;
+    public static final byte CONTACTS = 8;
+    public static final byte PRECISION = 9;
+
+    static final int ACCEL_BYTES = 1 + 8 + 3*4;
+    static final int STEP_BYTES  = 1 + 8 + 8 + 2*4;
+    static final int TABLE_BYTES = 1 + 4*4;
+    static final int BALL_BYTES  = 1 + 12*4;
+    static final int BALL_V6_BYTES = 1 + 10*4;
+    static final int BALL_V3_BYTES = 1 + 9*4;
+    static final int BALL_V1_BYTES = 1 + 6*4;
+    static final int FRICTION_BYTES = 1 + 1 + 3*4;
+    static final int SLEEP_BYTES = 1 + 1 + 3*4;
+    static final int CONTACTS_BYTES = 1 + 4 + 1 + 4*4 + 1 + 4;
+    static final int CONTACTS_V4_BYTES = 1 + 4 + 1 + 4*4;
+    static final int PRECISION_BYTES = 1 + 1;
+
+    private final MappedByteBuffer buf;
+    private final int version;
+
+    public byte   type;
+    public long   t;
+    public double tMilli;
+    public float  x, y, z, ax, ay, r, vx, vy;
+    public int    xMin, xMax, yMin, yMax, color;
+    public float  px, py, pz, mass, restitution, grip;
+    public boolean friction;
+    public float  rollingFriction, slidingFriction, spinDeceleration;
+    public boolean sleep;
+    public float  sleepSpeed, sleepTime, wakeTilt;
+    public int    iterations;
+    public boolean warmStart;
+    public float  tolerance, restSpeed, collidingRestitution, collidingFriction;
+    public boolean swept;
+    public float  minSweep;
+    public boolean doublePrecision;
+
+    public InputTrace( File f ) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile( f, "r" );
+        try
+        {
+            buf = file.getChannel().map( FileChannel.MapMode.READ_ONLY, 0, file.length() );
+        }
+        finally
+        {
+            file.close();   // the mapping stays valid
+        }
+        if( (buf.remaining() < 8) || (buf.getInt() != MAGIC) )
+        {
+            throw new IOException( f + " is not an input log" );
+        }
+        version = buf.getInt();
+        if( (version < 1) || (version > VERSION) )
+        {
+            throw new IOException( f + ": unknown log version " + version );
+        }
+    }
+
+    // Back to the first record
+    public void rewind()
+    {
+        buf.position( 8 );
+    }
+
+    // Reads the next record; false at the end of the log
+    public boolean next() throws IOException
+    {
+        if( !buf.hasRemaining() )
+        {
+            type = END;
+            return false;
+        }
+        type = buf.get();
+        switch( type )
+        {
+            case END:
+                return false;
+            case ACCEL:
+                need( ACCEL_BYTES );
+                t = buf.getLong();
+                x = buf.getFloat();
+                y = buf.getFloat();
+                z = buf.getFloat();
+                return true;
+            case STEP:
+            case SUBSTEP:
+                need( STEP_BYTES );
+                t = buf.getLong();
+                tMilli = buf.getDouble();
+                ax = buf.getFloat();
+                ay = buf.getFloat();
+                return true;
+            case TABLE:
+                need( TABLE_BYTES );
+                xMin = buf.getInt();
+                xMax = buf.getInt();
+                yMin = buf.getInt();
+                yMax = buf.getInt();
+                return true;
+            case BALL:
+                need( (version < 2) ? BALL_V1_BYTES : (version < 4) ? BALL_V3_BYTES
+                      : (version < 7) ? BALL_V6_BYTES : BALL_BYTES );
+                x = buf.getFloat();
+                y = buf.getFloat();
+                r = buf.getFloat();
+                vx = buf.getFloat();
+                vy = buf.getFloat();
+                color = buf.getInt();
+                px = py = pz = 0;
+                if( version >= 2 )
+                {
+                    px = buf.getFloat();
+                    py = buf.getFloat();
+                    pz = buf.getFloat();
+                }
+                // older logs: every ball had the default mass
+                mass = (version >= 4) ? buf.getFloat() : 0.17f;
+                restitution = (version >= 7) ? buf.getFloat() : Float.NaN;
+                grip = (version >= 7) ? buf.getFloat() : Float.NaN;
+                return true;
+            case FRICTION:
+                need( FRICTION_BYTES );
+                friction = buf.get() != 0;
+                rollingFriction = buf.getFloat();
+                slidingFriction = buf.getFloat();
+                spinDeceleration = buf.getFloat();
+                return true;
+            case SLEEP:
+                need( SLEEP_BYTES );
+                sleep = buf.get() != 0;
+                sleepSpeed = buf.getFloat();
+                sleepTime = buf.getFloat();
+                wakeTilt = buf.getFloat();
+                return true;
+            case CONTACTS:
+                need( (version < 5) ? CONTACTS_V4_BYTES : CONTACTS_BYTES );
+                iterations = buf.getInt();
+                warmStart = buf.get() != 0;
+                tolerance = buf.getFloat();
+                restSpeed = buf.getFloat();
+                collidingRestitution = buf.getFloat();
+                collidingFriction = buf.getFloat();
+                swept = (version >= 5) && (buf.get() != 0);
+                minSweep = (version >= 5) ? buf.getFloat() : 0;
+                return true;
+            case PRECISION:
+                need( PRECISION_BYTES );
+                doublePrecision = buf.get() != 0;
+                return true;
+            default:
+                throw new IOException( "Bad record type " + type + " at " + (buf.position() - 1) );
+        }
+    }
+
+    private void need( int bytes ) throws IOException
+    {
+        if( buf.remaining() < bytes - 1 )
+        {
+            throw new IOException( "Log ends inside a record" );
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Per-ball attributes for an instanced draw, packed from a state
+ * snapshot into a direct float buffer in native order, ready for
+ * glBufferData/glBufferSubData. One instance per ball, FLOATS floats:
+ *
+ *   x, y, radius       center interpolated alpha of the way to state 1
+ *   mx, my             orientation marker relative to the center
+ *   red, green, blue   colour, 0..1
+ *
+ * The floats are first written to a heap array and then copied with
+ * one bulk put; single puts into a direct buffer are much slower on
+ * Android. Nothing is allocated unless the ball count grows.
+ */
+public class InstanceBuffer
+{
+    public static final int X = 0, Y = 1, RADIUS = 2, MX = 3, MY = 4;
+    public static final int RED = 5, GREEN = 6, BLUE = 7;
+    public static final int FLOATS = 8;             // per instance
+    public static final int STRIDE = 4*FLOATS;      // bytes per instance
+
+    private float[] data = new float[0];
+    private FloatBuffer buffer;
+    private int count;
+
+    public InstanceBuffer( int capacity )
+    {
+        ensureCapacity( capacity );
+    }
+
+    public void ensureCapacity( int n )
+    {
+        if( data.length < n*FLOATS )
+        {
+            data = new float[n*FLOATS];
+            buffer = ByteBuffer.allocateDirect( n*STRIDE )
+                               .order( ByteOrder.nativeOrder() )
+                               .asFloatBuffer();
+        }
+    }
+
+    // Packs all balls of s at alpha (0..1) between its two states;
+    // returns the number of instances. The buffer is left at position
+    // 0 with the limit at the end of the last instance.
+    public int pack( StateSnapshot s, float alpha )
+    {
+        int n = s.count;
+        ensureCapacity( n );
+        float[] d = data;
+        for( int i = 0, k = 0; i < n; i++, k += FLOATS )
+        {
+            int c = s.color[i];
+            d[k + X] = s.x0[i] + alpha*(s.x1[i] - s.x0[i]);
+            d[k + Y] = s.y0[i] + alpha*(s.y1[i] - s.y0[i]);
+            d[k + RADIUS] = s.radius[i];
+            d[k + MX] = s.mx[i];
+            d[k + MY] = s.my[i];
+            d[k + RED] = ((c >> 16) & 0xFF)*(1/255f);
+            d[k + GREEN] = ((c >> 8) & 0xFF)*(1/255f);
+            d[k + BLUE] = (c & 0xFF)*(1/255f);
+        }
+        buffer.clear();
+        buffer.put( d, 0, n*FLOATS );
+        buffer.flip();
+        count = n;
+        return n;
+    }
+
+    public FloatBuffer getBuffer()
+    {
+        return buffer;
+    }
+
+    // Instances packed by the last pack()
+    public int getCount()
+    {
+        return count;
+    }
+}
@@ -0,0 +1,56 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of int pairs, stored interleaved in one int[].
+ * Meant to be cleared and refilled every step; capacity is
+ * kept, so refilling does not allocate once it is large enough.
+ */
+public class IntPairBuffer
+{
+    private int[] data;
+    private int size;   // number of pairs
+
+    public IntPairBuffer()
+    {
+        this( 64 );
+    }
+
+    public IntPairBuffer( int capacity )
+    {
+        data = new int[2*Math.max( capacity, 1 )];
+        size = 0;
+    }
+
+    public void clear()
+    {
+        size = 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public void add( int i, int j )
+    {
+        if( 2*size + 2 > data.length )
+        {
+            data = Arrays.copyOf( data, 2*data.length );
+        }
+        data[2*size]     = i;
+        data[2*size + 1] = j;
+        size++;
+    }
+
+    public int first( int k )
+    {
+        return data[2*k];
+    }
+
+    public int second( int k )
+    {
+        return data[2*k + 1];
+    }
+}
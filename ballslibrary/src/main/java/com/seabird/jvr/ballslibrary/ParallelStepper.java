@@ -0,0 +1,306 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Steps all balls of a store on several cores (fork/join); meant for
+ * large offline simulations, not for the animation thread.
+ *
+ * A step gives bit for bit the state of the sequential one,
+ * BallStore.stepAll followed by BallStore.resolveOverlaps with the
+ * UniformGrid, for any number of threads:
+ * 1. integration (BallStore.doStep) of ball ranges in parallel; balls
+ *    are independent here, so this is exactly BallStore.stepAll
+ *    (which leaves sleeping balls out the same way)
+ * 2. the candidate pairs of the UniformGrid, in the order in which
+ *    resolveOverlaps takes them
+ * 3. the pairs resolved in parallel as a data flow: the result only
+ *    depends on every ball seeing its pairs in that order, since pairs
+ *    without a common ball commute. So each pair waits for the pair
+ *    before it of either of its balls, and for nothing else. Threads
+ *    claim chunks of pairs in order; a pair only ever waits for one
+ *    of an earlier chunk, which a running thread has claimed, so
+ *    there is no dead lock.
+ *
+ * With fewer than MIN_BALLS balls (one integration task) the whole
+ * step runs on the calling thread, so that World.setParallel costs
+ * nothing on small tables; so does the resolution of fewer than
+ * MIN_PAIRS pairs (a few chunks). Rail hits of the
+ * parallel integration are added up in getStepContext(), as World
+ * counts them for FrameMetrics.
+ *
+ * The longest chain of pairs that must follow each other bounds what
+ * threads can gain on step 3: getPairCount()/getChainLength(). Measured
+ * on scenes as in ParallelStepperBenchmark (tilted, after 30 steps):
+ *
+ *   balls     scattered   piled
+ *   8000         40        20
+ *   20000        56        34
+ *   100000       82       116
+ *
+ * so the data flow leaves room for far more cores than a phone has.
+ * On one core the bookkeeping (fork/join, linking the pairs, the
+ * waits) costs 5 to 20 % over the sequential step; a multi-core
+ * run of ParallelStepperBenchmark is still to be recorded.
+ */
+public class ParallelStepper
+{
+    private static final int BALLS_PER_TASK = 2048;
+    private static final int PAIRS_PER_CHUNK = 256;
+    private static final int SPINS = 64;    // before a waiting thread yields
+    public static final int MIN_BALLS = 2*BALLS_PER_TASK;   // fewer are integrated on the calling thread
+    public static final int MIN_PAIRS = 4*PAIRS_PER_CHUNK;  // fewer are resolved on the calling thread
+
+    private final BallStore store;
+    private final ForkJoinPool pool;   // null: everything on the calling thread
+    private final UniformGrid grid = new UniformGrid();
+    private final IntPairBuffer pairs = new IntPairBuffer();
+    private final StepContext ctx = new StepContext();
+    private StepContext[] contexts = new StepContext[0];   // one per integration task
+
+    private int[] lastPair = new int[0];    // of each ball so far, -1 none
+    private int[] afterI = new int[0];      // pair that must be done before pair k, -1 none
+    private int[] afterJ = new int[0];
+    private int[] depth = new int[0];       // length of the longest chain ending in pair k
+    private AtomicIntegerArray done = new AtomicIntegerArray( 0 );  // stamp of the step a pair was done in
+    private final AtomicInteger nextChunk = new AtomicInteger();
+    private int stamp = 0;
+    private int chain;                      // longest chain of the last resolve
+
+    public ParallelStepper( BallStore store, ForkJoinPool pool )
+    {
+        this.store = store;
+        this.pool = pool;
+    }
+
+    // Rail hits and loop limit hits since FrameMetrics.countStep took them
+    public StepContext getStepContext()
+    {
+        return ctx;
+    }
+
+    // One step of all balls incl. rails and ball-ball overlaps
+    public void step( float ax, float ay, double tMilli )
+    {
+        integrate( ax, ay, tMilli, ctx );
+        resolveOverlaps();
+    }
+
+    // As BallStore.stepAll, rail hits are counted in sc; on the
+    // calling thread below MIN_BALLS balls
+    public void integrate( float ax, float ay, double tMilli, StepContext sc )
+    {
+        int n = store.size();
+        if( (pool == null) || (n < MIN_BALLS) )
+        {
+            store.stepAll( ax, ay, tMilli, sc );
+            return;
+        }
+
+        store.updateSleep( ax, ay, tMilli );
+        int tasks = (n + BALLS_PER_TASK - 1)/BALLS_PER_TASK;
+        if( contexts.length < tasks )
+        {
+            contexts = Arrays.copyOf( contexts, tasks );
+            for( int t = 0; t < tasks; t++ )
+            {
+                if( contexts[t] == null ) contexts[t] = new StepContext();
+            }
+        }
+        pool.invoke( new Integrate( ax, ay, tMilli, 0, tasks ) );
+        for( int t = 0; t < tasks; t++ )
+        {
+            sc.railHits += contexts[t].railHits;
+            sc.loopLimitHits += contexts[t].loopLimitHits;
+            contexts[t].railHits = 0;
+            contexts[t].loopLimitHits = 0;
+        }
+    }
+
+    // As BallStore.resolveOverlaps with the UniformGrid; on the
+    // calling thread below MIN_BALLS balls or MIN_PAIRS candidate pairs
+    public void resolveOverlaps()
+    {
+        int n = store.size();
+        if( store.getSleepingCount() == n )
+        {
+            // Nothing moved, nothing overlaps anew
+            return;
+        }
+        grid.findPairs( store, pairs );
+        int np = pairs.size();
+
+        if( (pool == null) || (n < MIN_BALLS) || (np < MIN_PAIRS) )
+        {
+            for( int k = 0; k < np; k++ )
+            {
+                store.resolvePair( pairs.second( k ), pairs.first( k ) );
+            }
+            chain = np;
+            return;
+        }
+
+        linkPairs( n, np );
+        stamp++;
+        nextChunk.set( 0 );
+        int workers = Math.min( pool.getParallelism(), (np + PAIRS_PER_CHUNK - 1)/PAIRS_PER_CHUNK );
+        pool.invoke( new Resolve( 0, workers ) );
+    }
+
+    // Candidate pairs of the last resolveOverlaps
+    public int getPairCount()
+    {
+        return pairs.size();
+    }
+
+    // Longest chain of those pairs that had to be resolved one after
+    // the other (all of them when resolved on one thread); pairs over
+    // chain is the most the threads can gain on that step
+    public int getChainLength()
+    {
+        return chain;
+    }
+
+    // For each pair, the pair before it of each of its balls
+    private void linkPairs( int n, int np )
+    {
+        if( lastPair.length < n )
+        {
+            lastPair = new int[n + (n >> 1)];
+        }
+        if( afterI.length < np )
+        {
+            int cap = np + (np >> 1);
+            afterI = new int[cap];
+            afterJ = new int[cap];
+            depth = new int[cap];
+            done = new AtomicIntegerArray( cap );
+            stamp = 0;
+        }
+        Arrays.fill( lastPair, 0, n, -1 );
+        int longest = 0;
+        for( int k = 0; k < np; k++ )
+        {
+            int i = pairs.first( k );
+            int j = pairs.second( k );
+            int a = afterI[k] = lastPair[i];
+            int b = afterJ[k] = lastPair[j];
+            // depth of pair k in the chains
+            int d = 1 + Math.max( (a < 0) ? 0 : depth[a], (b < 0) ? 0 : depth[b] );
+            depth[k] = d;
+            longest = Math.max( longest, d );
+            lastPair[i] = k;
+            lastPair[j] = k;
+        }
+        chain = longest;
+    }
+
+    // Claims chunks of pairs until none is left
+    private void resolveChunks()
+    {
+        int np = pairs.size();
+        int c;
+        while( (c = nextChunk.getAndIncrement())*PAIRS_PER_CHUNK < np )
+        {
+            int lo = c*PAIRS_PER_CHUNK;
+            int hi = Math.min( lo + PAIRS_PER_CHUNK, np );
+            for( int k = lo; k < hi; k++ )
+            {
+                // pairs of the own chunk are done already
+                if( afterI[k] < lo ) awaitPair( afterI[k] );
+                if( afterJ[k] < lo ) awaitPair( afterJ[k] );
+                store.resolvePair( pairs.second( k ), pairs.first( k ) );
+                done.set( k, stamp );
+            }
+        }
+    }
+
+    private void awaitPair( int k )
+    {
+        if( k < 0 )
+        {
+            return;
+        }
+        int spins = 0;
+        while( done.get( k ) != stamp )
+        {
+            if( ++spins > SPINS )
+            {
+                Thread.yield();
+            }
+        }
+    }
+
+    private class Integrate extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        final float ax, ay;
+        final double tMilli;
+        final int lo, hi;   // tasks of BALLS_PER_TASK balls
+
+        Integrate( float ax, float ay, double tMilli, int lo, int hi )
+        {
+            this.ax = ax;
+            this.ay = ay;
+            this.tMilli = tMilli;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if( hi - lo == 1 )
+            {
+                StepContext sc = contexts[lo];
+                int end = Math.min( (lo + 1)*BALLS_PER_TASK, store.size() );
+                for( int i = lo*BALLS_PER_TASK; i < end; i++ )
+                {
+                    if( !store.asleep[i] )
+                    {
+                        store.doStep( i, ax, ay, tMilli, sc );
+                    }
+                }
+            }
+            else
+            {
+                int mid = (lo + hi) >>> 1;
+                invokeAll( new Integrate( ax, ay, tMilli, lo, mid ),
+                           new Integrate( ax, ay, tMilli, mid, hi ) );
+            }
+        }
+    }
+
+    // Workers lo..hi, each resolving chunks until none is left
+    private class Resolve extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        final int lo, hi;
+
+        Resolve( int lo, int hi )
+        {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if( hi - lo <= 1 )
+            {
+                resolveChunks();
+            }
+            else
+            {
+                int mid = (lo + hi) >>> 1;
+                invokeAll( new Resolve( lo, mid ), new Resolve( mid, hi ) );
+            }
+        }
+    }
+}
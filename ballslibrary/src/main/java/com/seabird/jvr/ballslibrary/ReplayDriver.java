@@ -0,0 +1,165 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Replays an InputTrace headless and as fast as possible: the table
+ * and balls from the log, then every recorded physics step with its
+ * own dt and acceleration, done the way SimulationLoop does it.
+ * The same trace therefore always gives the same final state; the
+ * checksum in the report makes that easy to compare.
+ *
+ *   java -cp ballslibrary.jar com.seabird.jvr.ballslibrary.ReplayDriver input.bblog
+ */
+public class ReplayDriver
+{
+    private final InputTrace trace;
+    private final BilliardTable table = new BilliardTable();
+    private final World world = new World( table );
+    private final BallStore store = world.getStore();
+
+    private long steps;
+    private long samples;
+    private double simMilli;
+    private long wallNanos;
+
+    public ReplayDriver( InputTrace trace )
+    {
+        this.trace = trace;
+    }
+
+    public BallStore getStore()
+    {
+        return store;
+    }
+
+    public long getSteps()
+    {
+        return steps;
+    }
+
+    public void run() throws IOException
+    {
+        trace.rewind();
+        long t0 = System.nanoTime();
+        while( trace.next() )
+        {
+            switch( trace.type )
+            {
+                case InputTrace.TABLE:
+                    table.xMin = trace.xMin;
+                    table.xMax = trace.xMax;
+                    table.yMin = trace.yMin;
+                    table.yMax = trace.yMax;
+                    break;
+                case InputTrace.BALL:
+                    int k = store.add( trace.x, trace.y, trace.r, trace.color );
+                    store.setVelocity( k, trace.vx, trace.vy, 0 );
+                    store.px[k] = trace.px;
+                    store.py[k] = trace.py;
+                    store.pz[k] = trace.pz;
+                    store.mass[k] = trace.mass;
+                    if( !Float.isNaN( trace.restitution ) )
+                    {
+                        store.restitution[k] = trace.restitution;
+                        store.grip[k] = trace.grip;
+                    }
+                    break;
+                case InputTrace.FRICTION:
+                    store.friction = trace.friction;
+                    table.rollingFriction = trace.rollingFriction;
+                    table.slidingFriction = trace.slidingFriction;
+                    table.spinDeceleration = trace.spinDeceleration;
+                    break;
+                case InputTrace.SLEEP:
+                    store.sleep = trace.sleep;
+                    store.sleepSpeed = trace.sleepSpeed;
+                    store.sleepTime = trace.sleepTime;
+                    store.wakeTilt = trace.wakeTilt;
+                    break;
+                case InputTrace.PRECISION:
+                    store.doublePrecision = trace.doublePrecision;
+                    break;
+                case InputTrace.CONTACTS:
+                    table.collidingRestitution = trace.collidingRestitution;
+                    table.collidingFriction = trace.collidingFriction;
+                    ContactSolver solver = null;
+                    if( trace.iterations > 0 )
+                    {
+                        solver = new ContactSolver( store );
+                        solver.iterations = trace.iterations;
+                        solver.warmStart = trace.warmStart;
+                        solver.tolerance = trace.tolerance;
+                        solver.restSpeed = trace.restSpeed;
+                    }
+                    world.setSolver( solver );
+                    SweptCollider collider = null;
+                    if( trace.swept )
+                    {
+                        collider = new SweptCollider( store );
+                        collider.minSweep = trace.minSweep;
+                    }
+                    world.setCollider( collider );
+                    break;
+                case InputTrace.SUBSTEP:
+                    world.integrate( trace.ax, trace.ay, trace.tMilli );
+                    simMilli += trace.tMilli;
+                    break;
+                case InputTrace.STEP:
+                    world.step( trace.ax, trace.ay, trace.tMilli );
+                    simMilli += trace.tMilli;
+                    steps++;
+                    break;
+                case InputTrace.ACCEL:
+                    samples++;
+                    break;
+            }
+        }
+        wallNanos = System.nanoTime() - t0;
+    }
+
+    // Hash over the bits of all positions and velocities
+    public static long checksum( BallStore s )
+    {
+        long h = 1125899906842597L;
+        for( int i = 0; i < s.size(); i++ )
+        {
+            h = 31*h + Float.floatToIntBits( s.cx[i] );
+            h = 31*h + Float.floatToIntBits( s.cy[i] );
+            h = 31*h + Float.floatToIntBits( s.vx[i] );
+            h = 31*h + Float.floatToIntBits( s.vy[i] );
+        }
+        return h;
+    }
+
+    public String report()
+    {
+        double wallSec = wallNanos*1e-9;
+        StringBuilder b = new StringBuilder();
+        b.append( String.format( Locale.US, "balls         %d%n", store.size() ) );
+        b.append( String.format( Locale.US, "table         %d..%d x %d..%d%n",
+                                 table.xMin, table.xMax, table.yMin, table.yMax ) );
+        b.append( String.format( Locale.US, "steps         %d%n", steps ) );
+        b.append( String.format( Locale.US, "samples       %d%n", samples ) );
+        b.append( String.format( Locale.US, "simulated     %.3f s%n", simMilli*1e-3 ) );
+        b.append( String.format( Locale.US, "wall          %.3f s%n", wallSec ) );
+        b.append( String.format( Locale.US, "steps/s       %.1f%n", steps/wallSec ) );
+        b.append( String.format( Locale.US, "realtime      %.2fx%n", simMilli*1e-3/wallSec ) );
+        b.append( String.format( Locale.US, "checksum      %016x%n", checksum( store ) ) );
+        return b.toString();
+    }
+
+    public static void main( String[] args ) throws Exception
+    {
+        if( args.length != 1 )
+        {
+            System.err.println( "usage: ReplayDriver <input log>" );
+            System.exit( 2 );
+        }
+        ReplayDriver driver = new ReplayDriver( new InputTrace( new File( args[0] ) ) );
+        driver.run();
+        System.out.print( driver.report() );
+    }
+}
@@ -0,0 +1,198 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.util.List;
+
+/**
+ * Created by jvr on 29.07.2016.
+ * Basic dynamics of a ball rolling on a flat surface
+ * The major simplification is that the ball does not slide
+ * and, therefore the axis of rotation is perpendicular to the
+ * axial velocity v of the c.m.; and the magnitude of the rotation is
+ * v/r.
+ * There is thus never a rotation component in the z-direction
+ *
+ * The state of the ball is held in one slot of a BallStore;
+ * this class is a thin view onto that slot. The dynamics
+ * themselves are in BallStore. Drawing is left to the app.
+ * BallStore.remove moves the last ball into the freed slot, so a
+ * view of that ball, or of the removed one, goes stale: make the
+ * views of a store anew after removing from it.
+ *
+ * Methods:
+ *
+ * Constructor(table) sets arbitrary initial values and table parameters supplied externally
+ * Constructor(position, radius, color, table) leaves v = 0 and NS = z, E = x
+ * Constructor(store, index) view onto a ball already in a store
+ * setVelocity
+ */
+public class RollingBall
+{
+    public enum Compass{N,S,E,W}
+
+    public static final int RED = 0xFFFF0000;   //Default color, same as android Color.RED
+
+    public final BallStore store;   //Holds the state of this and possibly other balls
+    public final int index;         //Slot of this ball in the store
+
+    //Table must always be passed; provides physical parameters
+    //Other values set to defaults
+    public RollingBall( BilliardTable table )
+    {
+        this( 0, 0, 50, RED, table );
+    }
+
+    // Explicit initial values for center (x,y,z=R) and color
+    // table must be given; provides physical parameters
+    public RollingBall( float rx, float ry, float rR, int nC, BilliardTable table )
+    {
+        store = new BallStore( table, 1 );
+        index = store.add( rx, ry, rR, nC );
+    }
+
+    // View onto ball nIx of an existing store
+    public RollingBall( BallStore store, int nIx )
+    {
+        this.store = store;
+        this.index = nIx;
+    }
+
+    public BilliardTable getTable()
+    {
+        return store.table;
+    }
+
+    public float getR()
+    {
+        return store.radius[index];
+    }
+
+    public float getM()
+    {
+        return store.mass[index];
+    }
+
+    public int getColor()
+    {
+        return store.color[index];
+    }
+
+    // Ball center, device coordinates
+    public void getCenter( D3 out )
+    {
+        out.x = store.cx[index];
+        out.y = store.cy[index];
+        out.z = store.cz[index];
+    }
+
+    // Velocity of the center dp/sec
+    public void getVelocity( D3 out )
+    {
+        out.x = store.vx[index];
+        out.y = store.vy[index];
+        out.z = store.vz[index];
+    }
+
+    // Angular velocity vector
+    public void getAngularVelocity( D3 out )
+    {
+        out.x = store.px[index];
+        out.y = store.py[index];
+        out.z = store.pz[index];
+    }
+
+    // Moving frame North, East, Y fixed in the ball
+    public void getFrame( D3 n, D3 e, D3 y )
+    {
+        store.updateFrame( index );
+        n.x = store.nx[index];  n.y = store.ny[index];  n.z = store.nz[index];
+        e.x = store.ex[index];  e.y = store.ey[index];  e.z = store.ez[index];
+        y.x = store.yx[index];  y.y = store.yy[index];  y.z = store.yz[index];
+    }
+
+    //Impose axial velocity
+    public void setVelocity( D3 dV)
+    {
+        store.setVelocity( index, dV.x, dV.y, dV.z );
+    }
+
+    // Shifts the center without changing anything else
+    // but corrects for rail reflection
+    public void shiftCenter( D3 dp )
+    {
+        store.shiftCenter( index, dp.x, dp.y, dp.z );
+    }
+
+    // Center is corrected for rMS milliseconds elapsed
+    // no acceleration
+    public void doStep( double tMilli )
+    {
+        store.doStep( index, 0, 0, tMilli );
+    }
+
+    // Increments the center coordinates given time increment
+    // and acceleration. Acceleration is m/sec*sec. Time is ms.
+    // Rail reflection is taken into account
+    // Nothing is allocated; scratch state belongs to the store
+    public void doStep( D3 A, double tMilli )
+    {
+        store.doStep( index, A, tMilli );
+    }
+
+    // Given center coordinates check if ball hits the rail
+    // Returns specific rail
+    boolean checkRailReflection( double tSec, D3 A, BallStore.RailsCollision rc )
+    {
+        return store.checkRailReflection( index, tSec, A, rc );
+    }
+
+    /**
+     * Reflection of the ball against rectangular borders
+     * Both position af the center and velocity are corrected
+     *
+     */
+    public void railReflection( )
+    {
+        store.railReflection( index );
+    }
+
+    // Checks whether ball[nBix] would collide (i.e. overlap)
+    // any of the other balls in the list. If so position and
+    // velocity of both is corrected
+    // Balls held in a single BallStore are better served by
+    // BallStore.checkBallOverlap, or a World for all of them
+    public void checkBallOverlap( float dx, float dy, int nBix, List<RollingBall> balls )
+    {
+        RollingBall b1 = balls.get(nBix);
+        BallStore s1 = b1.store;
+        int i1 = b1.index;
+
+        for( int i = 0; i < balls.size(); i++ )
+        {
+            if( i != nBix )
+            {
+                RollingBall b2 = balls.get(i);
+                BallStore s2 = b2.store;
+                int i2 = b2.index;
+
+                float rDx = s2.cx[i2] - s1.cx[i1];
+                float rDy = s2.cy[i2] - s1.cy[i1];
+                float rS  = s2.radius[i2] + s1.radius[i1];
+
+                // if overlap
+                if( rDx*rDx + rDy*rDy < rS*rS )
+                {
+                    BallStore.undoOverlap( s2, i2, s1, i1 );
+                    BallStore.doBallCollision( s2, i2, s1, i1 );
+                }
+            }
+        }
+    }
+
+    //Return value is the smaller positive root, if any;
+    //otherwise returns a negative value, roots returns both
+    //roots
+    public float solveQuadratic( float a, float b, float c, D3 roots )
+    {
+        return BallStore.solveQuadratic( a, b, c, roots );
+    }
+}
@@ -0,0 +1,178 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free hand over of timestamped acceleration samples from one
+ * producer (the sensor callback) to one consumer (the physics loop).
+ * A fixed ring of primitive arrays; the producer only moves tail,
+ * the consumer only moves head, published with ordered (lazySet)
+ * writes. Nothing is allocated and neither side ever waits: when
+ * the ring is full a new sample is dropped and counted.
+ *
+ * The consumer does not pick the latest sample but integrates: the
+ * acceleration is taken to hold from one sample to the next, and
+ * average(t0, t1) gives its mean over a step from t0 to t1, using
+ * every sample that arrived in between; segments(t0, t1) instead cuts
+ * the step at the sample times into pieces of constant acceleration.
+ */
+public class SampleRing
+{
+    private final int mask;
+    private final long[]  t;
+    private final float[] x, y, z;
+    private final AtomicLong head = new AtomicLong();    // next to read
+    private final AtomicLong tail = new AtomicLong();    // next to write
+    private volatile long dropped;
+
+    // Consumer side: the value in force since heldSince
+    private float heldX, heldY, heldZ;
+    private final D3 rest = new D3();
+
+    // capacity is rounded up to a power of 2
+    public SampleRing( int capacity )
+    {
+        int n = Integer.highestOneBit( Math.max( capacity, 2 ) - 1 ) << 1;
+        mask = n - 1;
+        t = new long[n];
+        x = new float[n];
+        y = new float[n];
+        z = new float[n];
+    }
+
+    // Producer: false if the ring was full and the sample dropped
+    public boolean offer( long tNanos, float ax, float ay, float az )
+    {
+        long tl = tail.get();
+        if( tl - head.get() > mask )
+        {
+            dropped++;
+            return false;
+        }
+        int k = (int) tl & mask;
+        t[k] = tNanos;
+        x[k] = ax;
+        y[k] = ay;
+        z[k] = az;
+        tail.lazySet( tl + 1 );
+        return true;
+    }
+
+    public long getDropped()
+    {
+        return dropped;
+    }
+
+    // Consumer: samples waiting
+    public int size()
+    {
+        return (int) (tail.get() - head.get());
+    }
+
+    // Consumer: removes the oldest sample into out, returns its time;
+    // the ring must not be empty
+    public long poll( D3 out )
+    {
+        long hd = head.get();
+        int k = (int) hd & mask;
+        long ts = t[k];
+        out.x = x[k];
+        out.y = y[k];
+        out.z = z[k];
+        head.lazySet( hd + 1 );
+        return ts;
+    }
+
+    // Consumer: mean acceleration from t0 to t1 (ns) into out. Takes
+    // all samples up to t1; the last one holds until the next arrives.
+    // Samples older than t0 only set the value held at t0.
+    public void average( long t0, long t1, D3 out )
+    {
+        double sx = 0, sy = 0, sz = 0;
+        long tc = t0;
+        long hd = head.get();
+        long tl = tail.get();
+
+        while( hd < tl )
+        {
+            int k = (int) hd & mask;
+            long ts = t[k];
+            if( ts > t1 ) break;
+            if( ts > tc )
+            {
+                double w = ts - tc;
+                sx += heldX*w;
+                sy += heldY*w;
+                sz += heldZ*w;
+                tc = ts;
+            }
+            heldX = x[k];
+            heldY = y[k];
+            heldZ = z[k];
+            hd++;
+        }
+        head.lazySet( hd );
+
+        if( t1 > t0 )
+        {
+            double w = t1 - tc;
+            double dt = t1 - t0;
+            out.x = (float) ((sx + heldX*w)/dt);
+            out.y = (float) ((sy + heldY*w)/dt);
+            out.z = (float) ((sz + heldZ*w)/dt);
+        }
+        else
+        {
+            out.x = heldX;
+            out.y = heldY;
+            out.z = heldZ;
+        }
+    }
+
+    // Consumer: cuts the step from t0 to t1 (ns) at the times of the
+    // samples that arrived in it; segment k lasts dt[k] ns with the
+    // acceleration ax[k], ay[k], az[k]. At most dt.length segments;
+    // if more samples are due the last segment gets their mean.
+    // Returns the number of segments.
+    public int segments( long t0, long t1, long[] dt, float[] ax, float[] ay, float[] az )
+    {
+        int n = 0;
+        int max = dt.length;
+        long tc = t0;
+        long hd = head.get();
+        long tl = tail.get();
+
+        while( (hd < tl) && (n < max - 1) )
+        {
+            int k = (int) hd & mask;
+            long ts = t[k];
+            if( ts > t1 ) break;
+            if( ts > tc )
+            {
+                dt[n] = ts - tc;
+                ax[n] = heldX;
+                ay[n] = heldY;
+                az[n] = heldZ;
+                n++;
+                tc = ts;
+            }
+            heldX = x[k];
+            heldY = y[k];
+            heldZ = z[k];
+            hd++;
+        }
+        head.lazySet( hd );
+
+        // The rest of the step
+        if( t1 > tc )
+        {
+            average( tc, t1, rest );
+            dt[n] = t1 - tc;
+            ax[n] = rest.x;
+            ay[n] = rest.y;
+            az[n] = rest.z;
+            n++;
+        }
+        return n;
+    }
+}
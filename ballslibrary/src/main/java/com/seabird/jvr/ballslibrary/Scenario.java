@@ -0,0 +1,148 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Description of a headless simulation run, read from a properties
+ * file; every key is optional. Values are in the units of the rest
+ * of the library: dp for lengths, dp/sec for speeds, m/sec*sec for
+ * the acceleration, ms for the step.
+ *
+ * width, height    table size                      1080, 1920
+ * balls            number of balls                 200
+ * radius           smallest ball radius            20
+ * radiusSpread     radii are radius..radius+spread 0
+ * speed            largest initial speed           500
+ * ax, ay           acceleration                    0, 9.81
+ * seconds          simulated time                  10
+ * stepMilli        time step                       5
+ * engine           grid, sap, event or parallel    grid
+ * batch            BatchIntegrator for grid, sap   true
+ * threads          pool size for parallel, 0 = all cores
+ * seed             random seed                     1
+ * friction         table friction (not for event)  false
+ * sleep            still balls sleep (no event)    false
+ * iterations       ContactSolver passes for grid, sap;
+ *                  0 = pairwise resolveOverlaps    0
+ * ccd              SweptCollider for grid, sap     false
+ * precision        float or double (not for event) float
+ * restitution      rail restitution                0.75
+ *
+ * Balls start on a square lattice so none overlap; a scenario with
+ * more balls than fit on the table is rejected.
+ */
+public class Scenario
+{
+    public int    width = 1080, height = 1920;
+    public int    balls = 200;
+    public float  radius = 20, radiusSpread = 0;
+    public float  speed = 500;
+    public float  ax = 0, ay = 9.81f;
+    public double seconds = 10;
+    public double stepMilli = 5;
+    public String engine = "grid";
+    public boolean batch = true;
+    public int    threads = 0;
+    public long   seed = 1;
+    public boolean friction = false;
+    public boolean sleep = false;
+    public int    iterations = 0;
+    public boolean ccd = false;
+    public String precision = "float";
+    public float  restitution = 0.75f;
+
+    public static Scenario load( String fileName ) throws IOException
+    {
+        Reader in = new FileReader( fileName );
+        try
+        {
+            Properties p = new Properties();
+            p.load( in );
+            Scenario s = new Scenario();
+            s.set( p );
+            return s;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    public void set( Properties p )
+    {
+        for( String key : p.stringPropertyNames() )
+        {
+            set( key, p.getProperty( key ) );
+        }
+    }
+
+    // One key = value; unknown keys are an error rather than silently ignored
+    public void set( String key, String value )
+    {
+        String v = value.trim();
+        if( key.equals( "width" ) )              width = Integer.parseInt( v );
+        else if( key.equals( "height" ) )        height = Integer.parseInt( v );
+        else if( key.equals( "balls" ) )         balls = Integer.parseInt( v );
+        else if( key.equals( "radius" ) )        radius = Float.parseFloat( v );
+        else if( key.equals( "radiusSpread" ) )  radiusSpread = Float.parseFloat( v );
+        else if( key.equals( "speed" ) )         speed = Float.parseFloat( v );
+        else if( key.equals( "ax" ) )            ax = Float.parseFloat( v );
+        else if( key.equals( "ay" ) )            ay = Float.parseFloat( v );
+        else if( key.equals( "seconds" ) )       seconds = Double.parseDouble( v );
+        else if( key.equals( "stepMilli" ) )     stepMilli = Double.parseDouble( v );
+        else if( key.equals( "engine" ) )        engine = v;
+        else if( key.equals( "batch" ) )         batch = Boolean.parseBoolean( v );
+        else if( key.equals( "threads" ) )       threads = Integer.parseInt( v );
+        else if( key.equals( "seed" ) )          seed = Long.parseLong( v );
+        else if( key.equals( "friction" ) )      friction = Boolean.parseBoolean( v );
+        else if( key.equals( "sleep" ) )         sleep = Boolean.parseBoolean( v );
+        else if( key.equals( "iterations" ) )    iterations = Integer.parseInt( v );
+        else if( key.equals( "ccd" ) )           ccd = Boolean.parseBoolean( v );
+        else if( key.equals( "precision" ) )     precision = v;
+        else if( key.equals( "restitution" ) )   restitution = Float.parseFloat( v );
+        else throw new IllegalArgumentException( "Unknown scenario key: " + key );
+    }
+
+    // Table and balls as described
+    public BallStore build()
+    {
+        BilliardTable table = new BilliardTable( 0, width, 0, height );
+        table.railRestitution = restitution;
+        BallStore store = new BallStore( table, balls );
+        store.friction = friction;
+        store.sleep = sleep;
+        if( !precision.equals( "float" ) && !precision.equals( "double" ) )
+        {
+            throw new IllegalArgumentException( "Unknown precision: " + precision );
+        }
+        store.doublePrecision = precision.equals( "double" );
+        Random rnd = new Random( seed );
+
+        float pitch = 2*(radius + radiusSpread) + 1;
+        int cols = (int) ((width - 1)/pitch);
+        int rows = (int) ((height - 1)/pitch);
+        if( (long) cols*rows < balls )
+        {
+            throw new IllegalArgumentException( balls + " balls do not fit on a "
+                                                + width + "x" + height + " table" );
+        }
+
+        for( int i = 0; i < balls; i++ )
+        {
+            float r = radius + radiusSpread*rnd.nextFloat();
+            float x = 0.5f + pitch*(i % cols + 0.5f);
+            float y = 0.5f + pitch*(i / cols + 0.5f);
+            int nC = 0xFF000000 | rnd.nextInt( 0x1000000 );
+            int k = store.add( x, y, r, nC );
+
+            double phi = 2*Math.PI*rnd.nextDouble();
+            float v = speed*rnd.nextFloat();
+            store.setVelocity( k, v*(float) Math.cos( phi ), v*(float) Math.sin( phi ), 0 );
+        }
+        return store;
+    }
+}
@@ -0,0 +1,312 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the physics of a World on its own thread with a fixed time
+ * step, independent of the frame rate. The clock is System.nanoTime().
+ * Whole steps are done until the simulation has caught up with the
+ * clock; after each batch the last two states go to the renderer
+ * through a SnapshotExchange. If the thread falls further behind
+ * than MAX_CATCHUP steps the backlog is dropped, so the physics
+ * stays stable (and slows down) rather than taking huge steps.
+ *
+ * The acceleration comes lock-free from a SampleRing filled by the
+ * sensor: each step uses the mean over its own time span of all
+ * samples, not just the latest one. Samples must carry
+ * System.nanoTime() stamps. With sub-stepping on, a step is instead
+ * integrated piecewise, one piece per sample interval (up to
+ * MAX_SEGMENTS), each with its own constant acceleration and its
+ * own rail rebounds; that keeps the accuracy at longer steps.
+ *
+ * With an InputRecorder set, the table, the balls and then every
+ * step (dt and acceleration) are logged, so ReplayDriver can redo
+ * the run exactly. A new recording wakes all balls first.
+ *
+ * Sleeping balls (BallStore.sleep) are woken whenever the clock is
+ * reset, i.e. after a pause or when the table size changed.
+ * Only this thread touches the table once it runs: a new size (from
+ * the UI thread when the surface changes) is handed over with
+ * setTableSize and applied before the next step.
+ */
+public class SimulationLoop extends Thread
+{
+    private static final int MAX_CATCHUP = 20;
+    private static final long NO_SIZE = -1;
+    public static final int MAX_SEGMENTS = 4;
+
+    private final World world;
+    private final BallStore store;
+    private final SampleRing samples;
+    private final D3 accel = new D3();
+    private final SnapshotExchange exchange = new SnapshotExchange();
+    private final FrameMetrics metrics = new FrameMetrics();
+    private final double stepMilli;
+    private final long stepNanos;
+
+    private volatile boolean running = false;
+    private volatile boolean resetClock = true;
+    private volatile boolean subStepping = false;
+    private volatile InputRecorder recorder;
+    private volatile long tableSize = NO_SIZE;  // width in the high, height in the low half
+    private long appliedSize = NO_SIZE;
+    private InputRecorder recording;        // the recorder the log was started for
+    private int recXMin, recXMax, recYMin, recYMax;
+    private float ax, ay, az;
+    private final long[]  segNanos = new long[MAX_SEGMENTS];
+    private final float[] segX = new float[MAX_SEGMENTS];
+    private final float[] segY = new float[MAX_SEGMENTS];
+    private final float[] segZ = new float[MAX_SEGMENTS];
+    private float[] prevX = new float[0], prevY = new float[0];
+
+    public SimulationLoop( World world, SampleRing samples, double stepMilli )
+    {
+        super( "SimulationLoop" );
+        this.world = world;
+        this.store = world.getStore();
+        this.samples = samples;
+        this.stepMilli = stepMilli;
+        this.stepNanos = (long) (stepMilli*1000000.);
+    }
+
+    // The balls; step them only from this thread once it runs
+    public World getWorld()
+    {
+        return world;
+    }
+
+    public SnapshotExchange getExchange()
+    {
+        return exchange;
+    }
+
+    // Timings of this loop; the renderer adds its own
+    public FrameMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    public long getStepNanos()
+    {
+        return stepNanos;
+    }
+
+    //Set and reset running flag
+    public void setRunning( boolean b )
+    {
+        running = b;
+    }
+
+    // Starts (or with null stops) logging the steps
+    public void setRecorder( InputRecorder r )
+    {
+        recorder = r;
+    }
+
+    // Integrate each step piecewise per sensor sample
+    public void setSubStepping( boolean b )
+    {
+        subStepping = b;
+    }
+
+    // Forget the time elapsed so far, e.g. after a pause or resize
+    public void resetClock()
+    {
+        resetClock = true;
+    }
+
+    // The table becomes 0..width x 0..height before the next step; safe
+    // to call from any thread, the last size set wins
+    public void setTableSize( int width, int height )
+    {
+        tableSize = ((long) width << 32) | (height & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public void run()
+    {
+        long simTime = 0;
+
+        while( running )
+        {
+            simTime = advance( simTime, System.nanoTime() );
+
+            long wait = simTime + stepNanos - System.nanoTime();
+            if( wait > 0 )
+            {
+                LockSupport.parkNanos( wait );
+            }
+        }
+    }
+
+    // One pass of the loop at time now: a new table size or clock reset
+    // first, then the whole steps due since simTime, published together;
+    // returns the new simulation time
+    long advance( long simTime, long now )
+    {
+        long size = tableSize;
+        if( size != appliedSize )
+        {
+            appliedSize = size;
+            BilliardTable table = store.table;
+            table.xMin = 0;
+            table.xMax = (int) (size >>> 32);
+            table.yMin = 0;
+            table.yMax = (int) size;
+            resetClock = true;
+        }
+        if( resetClock )
+        {
+            resetClock = false;
+            simTime = now;
+            // The table may have changed under the sleepers
+            store.wakeAll();
+            publish( now, now );
+        }
+
+        int steps = 0;
+        while( (simTime + stepNanos <= now) && (steps < MAX_CATCHUP) )
+        {
+            int nSeg = sampleAcceleration( simTime, simTime + stepNanos );
+            InputRecorder rec = startRecording();
+            rememberPositions();
+            long t0 = System.nanoTime();
+            long tSeg = simTime;
+            for( int k = 0; k < nSeg; k++ )
+            {
+                double dtMilli = (segNanos[k] == stepNanos) ? stepMilli : segNanos[k]/1e6;
+                world.integrate( segX[k], segY[k], dtMilli );
+                if( rec != null )
+                {
+                    if( k < nSeg - 1 ) rec.subStep( tSeg, dtMilli, segX[k], segY[k] );
+                    else               rec.step( tSeg, dtMilli, segX[k], segY[k] );
+                }
+                tSeg += segNanos[k];
+            }
+            long t1 = System.nanoTime();
+            world.resolveContacts();
+            metrics.record( FrameMetrics.PHYSICS, t1 - t0 );
+            metrics.record( FrameMetrics.COLLISIONS, System.nanoTime() - t1 );
+            metrics.countStep( world.getStepContext() );
+            metrics.countBalls( store );
+            simTime += stepNanos;
+            steps++;
+        }
+        if( steps > 0 )
+        {
+            publish( simTime - stepNanos, simTime );
+        }
+        if( steps == MAX_CATCHUP )
+        {
+            metrics.countDropped( (now - simTime)/stepNanos );
+            simTime = now;
+        }
+        return simTime;
+    }
+
+    // Acceleration(s) for the step from t0 to t1 into the segment
+    // arrays: the mean over the step, or one piece per sample
+    private int sampleAcceleration( long t0, long t1 )
+    {
+        int n;
+        if( subStepping )
+        {
+            n = samples.segments( t0, t1, segNanos, segX, segY, segZ );
+        }
+        else
+        {
+            samples.average( t0, t1, accel );
+            segNanos[0] = t1 - t0;
+            segX[0] = accel.x;
+            segY[0] = accel.y;
+            segZ[0] = accel.z;
+            n = 1;
+        }
+        ax = segX[n - 1];
+        ay = segY[n - 1];
+        az = segZ[n - 1];
+        return n;
+    }
+
+    // The recorder to log this step to, if any; on a new recorder
+    // first the table and balls, later the table whenever it changes
+    private InputRecorder startRecording()
+    {
+        InputRecorder rec = recorder;
+        BilliardTable table = store.table;
+        if( rec == null )
+        {
+            recording = null;
+            return null;
+        }
+        if( (rec != recording) || (table.xMin != recXMin) || (table.xMax != recXMax)
+            || (table.yMin != recYMin) || (table.yMax != recYMax) )
+        {
+            recXMin = table.xMin;
+            recXMax = table.xMax;
+            recYMin = table.yMin;
+            recYMax = table.yMax;
+            rec.table( recXMin, recXMax, recYMin, recYMax );
+            if( rec != recording )
+            {
+                // The log has no sleep state, kept contact impulses nor
+                // doubles; start it with all awake, the solver cold and
+                // the doubles as their floats
+                store.wakeAll();
+                store.roundToFloat();
+                if( world.getSolver() != null )
+                {
+                    world.getSolver().reset();
+                }
+                rec.friction( store );
+                rec.sleep( store );
+                rec.contacts( world );
+                rec.precision( store );
+                rec.balls( store );
+                recording = rec;
+            }
+        }
+        return rec;
+    }
+
+    // State before the step, the starting point of the interpolation
+    private void rememberPositions()
+    {
+        int n = store.size();
+        if( prevX.length < n )
+        {
+            prevX = new float[store.capacity()];
+            prevY = new float[store.capacity()];
+        }
+        System.arraycopy( store.cx, 0, prevX, 0, n );
+        System.arraycopy( store.cy, 0, prevY, 0, n );
+    }
+
+    private void publish( long t0, long t1 )
+    {
+        int n = store.size();
+        StateSnapshot s = exchange.back();
+        s.ensureCapacity( n );
+        s.count = n;
+        s.t0 = t0;
+        s.t1 = t1;
+        s.ax = ax;
+        s.ay = ay;
+        s.az = az;
+
+        boolean moved = (t1 > t0) && (prevX.length >= n);
+        System.arraycopy( moved ? prevX : store.cx, 0, s.x0, 0, n );
+        System.arraycopy( moved ? prevY : store.cy, 0, s.y0, 0, n );
+        System.arraycopy( store.cx, 0, s.x1, 0, n );
+        System.arraycopy( store.cy, 0, s.y1, 0, n );
+        System.arraycopy( store.radius, 0, s.radius, 0, n );
+        System.arraycopy( store.color, 0, s.color, 0, n );
+        for( int i = 0; i < n; i++ )
+        {
+            store.updateFrame( i );
+            s.mx[i] = store.radius[i]*store.nx[i];
+            s.my[i] = store.radius[i]*store.ny[i];
+        }
+        exchange.publish();
+    }
+}
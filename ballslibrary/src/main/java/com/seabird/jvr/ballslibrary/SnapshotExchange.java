@@ -0,0 +1,45 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free hand over of StateSnapshots from one writer thread
+ * to one reader thread (triple buffering).
+ * The writer fills back() and publishes it; the reader takes the
+ * most recently published snapshot with latest(). Writer and reader
+ * each own one buffer, the third sits in between, so neither ever
+ * waits for the other nor sees a buffer that is being written.
+ */
+public class SnapshotExchange
+{
+    private static final int FRESH = 4;     // set when the middle buffer is new
+    private static final int INDEX = 3;
+
+    private final StateSnapshot[] buffers =
+            { new StateSnapshot(), new StateSnapshot(), new StateSnapshot() };
+    private final AtomicInteger middle = new AtomicInteger( 1 );
+    private int back  = 0;     // writer's
+    private int front = 2;     // reader's
+
+    // Writer: the snapshot to fill next
+    public StateSnapshot back()
+    {
+        return buffers[back];
+    }
+
+    // Writer: hands the filled back() to the reader
+    public void publish()
+    {
+        back = middle.getAndSet( back | FRESH ) & INDEX;
+    }
+
+    // Reader: the newest published snapshot; stays valid until the next call
+    public StateSnapshot latest()
+    {
+        if( (middle.get() & FRESH) != 0 )
+        {
+            front = middle.getAndSet( front ) & INDEX;
+        }
+        return buffers[front];
+    }
+}
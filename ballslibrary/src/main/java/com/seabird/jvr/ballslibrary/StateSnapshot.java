@@ -0,0 +1,42 @@
+package com.seabird.jvr.ballslibrary;
+
+/**
+ * What the renderer needs of the balls, for the last two physics
+ * states, so drawing can interpolate between them.
+ * Filled by the simulation thread, read by the drawing thread;
+ * instances are exchanged through a SnapshotExchange and reused.
+ *
+ * x0,y0 at time t0 and x1,y1 at t1 are the ball centers,
+ * mx,my the orientation marker relative to the center (R*N)
+ */
+public class StateSnapshot
+{
+    public int     count;
+    public long    t0, t1;          // System.nanoTime() of the two states
+    public float   ax, ay, az;      // acceleration used for the step
+    public float[] x0 = new float[0], y0 = new float[0];
+    public float[] x1 = new float[0], y1 = new float[0];
+    public float[] mx = new float[0], my = new float[0];
+    public float[] radius = new float[0];
+    public int[]   color  = new int[0];
+
+    public void ensureCapacity( int n )
+    {
+        if( radius.length < n )
+        {
+            x0 = new float[n];  y0 = new float[n];
+            x1 = new float[n];  y1 = new float[n];
+            mx = new float[n];  my = new float[n];
+            radius = new float[n];
+            color  = new int[n];
+        }
+    }
+
+    // Fraction of the way from state 0 to state 1 at time t, 0..1
+    public float alpha( long t )
+    {
+        if( t1 <= t0 ) return 1;
+        float a = (float) (t - t0)/(float) (t1 - t0);
+        return Math.max( 0, Math.min( a, 1 ) );
+    }
+}
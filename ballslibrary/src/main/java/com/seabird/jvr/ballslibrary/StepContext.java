@@ -0,0 +1,30 @@
+package com.seabird.jvr.ballslibrary;
+
+/**
+ * Scratch state reused by BallStore.doStep so that a step
+ * allocates nothing: rail collision flags and quadratic roots
+ * (float and double).
+ * Also counts rail hits and steps that ran into the loop limit,
+ * for FrameMetrics.
+ * A BallStore owns one for its own use; anyone stepping from
+ * several threads needs one context per thread.
+ */
+public class StepContext
+{
+    final BallStore.RailsCollision coll = new BallStore.RailsCollision();
+    final D3 roots = new D3(-1,-1,-1);
+    final D3d rootsD = new D3d(-1,-1,-1);
+
+    long railHits;          // rail rebounds handled
+    long loopLimitHits;     // rebound loops stopped by the limit
+
+    public long getRailHits()
+    {
+        return railHits;
+    }
+
+    public long getLoopLimitHits()
+    {
+        return loopLimitHits;
+    }
+}
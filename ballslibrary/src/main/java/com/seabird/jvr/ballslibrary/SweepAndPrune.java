@@ -0,0 +1,96 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.util.Arrays;
+
+/**
+ * Sort-and-sweep broad phase over the x-intervals [C.x - R, C.x + R].
+ * Balls are kept sorted by the left end of their interval; a sweep
+ * along that order reports every pair whose x-intervals overlap and
+ * whose y-intervals overlap as well, unless both balls sleep.
+ *
+ * The order is kept from one step to the next. Balls move little
+ * per step, so the order is almost sorted and an insertion sort
+ * restores it in close to linear time (temporal coherence).
+ * Unlike the grid there is no cell size, so widely varying radii
+ * do not hurt. But the sweep visits every pair overlapping in x, on a
+ * square table about n*sqrt(n) of them at a given density; from some
+ * thousand balls on the grid is faster.
+ */
+public class SweepAndPrune implements BroadPhase
+{
+    private int[]   order = new int[0];     // ball indices sorted by xLo
+    private float[] xLo   = new float[0];   // left interval end per ball
+    private int     nOrder = 0;             // number of balls in order
+
+    public void findPairs( BallStore store, IntPairBuffer pairs )
+    {
+        findPairs( store, 0, pairs );
+    }
+
+    // The intervals of the sweep are grown by pad to the right
+    public void findPairs( BallStore store, float pad, IntPairBuffer pairs )
+    {
+        int n = store.size();
+        pairs.clear();
+
+        if( order.length < n )
+        {
+            int cap = n + (n >> 1);
+            order = Arrays.copyOf( order, cap );
+            xLo   = new float[cap];
+        }
+        if( nOrder != n )
+        {
+            // Balls were added or removed; start from index order
+            for( int i = 0; i < n; i++ )
+            {
+                order[i] = i;
+            }
+            nOrder = n;
+        }
+
+        for( int i = 0; i < n; i++ )
+        {
+            xLo[i] = store.cx[i] - store.radius[i];
+        }
+
+        // Insertion sort; nearly sorted from the previous step
+        for( int k = 1; k < n; k++ )
+        {
+            int b = order[k];
+            float key = xLo[b];
+            int m = k - 1;
+            while( (m >= 0) && (xLo[order[m]] > key) )
+            {
+                order[m + 1] = order[m];
+                m--;
+            }
+            order[m + 1] = b;
+        }
+
+        // Sweep
+        for( int k = 0; k < n; k++ )
+        {
+            int i = order[k];
+            float xHi = store.cx[i] + store.radius[i] + pad;
+            float yI  = store.cy[i];
+            float rI  = store.radius[i];
+            boolean sleeps = store.asleep[i];
+
+            for( int m = k + 1; m < n; m++ )
+            {
+                int j = order[m];
+                if( xLo[j] > xHi )
+                {
+                    break;
+                }
+                if( (Math.abs( store.cy[j] - yI ) <= store.radius[j] + rI + pad)
+                    && !(sleeps & store.asleep[j]) )
+                {
+                    if( i < j ) pairs.add( i, j );
+                    else        pairs.add( j, i );
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.util.Arrays;
+
+/**
+ * Continuous collision detection between moving balls, so that a
+ * fast ball cannot pass through another one within a long step.
+ * The overlap check after a step only sees where the balls ended up;
+ * this looks at the way they went.
+ *
+ * begin()  remembers where every ball starts the step
+ * sweep()  after the integration: puts back every pair that touched
+ *          on the way to where the pair first touched
+ *
+ * The way of a ball counts as the straight line from its start to
+ * its end, walked at constant speed; rail rebounds inside the step
+ * are not followed, the line still stays on the (convex) table. Two
+ * balls touch at the smaller positive root s of
+ *   |P + U*s|^2 = (Ri + Rj)^2,   0 <= s < 1
+ * P the relative start, U the relative displacement (solveQuadratic).
+ * Each ball is put back to the earliest s of all its pairs, TOUCH
+ * inside the contact, so that the contact pass that follows (pairwise
+ * or ContactSolver) does the collision at once. The rest of the step
+ * is lost for those balls; their velocity is that of the step's end.
+ * A ball put back may now be caught by one that followed it, so the
+ * pairs of balls put back are swept again, up to MAX_PASSES times.
+ *
+ * Pairs touching already at the start are left to the contact pass,
+ * and so are pairs whose relative displacement stays below minSweep
+ * of their radii sum: the overlap check alone pushes them apart the
+ * right way. So only the balls that went further than minSweep of the
+ * smallest radius in the step take part, and a step without any costs
+ * just a scan over the balls. Their candidate pairs come from a sort
+ * and sweep over the boxes around the ways (as SweepAndPrune over the
+ * centers). Does not allocate once the arrays have reached the size
+ * of the store.
+ */
+public class SweptCollider
+{
+    static final float TOUCH = 0.01f;       // dp, pairs are put back this far inside contact
+    static final int MAX_PASSES = 4;
+
+    public float minSweep = 0.5f;           // of Ri + Rj, slower pairs are not swept
+
+    private final BallStore store;
+    private final IntPairBuffer pairs = new IntPairBuffer();
+    private final D3 roots = new D3();
+
+    private float[] x0 = new float[0], y0 = new float[0];  // start of the step
+    private float[] s  = new float[0];      // earliest touch of each ball this pass
+    private boolean[] moved = new boolean[0];   // put back by the last pass
+    private boolean[] fast = new boolean[0];    // went further than minSweep*rMin
+    private int[]   order = new int[0];     // ball indices sorted by xLo
+    private float[] xLo   = new float[0];
+    private int nOrder = 0;
+    private int nBegun = -1;                // balls at begin(), -1 none since the last sweep
+    private int hits;
+
+    public SweptCollider( BallStore store )
+    {
+        this.store = store;
+    }
+
+    // Pairs put back by the last sweep (in its first pass)
+    public int getHitCount()
+    {
+        return hits;
+    }
+
+    public void begin()
+    {
+        BallStore b = store;
+        BilliardTable t = b.table;
+        int n = b.size();
+        if( x0.length < n )
+        {
+            int cap = n + (n >> 1);
+            x0 = new float[cap];
+            y0 = new float[cap];
+            s = new float[cap];
+            moved = new boolean[cap];
+            fast = new boolean[cap];
+            order = Arrays.copyOf( order, cap );
+            xLo = new float[cap];
+        }
+        // The contact pass may have pushed a ball over a rail; its way
+        // starts on the table, as the step will put it there
+        for( int i = 0; i < n; i++ )
+        {
+            float R = b.radius[i];
+            x0[i] = Math.max( t.xMin + R, Math.min( b.cx[i], t.xMax - R ) );
+            y0[i] = Math.max( t.yMin + R, Math.min( b.cy[i], t.yMax - R ) );
+        }
+        nBegun = n;
+    }
+
+    // Forget begin(), e.g. because balls were removed since
+    public void reset()
+    {
+        nBegun = -1;
+    }
+
+    public void sweep()
+    {
+        BallStore b = store;
+        int n = b.size();
+        hits = 0;
+        if( n != nBegun )
+        {
+            nBegun = -1;
+            return;
+        }
+        nBegun = -1;
+        if( b.getSleepingCount() == n )
+        {
+            return;
+        }
+        // A swept pair has |U| > minSweep*(Ri + Rj), so one of its balls
+        // went further than minSweep*rMin: it is fast
+        float rMin = Float.MAX_VALUE;
+        float rMax = 0;
+        for( int i = 0; i < n; i++ )
+        {
+            rMin = Math.min( rMin, b.radius[i] );
+            rMax = Math.max( rMax, b.radius[i] );
+        }
+        float dFast = minSweep*rMin;
+        int nFast = 0;
+        for( int i = 0; i < n; i++ )
+        {
+            float dx = b.cx[i] - x0[i];
+            float dy = b.cy[i] - y0[i];
+            fast[i] = dx*dx + dy*dy > dFast*dFast;
+            if( fast[i] ) nFast++;
+        }
+        if( nFast == 0 )
+        {
+            return;
+        }
+
+        findPairs( n, 2*(rMax + dFast) );
+        for( int i = 0; i < n; i++ )
+        {
+            moved[i] = true;
+        }
+        for( int pass = 0; pass < MAX_PASSES; pass++ )
+        {
+            Arrays.fill( s, 0, n, 1 );
+            int found = 0;
+            for( int k = 0; k < pairs.size(); k++ )
+            {
+                int i = pairs.first( k );
+                int j = pairs.second( k );
+                if( (moved[i] || moved[j]) && touch( i, j ) )
+                {
+                    found++;
+                }
+            }
+            if( pass == 0 )
+            {
+                hits = found;
+            }
+            if( found == 0 )
+            {
+                break;
+            }
+            for( int i = 0; i < n; i++ )
+            {
+                moved[i] = s[i] < 1;
+                if( moved[i] )
+                {
+                    b.cx[i] = x0[i] + (b.cx[i] - x0[i])*s[i];
+                    b.cy[i] = y0[i] + (b.cy[i] - y0[i])*s[i];
+                }
+            }
+        }
+    }
+
+    // If i and j touch on the way, s of both is lowered to that moment
+    private boolean touch( int i, int j )
+    {
+        BallStore b = store;
+        float px = x0[j] - x0[i];
+        float py = y0[j] - y0[i];
+        float ux = (b.cx[j] - x0[j]) - (b.cx[i] - x0[i]);
+        float uy = (b.cy[j] - y0[j]) - (b.cy[i] - y0[i]);
+        float S = b.radius[i] + b.radius[j] - TOUCH;
+        float c = px*px + py*py - S*S;
+        float h = px*ux + py*uy;
+        float a = ux*ux + uy*uy;
+
+        // touching at the start, not approaching, or too slow to matter
+        if( (c <= 0) || (h >= 0) || (a <= minSweep*minSweep*S*S) )
+        {
+            return false;
+        }
+        float t = BallStore.solveQuadratic( a, 2*h, c, roots );
+        if( (t < 0) || (t >= 1) )
+        {
+            return false;
+        }
+        s[i] = Math.min( s[i], t );
+        s[j] = Math.min( s[j], t );
+        return true;
+    }
+
+    // Every pair of a fast ball and another one whose boxes around the
+    // ways overlap. Only fast balls scan: forward along the order as
+    // SweepAndPrune does, and back for the slow balls starting earlier,
+    // whose boxes are at most wSlow wide
+    private void findPairs( int n, float wSlow )
+    {
+        BallStore b = store;
+        pairs.clear();
+        if( nOrder != n )
+        {
+            for( int i = 0; i < n; i++ )
+            {
+                order[i] = i;
+            }
+            nOrder = n;
+        }
+        for( int i = 0; i < n; i++ )
+        {
+            xLo[i] = Math.min( x0[i], b.cx[i] ) - b.radius[i];
+        }
+
+        // Insertion sort; nearly sorted from the previous step
+        for( int k = 1; k < n; k++ )
+        {
+            int i = order[k];
+            float key = xLo[i];
+            int m = k - 1;
+            while( (m >= 0) && (xLo[order[m]] > key) )
+            {
+                order[m + 1] = order[m];
+                m--;
+            }
+            order[m + 1] = i;
+        }
+
+        for( int k = 0; k < n; k++ )
+        {
+            int i = order[k];
+            if( !fast[i] )
+            {
+                continue;
+            }
+            float rI = b.radius[i];
+            float xHi = Math.max( x0[i], b.cx[i] ) + rI;
+            float yLo = Math.min( y0[i], b.cy[i] ) - rI;
+            float yHi = Math.max( y0[i], b.cy[i] ) + rI;
+
+            for( int m = k + 1; m < n; m++ )
+            {
+                int j = order[m];
+                if( xLo[j] > xHi )
+                {
+                    break;
+                }
+                if( overlapsY( j, yLo, yHi ) )
+                {
+                    pairs.add( i, j );
+                }
+            }
+            for( int m = k - 1; m >= 0; m-- )
+            {
+                int j = order[m];
+                if( xLo[j] < xLo[i] - wSlow )
+                {
+                    break;
+                }
+                if( !fast[j] && (Math.max( x0[j], b.cx[j] ) + b.radius[j] >= xLo[i])
+                    && overlapsY( j, yLo, yHi ) )
+                {
+                    pairs.add( j, i );
+                }
+            }
+        }
+    }
+
+    private boolean overlapsY( int j, float yLo, float yHi )
+    {
+        BallStore b = store;
+        float rJ = b.radius[j];
+        return (Math.min( y0[j], b.cy[j] ) - rJ <= yHi)
+            && (Math.max( y0[j], b.cy[j] ) + rJ >= yLo);
+    }
+}
@@ -0,0 +1,193 @@
+package com.seabird.jvr.ballslibrary;
+
+/**
+ * Uniform grid broad phase for the ball overlap check.
+ * The table is cut into square cells at least one ball diameter
+ * wide, so two overlapping balls always sit in the same or in
+ * neighbouring cells. Each ball is then tested only against the
+ * balls of its own and the 8 surrounding cells instead of all.
+ *
+ * The grid is rebuilt every step by a counting sort over the
+ * cell numbers; arrays are kept and only grown, so a rebuild
+ * does not allocate once the ball count is stable.
+ *
+ * build(store)             bucket all balls of the store
+ * findPairs(store,pairs)   build, then report every candidate pair once
+ * findPairs(store,pad,pairs)  the same for balls up to pad apart;
+ *                          the cells are pad wider
+ */
+public class UniformGrid implements BroadPhase
+{
+    // Keep the number of cells in proportion to the number of balls,
+    // a huge table with few balls would otherwise mostly scan empty cells
+    private static final int CELLS_PER_BALL = 4;
+    private static final int MIN_CELLS = 64;
+
+    private float cellSize;
+    private float x0, y0;
+    private int cols, rows;
+
+    private int[] cellStart = new int[1];   // first slot of each cell in cellBalls
+    private int[] cellBalls = new int[0];   // ball indices sorted by cell
+    private int[] ballCell  = new int[0];   // cell of each ball
+
+    public int getCols()
+    {
+        return cols;
+    }
+
+    public int getRows()
+    {
+        return rows;
+    }
+
+    public float getCellSize()
+    {
+        return cellSize;
+    }
+
+    // Buckets all balls of the store by cell
+    public void build( BallStore store )
+    {
+        build( store, 0 );
+    }
+
+    // Buckets all balls by cells wide enough for pairs up to pad apart
+    public void build( BallStore store, float pad )
+    {
+        int n = store.size();
+        BilliardTable table = store.table;
+
+        float rMax = 0;
+        for( int i = 0; i < n; i++ )
+        {
+            rMax = Math.max( rMax, store.radius[i] );
+        }
+
+        float w = Math.max( table.xMax - table.xMin, 1 );
+        float h = Math.max( table.yMax - table.yMin, 1 );
+        cellSize = Math.max( 2*rMax + pad, 1 );
+        int maxCells = Math.max( CELLS_PER_BALL*n, MIN_CELLS );
+        if( (w/cellSize) * (h/cellSize) > maxCells )
+        {
+            cellSize = (float) Math.sqrt( w*h/maxCells );
+        }
+        x0 = table.xMin;
+        y0 = table.yMin;
+        cols = (int) (w/cellSize) + 1;
+        rows = (int) (h/cellSize) + 1;
+
+        int cells = cols*rows;
+        if( cellStart.length < cells + 1 )
+        {
+            cellStart = new int[cells + 1];
+        }
+        if( cellBalls.length < n )
+        {
+            cellBalls = new int[n + (n >> 1)];
+            ballCell  = new int[cellBalls.length];
+        }
+
+        // Counting sort: count, prefix sum, scatter
+        for( int c = 0; c <= cells; c++ )
+        {
+            cellStart[c] = 0;
+        }
+        for( int i = 0; i < n; i++ )
+        {
+            int c = cellOf( store.cx[i], store.cy[i] );
+            ballCell[i] = c;
+            cellStart[c + 1]++;
+        }
+        for( int c = 0; c < cells; c++ )
+        {
+            cellStart[c + 1] += cellStart[c];
+        }
+        for( int i = 0; i < n; i++ )
+        {
+            int c = ballCell[i];
+            // cellStart[c] is used as fill pointer and restored below
+            cellBalls[cellStart[c]++] = i;
+        }
+        for( int c = cells; c > 0; c-- )
+        {
+            cellStart[c] = cellStart[c - 1];
+        }
+        cellStart[0] = 0;
+    }
+
+    // Rebuilds the grid and reports every pair of balls in
+    // neighbouring cells whose bounding boxes overlap, once;
+    // two sleeping balls are no pair
+    public void findPairs( BallStore store, IntPairBuffer pairs )
+    {
+        findPairs( store, 0, pairs );
+    }
+
+    // The same with the boxes grown by pad
+    public void findPairs( BallStore store, float pad, IntPairBuffer pairs )
+    {
+        build( store, pad );
+        pairs.clear();
+
+        int n = store.size();
+        for( int i = 0; i < n; i++ )
+        {
+            int c = ballCell[i];
+            int col = c % cols;
+            int row = c / cols;
+            int colLo = Math.max( col - 1, 0 );
+            int colHi = Math.min( col + 1, cols - 1 );
+            int rowLo = Math.max( row - 1, 0 );
+            int rowHi = Math.min( row + 1, rows - 1 );
+            float xI = store.cx[i];
+            float yI = store.cy[i];
+            float rI = store.radius[i];
+            boolean sleeps = store.asleep[i];
+
+            for( int r = rowLo; r <= rowHi; r++ )
+            {
+                // cells of one row are contiguous in cellBalls
+                int kEnd = cellStart[r*cols + colHi + 1];
+                for( int k = cellStart[r*cols + colLo]; k < kEnd; k++ )
+                {
+                    int j = cellBalls[k];
+                    float rS = store.radius[j] + rI + pad;
+                    if( (j > i) && !(sleeps & store.asleep[j])
+                        && (Math.abs( store.cx[j] - xI ) <= rS)
+                        && (Math.abs( store.cy[j] - yI ) <= rS) )
+                    {
+                        pairs.add( i, j );
+                    }
+                }
+            }
+        }
+    }
+
+    // Cell of ball i as of the last build
+    int cellOfBall( int i )
+    {
+        return ballCell[i];
+    }
+
+    // Balls of cell c are cellBall(cellStart(c)) .. cellBall(cellStart(c + 1) - 1),
+    // in increasing index order
+    int cellStart( int c )
+    {
+        return cellStart[c];
+    }
+
+    int cellBall( int k )
+    {
+        return cellBalls[k];
+    }
+
+    private int cellOf( float x, float y )
+    {
+        int col = (int) ((x - x0)/cellSize);
+        int row = (int) ((y - y0)/cellSize);
+        col = Math.max( 0, Math.min( col, cols - 1 ) );
+        row = Math.max( 0, Math.min( row, rows - 1 ) );
+        return row*cols + col;
+    }
+}
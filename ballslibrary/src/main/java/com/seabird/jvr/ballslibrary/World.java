@@ -0,0 +1,271 @@
+package com.seabird.jvr.ballslibrary;
+
+import java.util.Arrays;
+
+/**
+ * All balls on one table, and the one way to advance them. Owns the
+ * BilliardTable, the BallStore holding the balls and the integrator,
+ * and does a whole step in a fixed order:
+ *
+ * 1. integration incl. rail reflection of every ball that is awake,
+ *    after the sleep bookkeeping (BatchIntegrator, or BallStore.stepAll
+ *    with setBatch(false))
+ * 2. with a SweptCollider set, pairs that touched on their way through
+ *    the step are put back to where they first touched
+ * 3. ball-ball contacts of the pairs the broad phase finds, by the
+ *    ContactSolver if one is set, else pairwise (BallStore.resolveOverlaps)
+ *
+ * step(ax,ay,tMilli)       1 to 3
+ * integrate(ax,ay,tMilli)  1 only; the pieces of a sub-stepped step
+ * resolveContacts()        2 and 3; after the last piece
+ * setSolver(solver)        impulses by mass, restitution and friction
+ * setParallel(stepper)     1 and 3 on several cores, for large worlds
+ * setCollider(collider)    no tunnelling at long steps
+ * add(x,y,r,color)         one ball at rest, returns its index
+ * addAll(x,y,r,color,n)    n balls at once
+ * remove(i)                the last ball takes index i
+ * removeAll(balls,n)       n balls at once
+ * query(x0,y0,x1,y1,out)   the balls touching a rectangle
+ * ballAt(x,y)              the ball under a point
+ *
+ * Balls are addressed by their index in the store, which stays the
+ * same until a ball is removed. Queries scan the arrays and allocate
+ * nothing. A World is not thread safe: one thread steps it (e.g. a
+ * SimulationLoop), anything else has to go through that thread.
+ */
+public class World
+{
+    private final BilliardTable table;
+    private final BallStore store;
+    private final BatchIntegrator integrator;
+    private final StepContext ctx = new StepContext();
+
+    private boolean batch = true;
+    private ParallelStepper parallel;
+    private ContactSolver solver;
+    private SweptCollider collider;
+    private boolean swept;              // collider.begin() done for this step
+
+    // Empty world on the given table
+    public World( BilliardTable table )
+    {
+        this( new BallStore( table ) );
+    }
+
+    // World around the balls of an existing store, and its table
+    public World( BallStore store )
+    {
+        this.table = store.table;
+        this.store = store;
+        this.integrator = new BatchIntegrator( store );
+    }
+
+    public BilliardTable getTable()
+    {
+        return table;
+    }
+
+    public BallStore getStore()
+    {
+        return store;
+    }
+
+    // Rail hits and loop limit hits since FrameMetrics.countStep took them
+    public StepContext getStepContext()
+    {
+        return ctx;
+    }
+
+    public int size()
+    {
+        return store.size();
+    }
+
+    // Integrate with the BatchIntegrator (default) or ball by ball
+    public void setBatch( boolean b )
+    {
+        batch = b;
+    }
+
+    // Integrate, and without a solver resolve, on the stepper's
+    // threads (of this world's store); null for this thread only.
+    // Small worlds are still stepped on this thread
+    public void setParallel( ParallelStepper p )
+    {
+        parallel = p;
+    }
+
+    // Resolve contacts with this solver (of this world's store), or
+    // with null pairwise as equal, perfectly elastic balls
+    public void setSolver( ContactSolver s )
+    {
+        solver = s;
+    }
+
+    public ContactSolver getSolver()
+    {
+        return solver;
+    }
+
+    // Sweep the balls' ways through each step with this collider (of
+    // this world's store), or with null only check where they end
+    public void setCollider( SweptCollider c )
+    {
+        collider = c;
+        swept = false;
+    }
+
+    public SweptCollider getCollider()
+    {
+        return collider;
+    }
+
+    // One step of tMilli with acceleration ax, ay (m/sec*sec)
+    public void step( float ax, float ay, double tMilli )
+    {
+        integrate( ax, ay, tMilli );
+        resolveContacts();
+    }
+
+    public void integrate( float ax, float ay, double tMilli )
+    {
+        if( (collider != null) && !swept )
+        {
+            collider.begin();
+            swept = true;
+        }
+        if( parallel != null )
+        {
+            parallel.integrate( ax, ay, tMilli, ctx );
+        }
+        else if( batch )
+        {
+            integrator.step( ax, ay, tMilli, ctx );
+        }
+        else
+        {
+            store.stepAll( ax, ay, tMilli, ctx );
+        }
+    }
+
+    public void resolveContacts()
+    {
+        if( swept )
+        {
+            collider.sweep();
+            swept = false;
+        }
+        if( solver != null )
+        {
+            solver.solve();
+        }
+        else if( parallel != null )
+        {
+            parallel.resolveOverlaps();
+        }
+        else
+        {
+            store.resolveOverlaps();
+        }
+    }
+
+    public int add( float x, float y, float r, int color )
+    {
+        return store.add( x, y, r, color );
+    }
+
+    // Balls at (x[k],y[k]) with radius r[k] and color[k], k < n, all
+    // at rest; they get the indices size() .. size() + n - 1
+    public void addAll( float[] x, float[] y, float[] r, int[] color, int n )
+    {
+        store.ensureCapacity( store.size() + n );
+        for( int k = 0; k < n; k++ )
+        {
+            store.add( x[k], y[k], r[k], color[k] );
+        }
+    }
+
+    // Removes ball i; the last ball gets index i
+    public void remove( int i )
+    {
+        store.remove( i );
+        indicesChanged();
+    }
+
+    // Removes the balls balls[0] .. balls[n - 1], highest index first
+    // so that the others are not moved before their turn. Sorts that
+    // part of balls
+    public void removeAll( int[] balls, int n )
+    {
+        Arrays.sort( balls, 0, n );
+        for( int k = n - 1; k >= 0; k-- )
+        {
+            if( (k == n - 1) || (balls[k] != balls[k + 1]) )
+            {
+                store.remove( balls[k] );
+            }
+        }
+        indicesChanged();
+    }
+
+    public void clear()
+    {
+        store.clear();
+        indicesChanged();
+    }
+
+    // What the solver keeps per pair of indices is void now, and so
+    // are the starts the collider took
+    private void indicesChanged()
+    {
+        if( solver != null )
+        {
+            solver.reset();
+        }
+        if( collider != null )
+        {
+            collider.reset();
+        }
+        swept = false;
+    }
+
+    // Indices of the balls touching the rectangle x0..x1, y0..y1 go
+    // to out, as many as fit; returns how many balls touch it
+    public int query( float x0, float y0, float x1, float y1, int[] out )
+    {
+        BallStore s = store;
+        int found = 0;
+        for( int i = 0; i < s.size(); i++ )
+        {
+            // nearest point of the rectangle to the center
+            float dx = s.cx[i] - Math.max( x0, Math.min( s.cx[i], x1 ) );
+            float dy = s.cy[i] - Math.max( y0, Math.min( s.cy[i], y1 ) );
+            if( dx*dx + dy*dy <= s.radius[i]*s.radius[i] )
+            {
+                if( found < out.length )
+                {
+                    out[found] = i;
+                }
+                found++;
+            }
+        }
+        return found;
+    }
+
+    // The ball whose disc contains (x,y), the one with the highest
+    // index if several do; -1 if none
+    public int ballAt( float x, float y )
+    {
+        BallStore s = store;
+        for( int i = s.size() - 1; i >= 0; i-- )
+        {
+            float dx = s.cx[i] - x;
+            float dy = s.cy[i] - y;
+            if( dx*dx + dy*dy <= s.radius[i]*s.radius[i] )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,101 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * BatchIntegrator must agree with stepAll: exactly for balls that hit
+ * a rail, to float rounding for the others; and keep all balls on
+ * the table.
+ */
+public class BatchIntegratorTest
+{
+    private static Scenario scenario()
+    {
+        Scenario s = new Scenario();
+        s.balls = 20000;
+        s.width = 3000;
+        s.height = 3000;
+        s.radius = 4;
+        s.radiusSpread = 6;
+        s.speed = 3000;
+        s.ax = 3;
+        s.ay = -7;
+        return s;
+    }
+
+    @Test
+    public void oneStep_matchesStepAll() throws Exception
+    {
+        Scenario s = scenario();
+        BallStore expected = s.build();
+        BallStore actual = s.build();
+        BatchIntegrator batch = new BatchIntegrator( actual );
+
+        // 16 ms at 3000 dp/s: the outer rows of balls reach the rails
+        expected.stepAll( s.ax, s.ay, 16, new StepContext() );
+        batch.step( s.ax, s.ay, 16 );
+        assertTrue( "some balls hit a rail", batch.getFlaggedCount() > 0 );
+
+        for( int i = 0; i < s.balls; i++ )
+        {
+            assertEquals( expected.cx[i], actual.cx[i], 1e-3f );
+            assertEquals( expected.cy[i], actual.cy[i], 1e-3f );
+            assertEquals( expected.vx[i], actual.vx[i], 1e-3f );
+            assertEquals( expected.vy[i], actual.vy[i], 1e-3f );
+        }
+    }
+
+    @Test
+    public void friction_matchesStepAll() throws Exception
+    {
+        Scenario s = scenario();
+        s.friction = true;
+        s.ax = 0.5f;
+        s.ay = -1;
+        BallStore expected = s.build();
+        BallStore actual = s.build();
+        BatchIntegrator batch = new BatchIntegrator( actual );
+        StepContext ctx = new StepContext();
+
+        // Sliding first, then rolling; by then most balls are not flagged
+        for( int k = 0; k < 100; k++ )
+        {
+            expected.stepAll( s.ax, s.ay, 5, ctx );
+            batch.step( s.ax, s.ay, 5 );
+        }
+        assertTrue( "most roll freely", batch.getFlaggedCount() < s.balls/2 );
+
+        // Float against double: an ulp or so per step, over 100 steps.
+        // An ulp can also put a rail hit into the next step, which
+        // changes the friction in that step a little
+        for( int i = 0; i < s.balls; i++ )
+        {
+            assertEquals( expected.cx[i], actual.cx[i], 0.1f );
+            assertEquals( expected.cy[i], actual.cy[i], 0.1f );
+            assertEquals( expected.vx[i], actual.vx[i], 0.2f );
+            assertEquals( expected.vy[i], actual.vy[i], 0.2f );
+            assertEquals( expected.phase[i], actual.phase[i] );
+        }
+    }
+
+    @Test
+    public void manySteps_stayOnTable() throws Exception
+    {
+        Scenario s = scenario();
+        BallStore store = s.build();
+        BatchIntegrator batch = new BatchIntegrator( store );
+
+        for( int k = 0; k < 500; k++ )
+        {
+            batch.step( s.ax, s.ay, 5 );
+        }
+        for( int i = 0; i < s.balls; i++ )
+        {
+            float R = store.radius[i];
+            assertTrue( store.cx[i] >= R && store.cx[i] <= s.width - R );
+            assertTrue( store.cy[i] >= R && store.cy[i] <= s.height - R );
+        }
+    }
+}
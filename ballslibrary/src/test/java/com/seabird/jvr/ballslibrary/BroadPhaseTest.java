@@ -0,0 +1,153 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * A broad phase must report every pair of balls that overlap (or are
+ * less than pad apart) as the all pairs test finds them, each pair
+ * once, and none of two sleeping balls.
+ */
+public class BroadPhaseTest
+{
+    // Balls scattered with radii from rMin to rMax, a few asleep
+    private static BallStore scatter( int n, int side, float rMin, float rMax, long seed )
+    {
+        BallStore s = new BallStore( new BilliardTable( 0, side, 0, side ), n );
+        Random rnd = new Random( seed );
+        for( int i = 0; i < n; i++ )
+        {
+            float r = rMin + (rMax - rMin)*rnd.nextFloat();
+            s.add( r + (side - 2*r)*rnd.nextFloat(), r + (side - 2*r)*rnd.nextFloat(), r, 0 );
+            s.asleep[i] = rnd.nextInt( 5 ) == 0;
+        }
+        return s;
+    }
+
+    private static void assertAllPairsFound( BroadPhase bp, BallStore s, float pad )
+    {
+        IntPairBuffer pairs = new IntPairBuffer();
+        bp.findPairs( s, pad, pairs );
+
+        Set<Long> found = new HashSet<Long>();
+        for( int k = 0; k < pairs.size(); k++ )
+        {
+            int i = Math.min( pairs.first( k ), pairs.second( k ) );
+            int j = Math.max( pairs.first( k ), pairs.second( k ) );
+            assertTrue( i != j );
+            assertTrue( "pair twice", found.add( ((long) i << 32) | j ) );
+            assertFalse( s.asleep[i] & s.asleep[j] );
+        }
+
+        int touching = 0;
+        for( int i = 0; i < s.size(); i++ )
+        {
+            for( int j = i + 1; j < s.size(); j++ )
+            {
+                float dx = s.cx[j] - s.cx[i];
+                float dy = s.cy[j] - s.cy[i];
+                float rS = s.radius[i] + s.radius[j] + pad;
+                if( (dx*dx + dy*dy < rS*rS) && !(s.asleep[i] & s.asleep[j]) )
+                {
+                    touching++;
+                    assertTrue( "missed " + i + "," + j, found.contains( ((long) i << 32) | j ) );
+                }
+            }
+        }
+        assertTrue( touching > 0 );
+    }
+
+    @Test
+    public void uniformGrid_equalRadii()
+    {
+        assertAllPairsFound( new UniformGrid(), scatter( 2000, 2000, 15, 15, 1 ), 0 );
+    }
+
+    @Test
+    public void uniformGrid_mixedRadii()
+    {
+        assertAllPairsFound( new UniformGrid(), scatter( 2000, 2000, 2, 40, 2 ), 0 );
+    }
+
+    @Test
+    public void uniformGrid_fewBallsOnAHugeTable()
+    {
+        // More cells than CELLS_PER_BALL allows: the cells grow
+        BallStore s = scatter( 300, 100000, 10, 20, 3 );
+        for( int i = 0; i < 100; i++ )
+        {
+            s.add( 500 + 25*(i % 10), 500 + 25*(i / 10), 15, 0 );
+        }
+        assertAllPairsFound( new UniformGrid(), s, 0 );
+    }
+
+    @Test
+    public void uniformGrid_padded()
+    {
+        assertAllPairsFound( new UniformGrid(), scatter( 2000, 2000, 5, 20, 4 ), 3 );
+    }
+
+    @Test
+    public void uniformGrid_reusedAsBallsMove()
+    {
+        BallStore s = scatter( 1000, 1500, 5, 20, 5 );
+        UniformGrid grid = new UniformGrid();
+        Random rnd = new Random( 6 );
+        for( int k = 0; k < 10; k++ )
+        {
+            for( int i = 0; i < s.size(); i++ )
+            {
+                float r = s.radius[i];
+                s.cx[i] = Math.min( Math.max( s.cx[i] + 30*rnd.nextFloat() - 15, r ), 1500 - r );
+                s.cy[i] = Math.min( Math.max( s.cy[i] + 30*rnd.nextFloat() - 15, r ), 1500 - r );
+            }
+            assertAllPairsFound( grid, s, 0 );
+        }
+    }
+
+    @Test
+    public void sweepAndPrune_equalRadii()
+    {
+        assertAllPairsFound( new SweepAndPrune(), scatter( 2000, 2000, 15, 15, 1 ), 0 );
+    }
+
+    @Test
+    public void sweepAndPrune_mixedRadii()
+    {
+        assertAllPairsFound( new SweepAndPrune(), scatter( 2000, 2000, 2, 40, 2 ), 0 );
+    }
+
+    @Test
+    public void sweepAndPrune_padded()
+    {
+        assertAllPairsFound( new SweepAndPrune(), scatter( 2000, 2000, 5, 20, 4 ), 3 );
+    }
+
+    @Test
+    public void sweepAndPrune_orderKeptAsBallsMoveAndCountChanges()
+    {
+        BallStore s = scatter( 1000, 1500, 5, 20, 5 );
+        SweepAndPrune sap = new SweepAndPrune();
+        Random rnd = new Random( 6 );
+        for( int k = 0; k < 10; k++ )
+        {
+            for( int i = 0; i < s.size(); i++ )
+            {
+                float r = s.radius[i];
+                s.cx[i] = Math.min( Math.max( s.cx[i] + 30*rnd.nextFloat() - 15, r ), 1500 - r );
+                s.cy[i] = Math.min( Math.max( s.cy[i] + 30*rnd.nextFloat() - 15, r ), 1500 - r );
+            }
+            if( k == 5 )
+            {
+                s.remove( 17 );
+                s.add( 750, 750, 30, 0 );
+            }
+            assertAllPairsFound( sap, s, 0 );
+        }
+    }
+}
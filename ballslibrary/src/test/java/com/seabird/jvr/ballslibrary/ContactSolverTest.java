@@ -0,0 +1,221 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * ContactSolver must conserve momentum in every collision, and
+ * kinetic energy (spin included) as far as restitution and friction
+ * allow: all of it for e = 1 without friction, never more than it was
+ * in a cluster. A stack at rest must stay at rest, in one or two
+ * passes with warm starting. Balls less than REST_TOL apart are in
+ * contact with either broad phase; restitution and friction are
+ * those of the pair.
+ */
+public class ContactSolverTest
+{
+    private static double[] momentumAndEnergy( BallStore s )
+    {
+        double px = 0, py = 0, e = 0;
+        for( int i = 0; i < s.size(); i++ )
+        {
+            double m = s.mass[i];
+            double r = s.radius[i];
+            px += m*s.vx[i];
+            py += m*s.vy[i];
+            e += 0.5*m*(s.vx[i]*s.vx[i] + s.vy[i]*s.vy[i]) + 0.2*m*r*r*s.pz[i]*s.pz[i];
+        }
+        return new double[] { px, py, e };
+    }
+
+    // A light ball hits a heavy one off center
+    private static World twoBalls( float e, float mu )
+    {
+        World world = new World( new BilliardTable( 0, 2000, 0, 2000 ) );
+        world.getTable().collidingRestitution = e;
+        world.getTable().collidingFriction = mu;
+        BallStore s = world.getStore();
+        s.add( 1000, 1000, 20, 0 );
+        s.add( 1039, 1008, 20, 0 );
+        s.mass[0] = 0.1f;
+        s.mass[1] = 0.3f;
+        s.setVelocity( 0, 300, 0, 0 );
+        s.setVelocity( 1, -100, 20, 0 );
+        world.setSolver( new ContactSolver( s ) );
+        return world;
+    }
+
+    @Test
+    public void elastic_conservesMomentumAndEnergy()
+    {
+        World world = twoBalls( 1, 0 );
+        double[] before = momentumAndEnergy( world.getStore() );
+        world.resolveContacts();
+        double[] after = momentumAndEnergy( world.getStore() );
+
+        assertEquals( 1, world.getSolver().getContactCount() );
+        assertEquals( before[0], after[0], 1e-4 );
+        assertEquals( before[1], after[1], 1e-4 );
+        assertEquals( before[2], after[2], 1e-5*before[2] );
+        // the light ball comes back faster than the heavy one
+        assertTrue( world.getStore().vx[0] < -250 );
+    }
+
+    @Test
+    public void restitution_scalesNormalSpeed()
+    {
+        World world = twoBalls( 0.5f, 0 );
+        BallStore s = world.getStore();
+        float nx = s.cx[1] - s.cx[0];
+        float ny = s.cy[1] - s.cy[0];
+        float d = (float) Math.sqrt( nx*nx + ny*ny );
+        float vn0 = ((s.vx[1] - s.vx[0])*nx + (s.vy[1] - s.vy[0])*ny)/d;
+        double[] before = momentumAndEnergy( s );
+        world.resolveContacts();
+        double[] after = momentumAndEnergy( s );
+
+        float vn1 = ((s.vx[1] - s.vx[0])*nx + (s.vy[1] - s.vy[0])*ny)/d;
+        assertEquals( -0.5f*vn0, vn1, 0.01 );
+        assertEquals( before[0], after[0], 1e-4 );
+        assertEquals( before[1], after[1], 1e-4 );
+        assertTrue( after[2] < before[2] );
+    }
+
+    @Test
+    public void friction_spinsTheBalls_conservesMomentum()
+    {
+        World world = twoBalls( 1, 0.06f );
+        BallStore s = world.getStore();
+        double[] before = momentumAndEnergy( s );
+        world.resolveContacts();
+        double[] after = momentumAndEnergy( s );
+
+        assertEquals( before[0], after[0], 1e-4 );
+        assertEquals( before[1], after[1], 1e-4 );
+        assertTrue( after[2] < before[2] );
+        // both turn the same way, the light ball more
+        assertTrue( s.pz[0]*s.pz[1] > 0 );
+        assertTrue( Math.abs( s.pz[0] ) > Math.abs( s.pz[1] ) );
+    }
+
+    @Test
+    public void cluster_conservesMomentum_neverGainsEnergy()
+    {
+        // Far from the rails, so that only ball-ball impulses act
+        World world = new World( new BilliardTable( 0, 6000, 0, 6000 ) );
+        BallStore s = world.getStore();
+        Random rnd = new Random( 5 );
+        for( int k = 0; k < 400; k++ )
+        {
+            int i = s.add( 2000 + 42*(k % 20) + rnd.nextFloat(), 2000 + 42*(k / 20), 20, 0 );
+            s.mass[i] = 0.1f + 0.3f*rnd.nextFloat();
+            s.setVelocity( i, 800*rnd.nextFloat() - 400, 800*rnd.nextFloat() - 400, 0 );
+        }
+        ContactSolver solver = new ContactSolver( s );
+        solver.warmStart = false;
+        world.setSolver( solver );
+
+        int contacts = 0;
+        for( int k = 0; k < 200; k++ )
+        {
+            world.integrate( 0, 0, 5 );
+            double[] before = momentumAndEnergy( s );
+            world.resolveContacts();
+            double[] after = momentumAndEnergy( s );
+            contacts += solver.getContactCount();
+
+            assertEquals( before[0], after[0], 1e-3*Math.abs( before[0] ) + 1e-2 );
+            assertEquals( before[1], after[1], 1e-3*Math.abs( before[1] ) + 1e-2 );
+            assertTrue( "step " + k, after[2] <= before[2]*(1 + 1e-6) );
+        }
+        assertTrue( contacts > 1000 );
+    }
+
+    // Six rows of balls stacked on the bottom rail, ay = 1 m/sec*sec
+    private static World stack( boolean warmStart )
+    {
+        World world = new World( new BilliardTable( 0, 400, 0, 1000 ) );
+        for( int row = 0; row < 6; row++ )
+        {
+            for( int c = 0; c < 10 - (row % 2); c++ )
+            {
+                world.add( 20 + 40*c + 20*(row % 2), 980 - row*20*(float) Math.sqrt( 3 ), 20, 0 );
+            }
+        }
+        ContactSolver solver = new ContactSolver( world.getStore() );
+        solver.warmStart = warmStart;
+        world.setSolver( solver );
+        return world;
+    }
+
+    @Test
+    public void stack_warmStarted_restsInFewPasses()
+    {
+        World warm = stack( true );
+        World cold = stack( false );
+        for( int k = 0; k < 1000; k++ )
+        {
+            warm.step( 0, 1, 5 );
+            cold.step( 0, 1, 5 );
+        }
+        assertTrue( warm.getSolver().getIterationsUsed() <= 2 );
+        assertEquals( 8, cold.getSolver().getIterationsUsed() );
+
+        double still = momentumAndEnergy( warm.getStore() )[2];
+        double jitter = momentumAndEnergy( cold.getStore() )[2];
+        assertTrue( still + " vs " + jitter, still < 0.01*jitter );
+        // the top row is still where it was put
+        assertEquals( 980 - 5*20*Math.sqrt( 3 ), warm.getStore().cy[warm.size() - 1], 2 );
+    }
+
+    @Test
+    public void nearlyTouching_isAContact()
+    {
+        for( BroadPhase bp : new BroadPhase[] { new UniformGrid(), new SweepAndPrune() } )
+        {
+            World world = new World( new BilliardTable( 0, 2000, 0, 2000 ) );
+            BallStore s = world.getStore();
+            s.setBroadPhase( bp );
+            s.add( 1000, 1000, 20, 0 );
+            s.add( 1040 + 0.5f*BallStore.REST_TOL, 1000, 20, 0 );
+            s.setVelocity( 0, 300, 0, 0 );
+            world.setSolver( new ContactSolver( s ) );
+            world.resolveContacts();
+
+            assertEquals( 1, world.getSolver().getContactCount() );
+            assertTrue( s.vx[1] > 0 );
+        }
+    }
+
+    @Test
+    public void restitution_livelierBallOfThePair()
+    {
+        // e = 0.5 on the table, but one ball is perfectly elastic
+        World world = twoBalls( 0.5f, 0 );
+        BallStore s = world.getStore();
+        s.restitution[1] = 1;
+        double[] before = momentumAndEnergy( s );
+        world.resolveContacts();
+        double[] after = momentumAndEnergy( s );
+
+        assertEquals( before[2], after[2], 1e-5*before[2] );
+    }
+
+    @Test
+    public void friction_noneOnASmoothBall()
+    {
+        World world = twoBalls( 1, 0.06f );
+        BallStore s = world.getStore();
+        s.grip[0] = 0;
+        double[] before = momentumAndEnergy( s );
+        world.resolveContacts();
+        double[] after = momentumAndEnergy( s );
+
+        assertEquals( 0, s.pz[0], 0 );
+        assertEquals( 0, s.pz[1], 0 );
+        assertEquals( before[2], after[2], 1e-5*before[2] );
+    }
+}
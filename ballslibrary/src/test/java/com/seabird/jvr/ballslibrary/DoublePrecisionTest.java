@@ -0,0 +1,92 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * With doublePrecision the BatchIntegrator must agree with stepAll
+ * exactly, the floats must be the doubles rounded, and writes to the
+ * floats must be taken over. A ball bouncing between elastic rails
+ * must keep its energy far better than in float.
+ */
+public class DoublePrecisionTest
+{
+    @Test
+    public void batch_sameAsStepAll()
+    {
+        Scenario s = new Scenario();
+        s.balls = 2000;
+        s.width = 2000;
+        s.height = 2000;
+        s.radius = 8;
+        s.speed = 3000;
+        s.ax = 3;
+        s.ay = -7;
+        s.precision = "double";
+        BallStore expected = s.build();
+        BallStore actual = s.build();
+        BatchIntegrator batch = new BatchIntegrator( actual );
+        StepContext ctx = new StepContext();
+
+        int flagged = 0;
+        for( int k = 0; k < 100; k++ )
+        {
+            expected.stepAll( s.ax, s.ay, 16, ctx );
+            batch.step( s.ax, s.ay, 16 );
+            flagged += batch.getFlaggedCount();
+        }
+        assertTrue( flagged > 0 );
+        for( int i = 0; i < s.balls; i++ )
+        {
+            assertEquals( expected.dcx[i], actual.dcx[i], 0 );
+            assertEquals( expected.dvy[i], actual.dvy[i], 0 );
+            assertEquals( (float) actual.dcx[i], actual.cx[i], 0 );
+            assertEquals( (float) actual.dvy[i], actual.vy[i], 0 );
+        }
+    }
+
+    @Test
+    public void floatWrites_takenOver()
+    {
+        BallStore s = new BallStore( new BilliardTable( 0, 1000, 0, 1000 ) );
+        s.doublePrecision = true;
+        s.add( 500, 500, 20, 0 );
+        s.setVelocity( 0, 100, 0, 0 );
+        s.doStep( 0, 0, 0, 10 );
+        assertEquals( 501, s.dcx[0], 1e-9 );
+
+        // a collision moves the ball and turns it around
+        s.shiftCenter( 0, -0.5f, 0, 0 );
+        s.vx[0] = -100;
+        s.doStep( 0, 0, 0, 10 );
+        assertEquals( 499.5, s.dcx[0], 1e-9 );
+        assertEquals( -100, s.dvx[0], 0 );
+        assertEquals( 500, s.dcy[0], 0 );
+    }
+
+    private static double drift( String precision )
+    {
+        Scenario s = new Scenario();
+        s.balls = 1;
+        s.speed = 2000;
+        s.ax = 0.3f;
+        s.ay = 0.7f;
+        s.restitution = 1;
+        s.seconds = 2000;       // 400000 steps
+        s.precision = precision;
+        HeadlessRunner runner = new HeadlessRunner( s );
+        double e0 = runner.energy();
+        runner.run();
+        return Math.abs( runner.energy() - e0 )/e0;
+    }
+
+    @Test
+    public void elasticRails_keepTheEnergy()
+    {
+        double single = drift( "float" );
+        double dbl = drift( "double" );
+        assertTrue( single + " vs " + dbl, dbl < 1e-3*single );
+        assertTrue( dbl < 1e-6 );
+    }
+}
@@ -0,0 +1,96 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * EventDrivenSimulator must end where fixed steps end: in a line of
+ * balls the speed must be passed down to the last one, even though
+ * the balls at rest could not reach anything at the start of the
+ * window, and a small loose scene must agree ball by ball with fine
+ * fixed steps.
+ */
+public class EventDrivenSimulatorTest
+{
+    // Three balls in a line, the first one running into the others
+    private static BallStore line()
+    {
+        BallStore s = new BallStore( new BilliardTable( 0, 4000, 0, 1000 ) );
+        s.add( 100, 500, 20, 0 );
+        s.add( 200, 500, 20, 0 );
+        s.add( 600, 500, 20, 0 );
+        s.setVelocity( 0, 10000, 0, 0 );
+        return s;
+    }
+
+    private static void stepFixed( BallStore s, double tMilli, double dtMilli )
+    {
+        StepContext sc = new StepContext();
+        for( double t = 0; t < tMilli - 1e-9; t += dtMilli )
+        {
+            s.stepAll( 0, 0, dtMilli, sc );
+            s.resolveOverlaps();
+        }
+    }
+
+    @Test
+    public void line_passesSpeedToTheLastBall()
+    {
+        BallStore ev = line();
+        BallStore fixed = line();
+        EventDrivenSimulator sim = new EventDrivenSimulator( ev );
+        int events = sim.run( 0, 0, 100 );
+        stepFixed( fixed, 100, 1 );
+
+        assertEquals( 2, events );
+        assertEquals( 0, ev.vx[0], 1e-3 );
+        assertEquals( 0, ev.vx[1], 1e-3 );
+        assertEquals( 10000, ev.vx[2], 1e-3 );
+        // A stops at B, B at C; C runs on from 600 for the time left
+        assertEquals( 160, ev.cx[0], 0.1 );
+        assertEquals( 560, ev.cx[1], 0.1 );
+        assertEquals( 1180, ev.cx[2], 0.1 );
+        for( int i = 0; i < 3; i++ )
+        {
+            assertEquals( "ball " + i, fixed.cx[i], ev.cx[i], 10 );
+        }
+    }
+
+    @Test
+    public void looseScene_agreesWithFineFixedSteps()
+    {
+        BallStore[] s = new BallStore[2];
+        for( int k = 0; k < 2; k++ )
+        {
+            s[k] = new BallStore( new BilliardTable( 0, 1000, 0, 1000 ) );
+            s[k].table.railRestitution = 1;
+            // the reference in double, so that its many small steps
+            // do not lose the way in float rounding, and with an eps
+            // below its step, so that it still sees the rails
+            s[k].doublePrecision = (k == 1);
+            s[k].eps = 1e-7f;
+            Random rnd = new Random( 11 );
+            for( int i = 0; i < 16; i++ )
+            {
+                int b = s[k].add( 150 + 220*(i % 4) + 40*rnd.nextFloat(),
+                                  150 + 220*(i / 4) + 40*rnd.nextFloat(), 30, 0 );
+                s[k].setVelocity( b, 3000*rnd.nextFloat() - 1500, 3000*rnd.nextFloat() - 1500, 0 );
+            }
+        }
+        EventDrivenSimulator sim = new EventDrivenSimulator( s[0] );
+        int events = sim.run( 0, 0, 500 );
+        stepFixed( s[1], 500, 0.002 );
+
+        assertTrue( events > 20 );
+        for( int i = 0; i < 16; i++ )
+        {
+            assertEquals( "ball " + i, s[1].cx[i], s[0].cx[i], 1 );
+            assertEquals( "ball " + i, s[1].cy[i], s[0].cy[i], 1 );
+            assertEquals( "ball " + i, s[1].vx[i], s[0].vx[i], 5 );
+            assertEquals( "ball " + i, s[1].vy[i], s[0].vy[i], 5 );
+        }
+    }
+}
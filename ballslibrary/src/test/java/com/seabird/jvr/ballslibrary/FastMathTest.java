@@ -0,0 +1,67 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * FastMath must stay within the error bounds it gives, over the whole
+ * domain, and D3.phi() / theta() must agree with atan2 / acos in every
+ * quadrant, their fast variants within 1e-4 rad of them.
+ */
+public class FastMathTest
+{
+    @Test
+    public void approximations_stayWithinBounds()
+    {
+        double eAtan = 0, eAcos = 0, eAtan2 = 0, eInv = 0;
+        for( int i = -200000; i <= 200000; i++ )
+        {
+            float x = i/200000f;
+            eAcos = Math.max( eAcos, Math.abs( FastMath.acos( x ) - Math.acos( x ) ) );
+            float t = i/1000f;
+            eAtan = Math.max( eAtan, Math.abs( FastMath.atan( t ) - Math.atan( t ) ) );
+        }
+        Random rnd = new Random( 9 );
+        for( int i = 0; i < 200000; i++ )
+        {
+            float x = (float) rnd.nextGaussian();
+            float y = (float) rnd.nextGaussian();
+            eAtan2 = Math.max( eAtan2, Math.abs( FastMath.atan2( y, x ) - Math.atan2( y, x ) ) );
+            float v = (float) Math.exp( 80*rnd.nextDouble() - 40 );
+            eInv = Math.max( eInv, Math.abs( FastMath.invSqrt( v )*Math.sqrt( v ) - 1 ) );
+        }
+        assertTrue( "atan " + eAtan, eAtan < 2e-6 );
+        assertTrue( "atan2 " + eAtan2, eAtan2 < 2e-6 );
+        assertTrue( "acos " + eAcos, eAcos < 7e-5 );
+        assertTrue( "invSqrt " + eInv, eInv < 5e-6 );
+        assertEquals( 0, FastMath.atan2( 0, 0 ), 0 );
+        assertEquals( Math.PI, FastMath.atan2( 0, -1 ), 1e-6 );
+    }
+
+    @Test
+    public void phiAndTheta_inEveryQuadrant()
+    {
+        for( int k = 0; k < 16; k++ )
+        {
+            double a = (k + 0.5)*Math.PI/8;
+            D3 d = new D3( 2*(float) Math.cos( a ), 2*(float) Math.sin( a ), 1 );
+            assertEquals( "phi " + k, a, d.phi(), 1e-6 );
+            assertEquals( "phiFast " + k, a, d.phiFast(), 1e-4 );
+            double theta = Math.atan2( 2, 1 );
+            assertEquals( theta, d.theta(), 1e-6 );
+            assertEquals( theta, d.thetaFast(), 1e-4 );
+            assertEquals( Math.sqrt( 5 ), d.rFast(), 1e-5 );
+            assertEquals( 5, d.rSquared(), 1e-5 );
+            assertEquals( 4, d.r2dSquared(), 1e-5 );
+        }
+        D3 zero = new D3();
+        assertEquals( 0, zero.phi(), 0 );
+        assertEquals( 0, zero.theta(), 0 );
+        assertEquals( 0, zero.thetaFast(), 0 );
+        assertEquals( 0, zero.rFast(), 0 );
+        assertEquals( Math.PI, new D3( 0, 0, -3 ).thetaFast(), 1e-6 );
+    }
+}
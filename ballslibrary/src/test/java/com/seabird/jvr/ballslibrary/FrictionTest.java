@@ -0,0 +1,105 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * With friction a ball pushed without spin must slide, roll on at
+ * 5/7 of its speed and stop where the closed form says, whatever the
+ * step; on a tilted table it must rest below the rolling threshold
+ * and come to rest against a rail.
+ */
+public class FrictionTest
+{
+    private static final float V0 = 3000;
+
+    private static BallStore oneBall( float x, float y )
+    {
+        BallStore store = new BallStore( new BilliardTable( 0, 10000, 0, 10000 ) );
+        store.friction = true;
+        store.add( x, y, 20, 0 );
+        return store;
+    }
+
+    @Test
+    public void flat_stopsWhereClosedFormSays()
+    {
+        BilliardTable t = new BilliardTable();
+        double muS = t.slidingFriction*BallStore.G*6400;    // dp/s^2
+        double muR = t.rollingFriction*BallStore.G*6400;
+        double tSlide = 2*V0/(7*muS);
+        double vRoll = 5*V0/7.;
+        double expected = 1000 + V0*tSlide - 0.5*muS*tSlide*tSlide + vRoll*vRoll/(2*muR);
+        double tRest = tSlide + vRoll/muR;
+
+        for( double stepMilli : new double[] { 1, 10, 33 } )
+        {
+            BallStore store = oneBall( 1000, 5000 );
+            store.setVelocity( 0, V0, 0, 0 );
+            double time = 0;
+            do
+            {
+                store.doStep( 0, 0, 0, stepMilli );
+                time += stepMilli/1000;
+            }
+            while( !store.isResting( 0 ) );
+            assertEquals( "stop at, step " + stepMilli, expected, store.cx[0], 0.5 );
+            assertEquals( 5000, store.cy[0], 0 );
+            assertEquals( "at rest after", tRest, time, stepMilli/1000 );
+        }
+    }
+
+    @Test
+    public void sliding_rollsOnAtFiveSevenths()
+    {
+        BallStore store = oneBall( 1000, 5000 );
+        store.setVelocity( 0, 0, -V0, 0 );
+        store.doStep( 0, 0, 0, 1 );
+        assertEquals( BallStore.SLIDING, store.phase[0] );
+
+        // Sliding takes about 55 ms
+        store.doStep( 0, 0, 0, 100 );
+        assertEquals( BallStore.ROLLING, store.phase[0] );
+        double muR = store.table.rollingFriction*BallStore.G*6400;
+        double tSlide = 2*V0/(7*store.table.slidingFriction*BallStore.G*6400);
+        assertEquals( -5*V0/7. + muR*(0.101 - tSlide), store.vy[0], 0.5 );
+        assertEquals( store.vy[0]/20, -store.px[0], 1e-3 );
+        assertEquals( 0, store.py[0], 1e-3 );
+    }
+
+    @Test
+    public void tilted_restsBelowThreshold()
+    {
+        BallStore store = oneBall( 5000, 5000 );
+        // 5/7 * 0.12 = 0.086 < mu_r*g = 0.098
+        for( int k = 0; k < 100; k++ )
+        {
+            store.doStep( 0, 0.12f, 0, 10 );
+        }
+        assertTrue( store.isResting( 0 ) );
+        assertEquals( 5000, store.cx[0], 0 );
+
+        // 5/7 * 1.0 - 0.098: s = 0.5*a*t^2
+        store.doStep( 0, 1.0f, 0, 1000 );
+        double a = (5/7. - store.table.rollingFriction*BallStore.G)*6400;
+        assertEquals( BallStore.ROLLING, store.phase[0] );
+        assertEquals( 5000 + 0.5*a, store.cx[0], 0.5 );
+    }
+
+    @Test
+    public void againstRail_comesToRest()
+    {
+        BallStore store = oneBall( 5000, 5000 );
+        store.setVelocity( 0, 500, 2000, 0 );
+        // Pushed down onto the bottom rail, a little to the side
+        for( int k = 0; k < 2000; k++ )
+        {
+            store.doStep( 0, 0.1f, 9.81f, 5 );
+        }
+        assertTrue( store.isResting( 0 ) );
+        assertEquals( 10000 - 20, store.cy[0], BallStore.REST_TOL );
+        assertEquals( 0, store.vx[0], 0 );
+        assertEquals( 0, store.vy[0], 0 );
+    }
+}
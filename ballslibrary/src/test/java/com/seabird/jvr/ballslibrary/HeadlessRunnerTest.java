@@ -0,0 +1,71 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * In the pile scenario the overlap pushes press the lowest balls
+ * against the bottom rail; no engine may push a center off the table.
+ */
+public class HeadlessRunnerTest
+{
+    private static void assertNoneEscaped( String... settings ) throws Exception
+    {
+        Scenario s = Scenario.load( "scenarios/pile.properties" );
+        s.seconds = 3;
+        for( String kv : settings )
+        {
+            int eq = kv.indexOf( '=' );
+            s.set( kv.substring( 0, eq ), kv.substring( eq + 1 ) );
+        }
+        HeadlessRunner runner = new HeadlessRunner( s );
+        runner.run();
+        assertEquals( 0, runner.countEscaped() );
+
+        BallStore store = runner.getStore();
+        BilliardTable t = store.table;
+        for( int i = 0; i < store.size(); i++ )
+        {
+            float R = store.radius[i];
+            assertTrue( (store.cx[i] >= t.xMin + R) && (store.cx[i] <= t.xMax - R) );
+            assertTrue( (store.cy[i] >= t.yMin + R) && (store.cy[i] <= t.yMax - R) );
+        }
+    }
+
+    @Test
+    public void pile_grid() throws Exception
+    {
+        assertNoneEscaped( "engine=grid" );
+    }
+
+    @Test
+    public void pile_sweepAndPrune() throws Exception
+    {
+        assertNoneEscaped( "engine=sap" );
+    }
+
+    @Test
+    public void pile_parallel() throws Exception
+    {
+        assertNoneEscaped( "engine=parallel", "threads=2" );
+    }
+
+    @Test
+    public void pile_events() throws Exception
+    {
+        assertNoneEscaped( "engine=event" );
+    }
+
+    @Test
+    public void pile_contactSolver() throws Exception
+    {
+        assertNoneEscaped( "iterations=8" );
+    }
+
+    @Test
+    public void pile_swept() throws Exception
+    {
+        assertNoneEscaped( "ccd=true" );
+    }
+}
@@ -0,0 +1,99 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Histogram buckets must tile the value range, percentiles must be
+ * within bucket precision (~3%) of the exact ones, and recording
+ * must not allocate.
+ */
+public class HistogramTest
+{
+    @Test
+    public void buckets_coverEveryValueOnce() throws Exception
+    {
+        long next = 0;
+        for( int k = 0; k < new Histogram().getBucketCount() - 1; k++ )
+        {
+            assertEquals( "bucket " + k + " start", next, Histogram.lowestOf( k ) );
+            assertTrue( Histogram.highestOf( k ) >= Histogram.lowestOf( k ) );
+            assertEquals( k, Histogram.bucketOf( Histogram.lowestOf( k ) ) );
+            assertEquals( k, Histogram.bucketOf( Histogram.highestOf( k ) ) );
+            next = Histogram.highestOf( k ) + 1;
+        }
+    }
+
+    @Test
+    public void percentiles_withinBucketPrecision() throws Exception
+    {
+        Random rnd = new Random( 5 );
+        Histogram h = new Histogram();
+        long[] values = new long[100000];
+        for( int i = 0; i < values.length; i++ )
+        {
+            // log-normal around 1 ms, like frame times
+            values[i] = (long) (1e6*Math.exp( rnd.nextGaussian() ));
+            h.record( values[i] );
+        }
+        Arrays.sort( values );
+
+        for( double q : new double[]{ 0.5, 0.9, 0.99, 0.999 } )
+        {
+            long exact = values[(int) Math.ceil( q*values.length ) - 1];
+            long approx = h.getPercentile( q );
+            assertTrue( "p" + q + " " + approx + " vs " + exact,
+                        Math.abs( approx - exact ) <= exact/32 + 1 );
+        }
+        assertEquals( values[0], h.getMin() );
+        assertEquals( values[values.length - 1], h.getMax() );
+        assertEquals( values.length, h.getCount() );
+    }
+
+    @Test
+    public void record_allocatesNothing() throws Exception
+    {
+        com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        FrameMetrics metrics = new FrameMetrics();
+        StepContext sc = new StepContext();
+
+        // Warm up with the very loop and values that are measured, so
+        // that no JIT compilation falls into the measurement
+        for( int k = 0; k < 3; k++ )
+        {
+            recordAll( metrics, sc );
+        }
+
+        // The probe itself must not count; call it once beforehand.
+        // Measured until two runs agree, in case a late compilation
+        // still lands in one of them
+        mx.getThreadAllocatedBytes( tid );
+        long last = -1;
+        long bytes = -2;
+        for( int k = 0; (k < 5) && (bytes != last); k++ )
+        {
+            last = bytes;
+            long before = mx.getThreadAllocatedBytes( tid );
+            recordAll( metrics, sc );
+            bytes = mx.getThreadAllocatedBytes( tid ) - before;
+        }
+
+        assertEquals( "bytes allocated by recording", 0, bytes );
+    }
+
+    private static void recordAll( FrameMetrics metrics, StepContext sc )
+    {
+        for( int i = 0; i < 1000000; i++ )
+        {
+            metrics.record( i % FrameMetrics.PHASES, (long) i*i );
+            metrics.countStep( sc );
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * InputRecorder / InputTrace must round trip every record, also
+ * across chunk boundaries, and replaying a recorded SimulationLoop
+ * run, with or without sub-steps, friction, sleep or the contact
+ * solver and swept collisions, in float or double, must end in
+ * exactly the state of the live run. Samples recorded on a sensor
+ * thread of their own must all reach the log, in order.
+ */
+public class InputLogTest
+{
+    @Test
+    public void records_roundTripAcrossChunks() throws Exception
+    {
+        File f = File.createTempFile( "input", ".bblog" );
+        f.deleteOnExit();
+
+        // 64 byte chunks: nearly every record needs a new mapping
+        InputRecorder rec = new InputRecorder( f, 64 );
+        rec.table( 0, 1080, 0, 1920 );
+        BallStore s = new BallStore( new BilliardTable(), 2 );
+        s.setVelocity( s.add( 100, 200, 30, 0xFF00FF00 ), 5, -6, 0 );
+        s.mass[0] = 0.2f;
+        rec.balls( s );
+        for( int i = 0; i < 500; i++ )
+        {
+            rec.accel( 1000L*i, i, -i, 0.5f*i );
+            rec.step( 1000L*i + 7, 5 + i/1000., 0.25f*i, -0.25f*i );
+        }
+        long length = rec.length();
+        rec.close();
+        assertNull( rec.getError() );
+        assertEquals( length, f.length() );
+
+        InputTrace trace = new InputTrace( f );
+        assertTrue( trace.next() );
+        assertEquals( InputTrace.TABLE, trace.type );
+        assertEquals( 1920, trace.yMax );
+        assertTrue( trace.next() );
+        assertEquals( InputTrace.BALL, trace.type );
+        assertEquals( 200, trace.y, 0 );
+        assertEquals( -6, trace.vy, 0 );
+        assertEquals( 0xFF00FF00, trace.color );
+        assertEquals( 0.2f, trace.mass, 0 );
+        for( int i = 0; i < 500; i++ )
+        {
+            assertTrue( trace.next() );
+            assertEquals( InputTrace.ACCEL, trace.type );
+            assertEquals( 1000L*i, trace.t );
+            assertEquals( 0.5f*i, trace.z, 0 );
+            assertTrue( trace.next() );
+            assertEquals( InputTrace.STEP, trace.type );
+            assertEquals( 1000L*i + 7, trace.t );
+            assertEquals( 5 + i/1000., trace.tMilli, 0 );
+            assertEquals( -0.25f*i, trace.ay, 0 );
+        }
+        assertFalse( trace.next() );
+    }
+
+    @Test
+    public void replay_endsInStateOfLiveRun() throws Exception
+    {
+        replayLiveRun( false, false, false, false, false );
+    }
+
+    @Test
+    public void replay_endsInStateOfSubSteppedRun() throws Exception
+    {
+        replayLiveRun( true, false, false, false, false );
+    }
+
+    @Test
+    public void replay_endsInStateOfRunWithFriction() throws Exception
+    {
+        replayLiveRun( true, true, false, false, false );
+    }
+
+    @Test
+    public void replay_endsInStateOfRunWithSleep() throws Exception
+    {
+        replayLiveRun( true, true, true, false, false );
+    }
+
+    @Test
+    public void replay_endsInStateOfRunWithContactSolver() throws Exception
+    {
+        replayLiveRun( true, true, false, true, false );
+    }
+
+    @Test
+    public void replay_endsInStateOfDoublePrecisionRun() throws Exception
+    {
+        replayLiveRun( true, false, false, false, true );
+    }
+
+    @Test
+    public void replay_withSamplesFromASensorThread() throws Exception
+    {
+        File f = File.createTempFile( "input", ".bblog" );
+        f.deleteOnExit();
+
+        Scenario scenario = new Scenario();
+        scenario.balls = 200;
+        scenario.radius = 15;
+        BallStore live = scenario.build();
+        final SampleRing samples = new SampleRing( 64 );
+        final InputRecorder rec = new InputRecorder( f );
+        SimulationLoop loop = new SimulationLoop( new World( live ), samples, 5 );
+        loop.setRecorder( rec );
+        loop.setSubStepping( true );
+        loop.setRunning( true );
+        loop.start();
+
+        // As MainActivity: every sample to the loop and the recorder
+        final int sent = 400;
+        Thread sensor = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                for( int i = 0; i < sent; i++ )
+                {
+                    long t = System.nanoTime();
+                    float ax = (i % 40 < 20) ? 3 : -3;
+                    samples.offer( t, ax, 9, 0 );
+                    rec.accel( t, ax, 9, 0 );
+                    try
+                    {
+                        Thread.sleep( 1 );
+                    }
+                    catch( InterruptedException e )
+                    {
+                        return;
+                    }
+                }
+            }
+        };
+        sensor.start();
+        sensor.join();
+        Thread.sleep( 20 );
+        loop.setRunning( false );
+        loop.join();
+        rec.close();
+        assertNull( rec.getError() );
+        assertEquals( 0, rec.getDropped() );
+
+        InputTrace trace = new InputTrace( f );
+        int accel = 0;
+        long last = Long.MIN_VALUE;
+        while( trace.next() )
+        {
+            if( trace.type == InputTrace.ACCEL )
+            {
+                assertTrue( trace.t > last );
+                last = trace.t;
+                accel++;
+            }
+        }
+        assertEquals( sent, accel );
+
+        ReplayDriver replay = new ReplayDriver( new InputTrace( f ) );
+        replay.run();
+        assertTrue( replay.getSteps() > 0 );
+        assertEquals( ReplayDriver.checksum( live ), ReplayDriver.checksum( replay.getStore() ) );
+    }
+
+    private void replayLiveRun( boolean subStepping, boolean friction, boolean sleep,
+                                boolean solver, boolean doublePrecision ) throws Exception
+    {
+        File f = File.createTempFile( "input", ".bblog" );
+        f.deleteOnExit();
+
+        Scenario scenario = new Scenario();
+        scenario.balls = 300;
+        scenario.radius = 15;
+        scenario.friction = friction;
+        scenario.sleep = sleep;
+        scenario.precision = doublePrecision ? "double" : "float";
+        BallStore live = scenario.build();
+        // Short enough for some balls to fall asleep during the run
+        live.sleepTime = 0.05f;
+        SampleRing samples = new SampleRing( 64 );
+
+        InputRecorder rec = new InputRecorder( f );
+        World world = new World( live );
+        if( solver )
+        {
+            // balls of different weight, from 0.1 to 0.3 kg
+            for( int i = 0; i < live.size(); i++ )
+            {
+                live.mass[i] = 0.1f + 0.2f*(i % 7)/6;
+            }
+            world.setSolver( new ContactSolver( live ) );
+            world.setCollider( new SweptCollider( live ) );
+        }
+        SimulationLoop loop = new SimulationLoop( world, samples, 5 );
+        loop.setRecorder( rec );
+        loop.setSubStepping( subStepping );
+        loop.setRunning( true );
+        loop.start();
+        for( int i = 0; i < 20; i++ )
+        {
+            // tilt back and forth; with sleep almost flat, so that
+            // the slower balls come to rest
+            if( sleep ) samples.offer( System.nanoTime(), 0, 0.1f, 0 );
+            else        samples.offer( System.nanoTime(), (i % 2 == 0) ? 2 : -2, 9, 0 );
+            Thread.sleep( 20 );
+        }
+        loop.setRunning( false );
+        loop.join();
+        rec.close();
+
+        ReplayDriver replay = new ReplayDriver( new InputTrace( f ) );
+        replay.run();
+        assertTrue( replay.getSteps() > 0 );
+        assertEquals( ReplayDriver.checksum( live ), ReplayDriver.checksum( replay.getStore() ) );
+        assertEquals( live.dcx[7], replay.getStore().dcx[7], 0 );
+        assertEquals( live.getSleepingCount(), replay.getStore().getSleepingCount() );
+        assertEquals( sleep, live.getSleepingCount() > 0 );
+    }
+}
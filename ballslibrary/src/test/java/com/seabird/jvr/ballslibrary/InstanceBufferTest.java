@@ -0,0 +1,79 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * InstanceBuffer must lay the balls out one instance of FLOATS floats
+ * after the other, interpolated between the two snapshot states, and
+ * grow when the ball count does.
+ */
+public class InstanceBufferTest
+{
+    private static StateSnapshot snapshot( int n )
+    {
+        StateSnapshot s = new StateSnapshot();
+        s.ensureCapacity( n );
+        s.count = n;
+        for( int i = 0; i < n; i++ )
+        {
+            s.x0[i] = 10*i;     s.y0[i] = 100 + i;
+            s.x1[i] = 10*i + 4; s.y1[i] = 100 - i;
+            s.mx[i] = -i;       s.my[i] = 0.5f*i;
+            s.radius[i] = 20 + i;
+            s.color[i] = 0xFF000000 | (i << 16) | (0x80 << 8) | 0xFF;
+        }
+        return s;
+    }
+
+    @Test
+    public void pack_layout()
+    {
+        InstanceBuffer ib = new InstanceBuffer( 2 );
+        StateSnapshot s = snapshot( 3 );
+
+        assertEquals( 3, ib.pack( s, 0.25f ) );
+        assertEquals( 3, ib.getCount() );
+        FloatBuffer b = ib.getBuffer();
+        assertTrue( b.isDirect() );
+        assertEquals( ByteOrder.nativeOrder(), b.order() );
+        assertEquals( 0, b.position() );
+        assertEquals( 3*InstanceBuffer.FLOATS, b.limit() );
+
+        for( int i = 0; i < 3; i++ )
+        {
+            int k = i*InstanceBuffer.FLOATS;
+            assertEquals( 10*i + 1, b.get( k + InstanceBuffer.X ), 1e-6 );
+            assertEquals( 100 + i - 0.5f*i, b.get( k + InstanceBuffer.Y ), 1e-6 );
+            assertEquals( 20 + i, b.get( k + InstanceBuffer.RADIUS ), 0 );
+            assertEquals( -i, b.get( k + InstanceBuffer.MX ), 0 );
+            assertEquals( 0.5f*i, b.get( k + InstanceBuffer.MY ), 0 );
+            assertEquals( i/255f, b.get( k + InstanceBuffer.RED ), 1e-6 );
+            assertEquals( 0x80/255f, b.get( k + InstanceBuffer.GREEN ), 1e-6 );
+            assertEquals( 1, b.get( k + InstanceBuffer.BLUE ), 1e-6 );
+        }
+    }
+
+    @Test
+    public void pack_endsOfTheStep()
+    {
+        InstanceBuffer ib = new InstanceBuffer( 4 );
+        StateSnapshot s = snapshot( 4 );
+
+        ib.pack( s, 0 );
+        assertEquals( s.x0[3], ib.getBuffer().get( 3*InstanceBuffer.FLOATS + InstanceBuffer.X ), 0 );
+        ib.pack( s, 1 );
+        assertEquals( s.x1[3], ib.getBuffer().get( 3*InstanceBuffer.FLOATS + InstanceBuffer.X ), 0 );
+
+        // Fewer balls: the limit shrinks, the buffer stays
+        FloatBuffer b = ib.getBuffer();
+        s.count = 1;
+        assertEquals( 1, ib.pack( s, 1 ) );
+        assertSame( b, ib.getBuffer() );
+        assertEquals( InstanceBuffer.FLOATS, b.limit() );
+    }
+}
@@ -0,0 +1,108 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * A ball rolled over its circumference must be back where it started,
+ * over half of it upside down; the quaternion must stay of unit
+ * length, and the step itself must leave the orientation alone.
+ */
+public class OrientationTest
+{
+    private static final float R = 50;
+    private static final float S = (float) Math.sqrt( 0.5 );
+
+    private static BallStore oneBall()
+    {
+        BallStore store = new BallStore( new BilliardTable( 0, 4000, 0, 4000 ) );
+        store.add( 2000, 2000, R, 0 );
+        return store;
+    }
+
+    // Rolls by steps of dx,dy, refreshing the frame after each; the
+    // centers are not summed up in float, that would drift
+    private static void rollBy( BallStore store, double dx, double dy, int steps )
+    {
+        double x = store.cx[0], y = store.cy[0];
+        for( int k = 1; k <= steps; k++ )
+        {
+            store.cx[0] = (float) (x + k*dx);
+            store.cy[0] = (float) (y + k*dy);
+            store.updateFrame( 0 );
+        }
+    }
+
+    @Test
+    public void circumference_backToStart()
+    {
+        BallStore store = oneBall();
+        int steps = 1000;
+        rollBy( store, 2*Math.PI*R/steps, 0, steps );
+        assertEquals( S, store.nx[0], 1e-4 );
+        assertEquals( 0, store.ny[0], 1e-4 );
+        assertEquals( S, store.nz[0], 1e-4 );
+        assertEquals( 1, store.yy[0], 1e-4 );
+
+        // Half the way along y: N turns about x, its x stays
+        rollBy( store, 0, Math.PI*R/steps, steps );
+        assertEquals( S, store.nx[0], 1e-4 );
+        assertEquals( 0, store.ny[0], 1e-4 );
+        assertEquals( -S, store.nz[0], 1e-4 );
+        assertEquals( -1, store.yy[0], 1e-4 );
+    }
+
+    @Test
+    public void halfCircumference_upsideDown()
+    {
+        BallStore store = oneBall();
+        rollBy( store, Math.PI*R/100, 0, 100 );
+        // About y by 180 deg; the top (z) went forward (+x)
+        assertEquals( -S, store.nx[0], 1e-4 );
+        assertEquals( -S, store.nz[0], 1e-4 );
+        assertEquals( -S, store.ex[0], 1e-4 );
+        assertEquals( S, store.ez[0], 1e-4 );
+
+        store.cx[0] += 0.1f*R;
+        store.updateFrame( 0 );
+        assertTrue( "top moves the way the ball rolls", store.nx[0] < -S );
+    }
+
+    @Test
+    public void lazy_stepLeavesOrientation()
+    {
+        BallStore store = oneBall();
+        store.setVelocity( 0, 3000, -1000, 0 );
+        for( int k = 0; k < 100; k++ )
+        {
+            store.doStep( 0, 0, 0, 10 );
+        }
+        assertEquals( 1, store.qw[0], 0 );
+
+        // Against the rails and back: only where it is now counts
+        store.updateFrame( 0 );
+        BallStore straight = oneBall();
+        rollBy( straight, (store.cx[0] - 2000)/1000, (store.cy[0] - 2000)/1000, 1000 );
+        assertEquals( straight.qw[0], store.qw[0], 1e-4 );
+        assertEquals( straight.qx[0], store.qx[0], 1e-4 );
+        assertEquals( straight.qy[0], store.qy[0], 1e-4 );
+        assertEquals( straight.qz[0], store.qz[0], 1e-4 );
+    }
+
+    @Test
+    public void randomRolls_unitLength()
+    {
+        BallStore store = oneBall();
+        Random rnd = new Random( 7 );
+        for( int k = 0; k < 1000000; k++ )
+        {
+            store.roll( 0, 60*rnd.nextFloat() - 30, 60*rnd.nextFloat() - 30 );
+        }
+        float n = store.qw[0]*store.qw[0] + store.qx[0]*store.qx[0]
+                + store.qy[0]*store.qy[0] + store.qz[0]*store.qz[0];
+        assertEquals( 1, n, 1e-5 );
+    }
+}
@@ -0,0 +1,152 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * The parallel step must give bit for bit the state of the sequential
+ * one, BallStore.stepAll and resolveOverlaps, also in a dense pile,
+ * and count the same rail hits; so must a World with setParallel,
+ * large or below the thresholds where it stays on one thread.
+ */
+public class ParallelStepperTest
+{
+    private static BallStore makeStore( int n )
+    {
+        int side = (int) Math.sqrt( n*1500.0 );
+        BilliardTable table = new BilliardTable( 0, side, 0, side );
+        BallStore store = new BallStore( table, n );
+        Random rnd = new Random( 42 );
+
+        for( int i = 0; i < n; i++ )
+        {
+            float r = 6 + 6*rnd.nextFloat();
+            store.add( r + rnd.nextFloat()*(side - 2*r), r + rnd.nextFloat()*(side - 2*r), r, 0 );
+            store.setVelocity( i, 600*rnd.nextFloat() - 300, 600*rnd.nextFloat() - 300, 0 );
+        }
+        return store;
+    }
+
+    @Test
+    public void parallelStep_equalsSequential() throws Exception
+    {
+        BallStore seq = makeStore( 8000 );
+        BallStore par = makeStore( 8000 );
+        StepContext sc = new StepContext();
+        ForkJoinPool pool = new ForkJoinPool( 4 );
+        ParallelStepper parallel = new ParallelStepper( par, pool );
+
+        for( int step = 0; step < 40; step++ )
+        {
+            seq.stepAll( 0.4f, -0.3f, 16, sc );
+            seq.resolveOverlaps();
+            parallel.step( 0.4f, -0.3f, 16 );
+        }
+        pool.shutdown();
+
+        assertTrue( Arrays.equals( seq.cx, par.cx ) );
+        assertTrue( Arrays.equals( seq.cy, par.cy ) );
+        assertTrue( Arrays.equals( seq.vx, par.vx ) );
+        assertTrue( Arrays.equals( seq.vy, par.vy ) );
+        assertTrue( sc.getRailHits() > 0 );
+        assertEquals( sc.getRailHits(), parallel.getStepContext().getRailHits() );
+    }
+
+    @Test
+    public void pile_equalsSequential() throws Exception
+    {
+        // Tilted, so that the balls pile up against a corner in long
+        // chains of touching balls
+        BallStore seq = makeStore( 2000 );
+        BallStore par = makeStore( 2000 );
+        ForkJoinPool pool = new ForkJoinPool( 3 );
+        ParallelStepper parallel = new ParallelStepper( par, pool );
+
+        for( int step = 0; step < 200; step++ )
+        {
+            seq.stepAll( 3, 8, 10, new StepContext() );
+            seq.resolveOverlaps();
+            parallel.step( 3, 8, 10 );
+        }
+        pool.shutdown();
+
+        assertTrue( Arrays.equals( seq.cx, par.cx ) );
+        assertTrue( Arrays.equals( seq.cy, par.cy ) );
+        assertTrue( Arrays.equals( seq.vx, par.vx ) );
+        assertTrue( Arrays.equals( seq.vy, par.vy ) );
+    }
+
+    @Test
+    public void integration_equalsStepAll() throws Exception
+    {
+        // Far apart balls never touch: only the integration is compared
+        BilliardTable table = new BilliardTable( 0, 100000, 0, 1000 );
+        BallStore a = new BallStore( table, 5000 );
+        BallStore b = new BallStore( table, 5000 );
+        for( int i = 0; i < 5000; i++ )
+        {
+            a.add( 10 + 20*i, 500, 5, 0 );
+            b.add( 10 + 20*i, 500, 5, 0 );
+            a.setVelocity( i, 0, 100 + i % 700, 0 );
+            b.setVelocity( i, 0, 100 + i % 700, 0 );
+        }
+        ForkJoinPool pool = new ForkJoinPool( 3 );
+        ParallelStepper parallel = new ParallelStepper( b, pool );
+        D3 acc = new D3( 0, 1.5f, 0 );
+
+        for( int step = 0; step < 100; step++ )
+        {
+            a.stepAll( acc, 16 );
+            parallel.step( 0, 1.5f, 16 );
+        }
+        pool.shutdown();
+
+        assertTrue( Arrays.equals( a.cy, b.cy ) );
+        assertTrue( Arrays.equals( a.vy, b.vy ) );
+    }
+
+    @Test
+    public void world_equalsSequential() throws Exception
+    {
+        ForkJoinPool pool = new ForkJoinPool( 3 );
+        // 200 balls are below both thresholds, 6000 above
+        for( int n : new int[]{ 200, 6000 } )
+        {
+            World seq = new World( makeStore( n ) );
+            seq.setBatch( false );
+            World par = new World( makeStore( n ) );
+            ParallelStepper parallel = new ParallelStepper( par.getStore(), pool );
+            par.setParallel( parallel );
+
+            for( int step = 0; step < 40; step++ )
+            {
+                seq.step( 3, 8, 10 );
+                par.step( 3, 8, 10 );
+            }
+            if( n < ParallelStepper.MIN_BALLS )
+            {
+                assertTrue( parallel.getPairCount() < ParallelStepper.MIN_PAIRS );
+                assertEquals( parallel.getPairCount(), parallel.getChainLength() );
+            }
+            else
+            {
+                assertTrue( parallel.getPairCount() >= ParallelStepper.MIN_PAIRS );
+                assertTrue( parallel.getChainLength() < parallel.getPairCount() );
+            }
+
+            BallStore a = seq.getStore();
+            BallStore b = par.getStore();
+            assertTrue( Arrays.equals( a.cx, b.cx ) );
+            assertTrue( Arrays.equals( a.cy, b.cy ) );
+            assertTrue( Arrays.equals( a.vx, b.vx ) );
+            assertTrue( Arrays.equals( a.vy, b.vy ) );
+            assertEquals( seq.getStepContext().getRailHits(), par.getStepContext().getRailHits() );
+        }
+        pool.shutdown();
+    }
+}
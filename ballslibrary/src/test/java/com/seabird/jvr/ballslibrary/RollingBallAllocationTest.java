@@ -0,0 +1,52 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * RollingBall.doStep must not produce garbage, also when the ball
+ * keeps hitting the rails. Counts the bytes allocated by this thread
+ * (HotSpot com.sun.management extension) across 1M steps.
+ */
+public class RollingBallAllocationTest
+{
+    private static final int STEPS = 1000000;
+
+    @Test
+    public void doStep_allocatesNothing() throws Exception
+    {
+        com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+
+        // Small tilted table: the ball spends most steps against a rail
+        BilliardTable table = new BilliardTable( 0, 400, 0, 600 );
+        RollingBall ball = new RollingBall( 200, 300, 50, 0, table );
+        D3 v = new D3( 900, -700, 0 );
+        D3 a = new D3( 3.5f, -2.0f, 0 );
+        ball.setVelocity( v );
+
+        for( int i = 0; i < 20000; i++ )
+        {
+            ball.doStep( a, 16 );
+        }
+
+        // The probe itself must not count; call it once beforehand
+        mx.getThreadAllocatedBytes( tid );
+        long before = mx.getThreadAllocatedBytes( tid );
+        for( int i = 0; i < STEPS; i++ )
+        {
+            ball.doStep( a, 16 );
+            if( (i & 0xFFFF) == 0 )
+            {
+                ball.doStep( 16 );
+            }
+        }
+        long after = mx.getThreadAllocatedBytes( tid );
+
+        assertEquals( "bytes allocated by " + STEPS + " steps", 0, after - before );
+    }
+}
@@ -0,0 +1,138 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * RollingBall is a view onto one slot of a BallStore: it must read
+ * and write that slot only, and stepping or colliding balls through
+ * the views must give bit for bit what the store does for all its
+ * balls at once.
+ */
+public class RollingBallTest
+{
+    @Test
+    public void view_readsAndWritesItsSlot()
+    {
+        BallStore store = new BallStore( new BilliardTable( 0, 1000, 0, 1000 ), 3 );
+        store.add( 100, 100, 20, 1 );
+        store.add( 300, 400, 30, 2 );
+        store.add( 500, 600, 40, 3 );
+        RollingBall ball = new RollingBall( store, 1 );
+
+        D3 c = new D3();
+        ball.getCenter( c );
+        assertEquals( 300, c.x, 0 );
+        assertEquals( 400, c.y, 0 );
+        assertEquals( 30, c.z, 0 );
+        assertEquals( 30, ball.getR(), 0 );
+        assertEquals( 2, ball.getColor() );
+        assertSame( store.table, ball.getTable() );
+
+        ball.setVelocity( new D3( 7, -8, 0 ) );
+        assertEquals( 7, store.vx[1], 0 );
+        assertEquals( -8, store.vy[1], 0 );
+        assertEquals( 0, store.vx[0], 0 );
+        assertEquals( 0, store.vx[2], 0 );
+
+        ball.shiftCenter( new D3( 5, 6, 0 ) );
+        assertEquals( 305, store.cx[1], 0 );
+        assertEquals( 406, store.cy[1], 0 );
+        assertEquals( 100, store.cx[0], 0 );
+        assertEquals( 500, store.cx[2], 0 );
+
+        // A ball of its own has a store of its own
+        RollingBall single = new RollingBall( 10, 20, 5, RollingBall.RED, store.table );
+        assertNotSame( store, single.store );
+        assertEquals( 1, single.store.size() );
+        assertEquals( 0, single.index );
+    }
+
+    @Test
+    public void doStep_equalsStepAllOfTheStore()
+    {
+        // Small tilted table, so that the balls keep hitting the rails
+        BilliardTable table = new BilliardTable( 0, 400, 0, 600 );
+        BallStore store = new BallStore( table, 50 );
+        List<RollingBall> balls = new ArrayList<RollingBall>();
+        Random rnd = new Random( 7 );
+
+        for( int i = 0; i < 50; i++ )
+        {
+            float r = 5 + 20*rnd.nextFloat();
+            float x = r + rnd.nextFloat()*(400 - 2*r);
+            float y = r + rnd.nextFloat()*(600 - 2*r);
+            D3 v = new D3( 800*rnd.nextFloat() - 400, 800*rnd.nextFloat() - 400, 0 );
+            store.setVelocity( store.add( x, y, r, i ), v.x, v.y, v.z );
+            RollingBall b = new RollingBall( x, y, r, i, table );
+            b.setVelocity( v );
+            balls.add( b );
+        }
+
+        D3 a = new D3( 3.5f, -2.0f, 0 );
+        for( int step = 0; step < 2000; step++ )
+        {
+            store.stepAll( a, 16 );
+            for( RollingBall b : balls )
+            {
+                b.doStep( a, 16 );
+            }
+        }
+
+        D3 c = new D3();
+        D3 v = new D3();
+        D3 w = new D3();
+        for( int i = 0; i < 50; i++ )
+        {
+            RollingBall b = balls.get( i );
+            b.getCenter( c );
+            b.getVelocity( v );
+            b.getAngularVelocity( w );
+            assertEquals( store.cx[i], c.x, 0 );
+            assertEquals( store.cy[i], c.y, 0 );
+            assertEquals( store.vx[i], v.x, 0 );
+            assertEquals( store.vy[i], v.y, 0 );
+            assertEquals( store.px[i], w.x, 0 );
+            assertEquals( store.py[i], w.y, 0 );
+        }
+    }
+
+    @Test
+    public void checkBallOverlap_acrossStoresEqualsOneStore()
+    {
+        // Three balls in a heap, each pair overlapping
+        BilliardTable table = new BilliardTable( 0, 1000, 0, 1000 );
+        float[][] init = { { 500, 500, 30, 40, 0 }, { 540, 510, 25, -60, 10 }, { 520, 545, 20, 0, -80 } };
+        BallStore store = new BallStore( table, 3 );
+        List<RollingBall> balls = new ArrayList<RollingBall>();
+        for( float[] b : init )
+        {
+            store.setVelocity( store.add( b[0], b[1], b[2], 0 ), b[3], b[4], 0 );
+            RollingBall rb = new RollingBall( b[0], b[1], b[2], 0, table );
+            rb.setVelocity( new D3( b[3], b[4], 0 ) );
+            balls.add( rb );
+        }
+
+        for( int k = 0; k < 3; k++ )
+        {
+            store.checkBallOverlap( k );
+            balls.get( k ).checkBallOverlap( 0, 0, k, balls );
+        }
+
+        for( int i = 0; i < 3; i++ )
+        {
+            BallStore s = balls.get( i ).store;
+            assertEquals( store.cx[i], s.cx[0], 0 );
+            assertEquals( store.cy[i], s.cy[0], 0 );
+            assertEquals( store.vx[i], s.vx[0], 0 );
+            assertEquals( store.vy[i], s.vy[0], 0 );
+        }
+        // and they were pushed apart
+        assertTrue( store.cx[0] != 500 );
+    }
+}
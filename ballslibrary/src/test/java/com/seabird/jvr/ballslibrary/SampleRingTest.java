@@ -0,0 +1,126 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * SampleRing must hand every sample over in order between two
+ * threads, average() must weight each sample by the time it was
+ * in force during the step, and segments() must cut the step at
+ * the sample times.
+ */
+public class SampleRingTest
+{
+    private static final int SAMPLES = 1000000;
+
+    @Test
+    public void twoThreads_everySampleInOrder() throws Exception
+    {
+        final SampleRing ring = new SampleRing( 64 );
+        Thread producer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                for( int i = 0; i < SAMPLES; i++ )
+                {
+                    while( !ring.offer( i, i, -i, 2*i ) )
+                    {
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+        producer.start();
+
+        D3 out = new D3();
+        for( int i = 0; i < SAMPLES; i++ )
+        {
+            while( ring.size() == 0 )
+            {
+                Thread.yield();
+            }
+            assertEquals( i, ring.poll( out ) );
+            assertEquals( (float) i, out.x, 0 );
+            assertEquals( (float) -i, out.y, 0 );
+            assertEquals( (float) 2*i, out.z, 0 );
+        }
+        producer.join();
+        assertEquals( 0, ring.size() );
+    }
+
+    @Test
+    public void average_weightsSamplesByTime() throws Exception
+    {
+        SampleRing ring = new SampleRing( 16 );
+        D3 a = new D3();
+
+        ring.offer( 0, 1, 0, 0 );
+        ring.offer( 5, 3, 0, 0 );
+        ring.offer( 15, 10, 0, 0 );
+
+        // 1 for 5 ns, 3 for 5 ns; the sample at 15 is not due yet
+        ring.average( 0, 10, a );
+        assertEquals( 2, a.x, 1e-6f );
+        assertEquals( 1, ring.size() );
+
+        // 3 held on for 5 ns, then 10
+        ring.average( 10, 20, a );
+        assertEquals( 6.5f, a.x, 1e-6f );
+
+        // no new samples: the last one holds
+        ring.average( 20, 30, a );
+        assertEquals( 10, a.x, 1e-6f );
+
+        // late samples (before the step) set the starting value only
+        ring.offer( 25, -4, 0, 0 );
+        ring.offer( 35, 4, 0, 0 );
+        ring.average( 30, 40, a );
+        assertEquals( 0, a.x, 1e-6f );
+    }
+
+    @Test
+    public void full_dropsAndCounts() throws Exception
+    {
+        SampleRing ring = new SampleRing( 4 );
+        for( int i = 0; i < 6; i++ )
+        {
+            ring.offer( i, i, 0, 0 );
+        }
+        assertEquals( 4, ring.size() );
+        assertEquals( 2, ring.getDropped() );
+    }
+
+    @Test
+    public void segments_cutAtSampleTimes() throws Exception
+    {
+        SampleRing ring = new SampleRing( 16 );
+        long[] dt = new long[3];
+        float[] ax = new float[3], ay = new float[3], az = new float[3];
+
+        ring.offer( 0, 1, 0, 0 );
+        ring.offer( 4, 2, 0, 0 );
+        ring.offer( 7, 3, 0, 0 );
+        int n = ring.segments( 0, 10, dt, ax, ay, az );
+        assertEquals( 3, n );
+        assertEquals( 4, dt[0] );  assertEquals( 1, ax[0], 0 );
+        assertEquals( 3, dt[1] );  assertEquals( 2, ax[1], 0 );
+        assertEquals( 3, dt[2] );  assertEquals( 3, ax[2], 0 );
+
+        // More samples than segments: the last one is their mean
+        ring.offer( 12, 5, 0, 0 );
+        ring.offer( 14, 7, 0, 0 );
+        ring.offer( 16, 9, 0, 0 );
+        n = ring.segments( 10, 20, dt, ax, ay, az );
+        assertEquals( 3, n );
+        assertEquals( 2, dt[0] );  assertEquals( 3, ax[0], 0 );
+        assertEquals( 2, dt[1] );  assertEquals( 5, ax[1], 0 );
+        assertEquals( 6, dt[2] );  assertEquals( (2*7 + 4*9)/6f, ax[2], 1e-6f );
+
+        // No samples: one segment with the held value
+        n = ring.segments( 20, 30, dt, ax, ay, az );
+        assertEquals( 1, n );
+        assertEquals( 10, dt[0] );  assertEquals( 9, ax[0], 0 );
+    }
+}
@@ -0,0 +1,108 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * SimulationLoop.advance must do whole fixed steps only, carry the
+ * rest of the elapsed time over to the next pass, drop a backlog of
+ * more than MAX_CATCHUP steps, and take a new table size before the
+ * next step, on its own thread.
+ */
+public class SimulationLoopTest
+{
+    private static final long MS = 1000000;
+
+    private static SimulationLoop loop( SampleRing samples )
+    {
+        World world = new World( new BilliardTable( 0, 1000, 0, 1000 ) );
+        world.add( 500, 500, 20, 0 );
+        return new SimulationLoop( world, samples, 10 );
+    }
+
+    @Test
+    public void advance_wholeStepsOnly()
+    {
+        SimulationLoop sim = loop( new SampleRing( 16 ) );
+        FrameMetrics metrics = sim.getMetrics();
+
+        // The first pass only sets the clock
+        long t = sim.advance( 0, 1000*MS );
+        assertEquals( 1000*MS, t );
+        assertEquals( 0, metrics.getSteps() );
+
+        t = sim.advance( t, 1025*MS );
+        assertEquals( 1020*MS, t );
+        assertEquals( 2, metrics.getSteps() );
+        StateSnapshot s = sim.getExchange().latest();
+        assertEquals( 1010*MS, s.t0 );
+        assertEquals( 1020*MS, s.t1 );
+
+        // The 5 ms left over and 4 more are not a step yet
+        t = sim.advance( t, 1029*MS );
+        assertEquals( 1020*MS, t );
+        assertEquals( 2, metrics.getSteps() );
+
+        t = sim.advance( t, 1030*MS );
+        assertEquals( 1030*MS, t );
+        assertEquals( 3, metrics.getSteps() );
+        assertEquals( 0, metrics.getDroppedSteps() );
+    }
+
+    @Test
+    public void advance_stepsWithTheSampledAcceleration()
+    {
+        SampleRing samples = new SampleRing( 16 );
+        SimulationLoop sim = loop( samples );
+        BallStore store = sim.getWorld().getStore();
+        samples.offer( 0, 0, 9.81f, 0 );
+
+        long t = sim.advance( 0, 0 );
+        t = sim.advance( t, 100*MS );
+        assertEquals( 10, sim.getMetrics().getSteps() );
+        assertEquals( 500, store.cx[0], 0 );
+        assertTrue( store.cy[0] > 500 );
+        assertEquals( 9.81f, sim.getExchange().latest().ay, 0 );
+    }
+
+    @Test
+    public void advance_dropsTheBacklog()
+    {
+        SimulationLoop sim = loop( new SampleRing( 16 ) );
+        long t = sim.advance( 0, 0 );
+
+        // A second behind: 20 steps are done, the other 80 dropped
+        t = sim.advance( t, 1000*MS );
+        assertEquals( 1000*MS, t );
+        assertEquals( 20, sim.getMetrics().getSteps() );
+        assertEquals( 80, sim.getMetrics().getDroppedSteps() );
+    }
+
+    @Test
+    public void setTableSize_takenBeforeTheNextStep()
+    {
+        SimulationLoop sim = loop( new SampleRing( 16 ) );
+        BilliardTable table = sim.getWorld().getStore().table;
+        long t = sim.advance( 0, 0 );
+        t = sim.advance( t, 20*MS );
+
+        sim.setTableSize( 640, 480 );
+        assertEquals( 1000, table.xMax );
+        assertEquals( 1000, table.yMax );
+
+        // Applied by the loop, which also restarts its clock
+        t = sim.advance( t, 45*MS );
+        assertEquals( 45*MS, t );
+        assertEquals( 0, table.xMin );
+        assertEquals( 640, table.xMax );
+        assertEquals( 0, table.yMin );
+        assertEquals( 480, table.yMax );
+        assertEquals( 2, sim.getMetrics().getSteps() );
+
+        // The same size again changes nothing
+        t = sim.advance( t, 55*MS );
+        assertEquals( 55*MS, t );
+        assertEquals( 3, sim.getMetrics().getSteps() );
+    }
+}
@@ -0,0 +1,127 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * A ball that keeps still must fall asleep after sleepTime and then
+ * not move at all, with stepAll as with the BatchIntegrator; a change
+ * of tilt, a hard hit or wake() must wake it, a ball merely leaning
+ * on it must not.
+ */
+public class SleepTest
+{
+    private static final double STEP = 5;
+
+    private static BallStore twoBalls( boolean friction )
+    {
+        BallStore store = new BallStore( new BilliardTable( 0, 1000, 0, 1000 ) );
+        store.friction = friction;
+        store.sleep = true;
+        store.add( 500, 500, 20, 0 );
+        store.add( 457, 500, 20, 0 );
+        return store;
+    }
+
+    private static void run( BallStore store, float ax, float ay, double seconds )
+    {
+        for( int k = 0; k < seconds*1000/STEP; k++ )
+        {
+            store.stepAll( ax, ay, STEP, new StepContext() );
+            store.resolveOverlaps();
+        }
+    }
+
+    @Test
+    public void still_fallsAsleepAndStaysPut()
+    {
+        BallStore all = twoBalls( true );
+        BallStore batched = twoBalls( true );
+        BatchIntegrator batch = new BatchIntegrator( batched );
+        all.setVelocity( 1, -300, 0, 0 );
+        batched.setVelocity( 1, -300, 0, 0 );
+
+        double t = 0;
+        while( !all.isAsleep( 0 ) )
+        {
+            all.stepAll( 0, 0, STEP, new StepContext() );
+            batch.step( 0, 0, STEP );
+            t += STEP/1000;
+        }
+        assertEquals( all.sleepTime, t, 2*STEP/1000 );
+        assertTrue( batched.isAsleep( 0 ) );
+        assertFalse( "still rolling", all.isAsleep( 1 ) );
+        assertEquals( 1, all.getSleepingCount() );
+
+        // Below wakeTilt and mu_r*g: nothing moves any more
+        run( all, 0.05f, 0, 2 );
+        for( int k = 0; k < 400; k++ )
+        {
+            batch.step( 0.05f, 0, STEP );
+        }
+        for( BallStore s : new BallStore[] { all, batched } )
+        {
+            assertEquals( 2, s.getSleepingCount() );
+            assertEquals( 500, s.cx[0], 0 );
+            assertEquals( 500, s.cy[0], 0 );
+            assertEquals( 0, s.vx[1], 0 );
+        }
+        assertEquals( all.cx[1], batched.cx[1], 0.01 );
+    }
+
+    @Test
+    public void tiltChange_wakesAll()
+    {
+        BallStore store = twoBalls( true );
+        run( store, 0, 0, 1 );
+        assertEquals( 2, store.getSleepingCount() );
+
+        // 5/7 of 1 m/sec*sec beats the rolling friction
+        run( store, 1, 0, 0.1 );
+        assertEquals( 0, store.getSleepingCount() );
+        assertTrue( store.cx[0] > 500 );
+    }
+
+    @Test
+    public void hardHit_wakes_leaningDoesNot()
+    {
+        BallStore store = twoBalls( false );
+        run( store, 0, 0, 1 );
+        assertEquals( 2, store.getSleepingCount() );
+
+        // Slower than sleepSpeed into the sleeper: stopped by it
+        store.setVelocity( 1, 10, 0, 0 );
+        run( store, 0, 0, 1 );
+        assertTrue( store.isAsleep( 0 ) );
+        assertEquals( 500, store.cx[0], 0 );
+        assertEquals( 460, store.cx[1], 0.01 );
+        assertEquals( 0, store.vx[1], 0.01 );
+
+        store.setVelocity( 1, 1000, 0, 0 );
+        run( store, 0, 0, 0.01 );
+        assertFalse( store.isAsleep( 0 ) );
+        assertEquals( 1000, store.vx[0], 1 );
+    }
+
+    @Test
+    public void wake_andBallCounts()
+    {
+        BallStore store = twoBalls( false );
+        FrameMetrics metrics = new FrameMetrics();
+        run( store, 0, 0, 1 );
+        metrics.countBalls( store );
+        assertEquals( 0, metrics.getAwakeBalls() );
+        assertEquals( 2, metrics.getSleepingBalls() );
+
+        store.wake( 1 );
+        assertFalse( store.isAsleep( 1 ) );
+        run( store, 0, 0, STEP/1000 );
+        metrics.countBalls( store );
+        assertEquals( 1, metrics.getAwakeBalls() );
+        assertEquals( 1, metrics.getSleepingBalls() );
+
+        store.wakeAll();
+        assertEquals( 0, store.getSleepingCount() );
+    }
+}
@@ -0,0 +1,93 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * SnapshotExchange must give the reader the newest published snapshot,
+ * keep it until something newer is published, never hand out the
+ * buffer the writer is filling, and never show a half written one
+ * between two threads.
+ */
+public class SnapshotExchangeTest
+{
+    private static final int SNAPSHOTS = 200000;
+
+    private static void fill( StateSnapshot s, int k )
+    {
+        s.ensureCapacity( 4 );
+        s.count = 4;
+        s.t0 = k;
+        s.t1 = k;
+        for( int i = 0; i < 4; i++ )
+        {
+            s.x0[i] = k;
+            s.x1[i] = k;
+        }
+    }
+
+    @Test
+    public void latest_newestPublished()
+    {
+        SnapshotExchange ex = new SnapshotExchange();
+        StateSnapshot first = ex.latest();
+
+        fill( ex.back(), 1 );
+        ex.publish();
+        fill( ex.back(), 2 );
+        ex.publish();
+        StateSnapshot s = ex.latest();
+        assertNotSame( first, s );
+        assertEquals( 2, s.t1 );
+
+        // Nothing new: the same snapshot again
+        assertSame( s, ex.latest() );
+
+        // The buffer being written is never the one being read
+        fill( ex.back(), 3 );
+        assertNotSame( s, ex.back() );
+        assertEquals( 2, ex.latest().t1 );
+        ex.publish();
+        assertEquals( 3, ex.latest().t1 );
+        assertNotSame( ex.latest(), ex.back() );
+    }
+
+    @Test
+    public void twoThreads_noTornSnapshots() throws Exception
+    {
+        final SnapshotExchange ex = new SnapshotExchange();
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                for( int k = 1; k <= SNAPSHOTS; k++ )
+                {
+                    fill( ex.back(), k );
+                    ex.publish();
+                }
+            }
+        };
+        writer.start();
+
+        long last = 0;
+        while( last < SNAPSHOTS )
+        {
+            StateSnapshot s = ex.latest();
+            if( s.count == 0 )
+            {
+                continue;
+            }
+            // Whole and never older than what was seen before
+            assertTrue( s.t1 >= last );
+            for( int i = 0; i < 4; i++ )
+            {
+                assertEquals( s.t1, (long) s.x0[i] );
+                assertEquals( s.t1, (long) s.x1[i] );
+            }
+            last = s.t1;
+        }
+        writer.join();
+    }
+}
@@ -0,0 +1,94 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * With a SweptCollider a ball must not pass through another one,
+ * however long the step; the overlap check alone lets it. Pairs too
+ * slow to be swept must come out exactly as without the collider.
+ */
+public class SweptColliderTest
+{
+    // Two small balls head on, each 60 dp a step: far more than a diameter
+    private static World headOn( boolean swept )
+    {
+        World world = new World( new BilliardTable( 0, 2000, 0, 400 ) );
+        world.add( 500, 200, 10, 0 );
+        world.add( 1500, 200, 10, 0 );
+        world.getStore().setVelocity( 0, 3000, 0, 0 );
+        world.getStore().setVelocity( 1, -3000, 0, 0 );
+        if( swept )
+        {
+            world.setCollider( new SweptCollider( world.getStore() ) );
+        }
+        for( int k = 0; k < 10; k++ )
+        {
+            world.step( 0, 0, 20 );
+        }
+        return world;
+    }
+
+    @Test
+    public void headOn_bouncesInsteadOfPassing()
+    {
+        BallStore passed = headOn( false ).getStore();
+        assertTrue( passed.cx[0] > passed.cx[1] );
+
+        World world = headOn( true );
+        BallStore s = world.getStore();
+        assertTrue( s.cx[0] < s.cx[1] );
+        assertEquals( -3000, s.vx[0], 0 );
+        assertEquals( 3000, s.vx[1], 0 );
+    }
+
+    @Test
+    public void fastBall_doesNotCrossARow()
+    {
+        // A wall of balls across the table and one ball shot at it
+        // at 200 dp a step, with the contact solver
+        World world = new World( new BilliardTable( 0, 400, 0, 2000 ) );
+        for( int k = 0; k < 10; k++ )
+        {
+            world.add( 20 + 40*k, 1000, 20, 0 );
+        }
+        int fast = world.add( 130, 1800, 15, 0 );
+        world.getStore().setVelocity( fast, 0, -20000, 0 );
+        world.setSolver( new ContactSolver( world.getStore() ) );
+        SweptCollider collider = new SweptCollider( world.getStore() );
+        world.setCollider( collider );
+
+        int hits = 0;
+        for( int k = 0; k < 20; k++ )
+        {
+            world.step( 0, 0, 10 );
+            hits += collider.getHitCount();
+            assertTrue( "step " + k, world.getStore().cy[fast] > 1000 );
+        }
+        assertTrue( hits > 0 );
+    }
+
+    @Test
+    public void slowPairs_sameAsWithout()
+    {
+        Scenario s = new Scenario();
+        s.balls = 300;
+        s.width = 800;
+        s.height = 800;
+        s.radius = 12;
+        s.speed = 300;
+        s.ay = 0;
+        World plain = new World( s.build() );
+        World swept = new World( s.build() );
+        SweptCollider collider = new SweptCollider( swept.getStore() );
+        swept.setCollider( collider );
+        for( int k = 0; k < 400; k++ )
+        {
+            plain.step( 0, 0, 5 );
+            swept.step( 0, 0, 5 );
+            assertEquals( 0, collider.getHitCount() );
+        }
+        assertEquals( ReplayDriver.checksum( plain.getStore() ), ReplayDriver.checksum( swept.getStore() ) );
+    }
+}
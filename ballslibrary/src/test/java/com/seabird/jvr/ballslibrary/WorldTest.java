@@ -0,0 +1,97 @@
+package com.seabird.jvr.ballslibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * World.step must do exactly what stepAll and resolveOverlaps do on
+ * the store; removing balls must keep every other ball with all its
+ * state, and the queries must find the balls touching the area.
+ */
+public class WorldTest
+{
+    private static BallStore pile()
+    {
+        Scenario s = new Scenario();
+        s.balls = 300;
+        s.width = 800;
+        s.height = 800;
+        s.radius = 12;
+        return s.build();
+    }
+
+    @Test
+    public void step_sameAsStoreCalls()
+    {
+        BallStore direct = pile();
+        World world = new World( pile() );
+        world.setBatch( false );
+        StepContext ctx = new StepContext();
+        for( int k = 0; k < 400; k++ )
+        {
+            direct.stepAll( 2, 9, 5, ctx );
+            direct.resolveOverlaps();
+            world.step( 2, 9, 5 );
+        }
+        assertEquals( ReplayDriver.checksum( direct ), ReplayDriver.checksum( world.getStore() ) );
+    }
+
+    @Test
+    public void removeAll_keepsTheOthers()
+    {
+        World world = new World( new BilliardTable( 0, 1000, 0, 1000 ) );
+        float[] x = new float[10];
+        float[] y = new float[10];
+        float[] r = new float[10];
+        int[] color = new int[10];
+        for( int k = 0; k < 10; k++ )
+        {
+            x[k] = 50 + 100*k;
+            y[k] = 500;
+            r[k] = 20;
+            color[k] = k;
+        }
+        world.addAll( x, y, r, color, 10 );
+        world.getStore().setVelocity( 9, 0, 100, 0 );
+        assertEquals( 10, world.size() );
+
+        world.removeAll( new int[] { 7, 0, 3, 7, 9 }, 5 );
+        assertEquals( 6, world.size() );
+        boolean[] left = new boolean[10];
+        for( int i = 0; i < world.size(); i++ )
+        {
+            int c = world.getStore().color[i];
+            left[c] = true;
+            assertEquals( x[c], world.getStore().cx[i], 0 );
+            assertEquals( 0, world.getStore().vy[i], 0 );
+        }
+        for( int c : new int[] { 0, 3, 7, 9 } )
+        {
+            assertFalse( left[c] );
+        }
+
+        world.remove( world.size() - 1 );
+        assertEquals( 5, world.size() );
+    }
+
+    @Test
+    public void query_andBallAt()
+    {
+        World world = new World( new BilliardTable( 0, 1000, 0, 1000 ) );
+        world.add( 100, 100, 20, 0 );
+        world.add( 130, 100, 20, 0 );
+        world.add( 500, 500, 20, 0 );
+
+        assertEquals( 1, world.ballAt( 115, 100 ) );
+        assertEquals( 0, world.ballAt( 85, 100 ) );
+        assertEquals( -1, world.ballAt( 300, 300 ) );
+
+        int[] out = new int[1];
+        assertEquals( 2, world.query( 0, 0, 200, 200, out ) );
+        assertEquals( 0, out[0] );
+        // Just outside the corner of the rectangle, not within the radius
+        assertEquals( 0, world.query( 515, 515, 600, 600, new int[4] ) );
+        assertEquals( 1, world.query( 510, 510, 600, 600, new int[4] ) );
+    }
+}
@@ -0,0 +1,77 @@
+package com.seabird.jvr.benchmarks;
+
+import com.seabird.jvr.ballslibrary.BallStore;
+import com.seabird.jvr.ballslibrary.BatchIntegrator;
+import com.seabird.jvr.ballslibrary.Scenario;
+import com.seabird.jvr.ballslibrary.StepContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Integration of all balls (no overlap resolution): ball by ball
+ * with stepAll against BatchIntegrator. With the table flat the
+ * balls fly freely; tilted, they end up resting against the rails
+ * and most of them take the exact path in the batch too.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class BatchIntegratorBenchmark
+{
+    private static final double STEP_MILLI = 5;
+
+    @Param( { "1000", "100000" } )
+    public int balls;
+
+    @Param( { "false", "true" } )
+    public boolean tilted;
+
+    private final StepContext ctx = new StepContext();
+    private Scenario scenario;
+    private BallStore scalar, batched;
+    private BatchIntegrator batch;
+
+    @Setup
+    public void setUp()
+    {
+        scenario = new Scenario();
+        scenario.balls = balls;
+        scenario.width = 8000;
+        scenario.height = 8000;
+        scenario.radius = 4;
+        scenario.ax = tilted ? 2 : 0;
+        scenario.ay = tilted ? 9 : 0;
+        scalar = scenario.build();
+        batched = scenario.build();
+        batch = new BatchIntegrator( batched );
+    }
+
+    @Benchmark
+    public float stepAll()
+    {
+        scalar.stepAll( scenario.ax, scenario.ay, STEP_MILLI, ctx );
+        return scalar.cx[0];
+    }
+
+    @Benchmark
+    public float batch()
+    {
+        batch.step( scenario.ax, scenario.ay, STEP_MILLI, ctx );
+        return batched.cx[0];
+    }
+}
@@ -0,0 +1,86 @@
+package com.seabird.jvr.benchmarks;
+
+import com.seabird.jvr.ballslibrary.BallStore;
+import com.seabird.jvr.ballslibrary.BilliardTable;
+import com.seabird.jvr.ballslibrary.BroadPhase;
+import com.seabird.jvr.ballslibrary.IntPairBuffer;
+import com.seabird.jvr.ballslibrary.SweepAndPrune;
+import com.seabird.jvr.ballslibrary.UniformGrid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Broad phase alone, findPairs, from 100 to 50000 balls at the same
+ * density (a tenth of the table covered): the table grows with the
+ * ball count, so the time per ball should stay about flat. The balls
+ * move a little between invocations, as in a step, so the sweep and
+ * prune order has to be repaired each time.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class BroadPhaseScalingBenchmark
+{
+    private static final float RADIUS = 10;
+
+    @Param( { "100", "1000", "5000", "20000", "50000" } )
+    public int balls;
+
+    @Param( { "grid", "sap" } )
+    public String broadPhase;
+
+    private BallStore store;
+    private BroadPhase bp;
+    private final IntPairBuffer pairs = new IntPairBuffer();
+    private float[] dx, dy;
+    private int tick;
+
+    @Setup
+    public void setUp()
+    {
+        int side = (int) Math.sqrt( balls*Math.PI*RADIUS*RADIUS/0.1 );
+        store = new BallStore( new BilliardTable( 0, side, 0, side ), balls );
+        Random rnd = new Random( 11 );
+        dx = new float[balls];
+        dy = new float[balls];
+        for( int i = 0; i < balls; i++ )
+        {
+            float r = RADIUS*(0.5f + rnd.nextFloat());
+            store.add( r + (side - 2*r)*rnd.nextFloat(), r + (side - 2*r)*rnd.nextFloat(), r, 0 );
+            dx[i] = rnd.nextFloat() - 0.5f;
+            dy[i] = rnd.nextFloat() - 0.5f;
+        }
+        bp = broadPhase.equals( "sap" ) ? new SweepAndPrune() : new UniformGrid();
+        bp.findPairs( store, pairs );
+    }
+
+    @Benchmark
+    public int findPairs()
+    {
+        // Back and forth by up to half a dp
+        float sign = ((tick++ & 1) == 0) ? 1 : -1;
+        for( int i = 0; i < balls; i++ )
+        {
+            store.cx[i] += sign*dx[i];
+            store.cy[i] += sign*dy[i];
+        }
+        bp.findPairs( store, pairs );
+        return pairs.size();
+    }
+}
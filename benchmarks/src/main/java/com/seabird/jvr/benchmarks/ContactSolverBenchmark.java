@@ -0,0 +1,81 @@
+package com.seabird.jvr.benchmarks;
+
+import com.seabird.jvr.ballslibrary.BallStore;
+import com.seabird.jvr.ballslibrary.ContactSolver;
+import com.seabird.jvr.ballslibrary.Scenario;
+import com.seabird.jvr.ballslibrary.World;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One World.step of N balls with the ContactSolver doing exactly
+ * `iterations` passes (tolerance 0), cold or warm started; iterations
+ * 0 is the pairwise resolveOverlaps for comparison. The cost of one
+ * pass is the slope over iterations, the intercept is integration,
+ * broad phase, restitution and separation. Same tilted Scenario as
+ * WorldStepBenchmark, so the balls pile up into lasting contacts.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ContactSolverBenchmark
+{
+    private static final double STEP_MILLI = 5;
+
+    @Param( { "1000", "10000" } )
+    public int balls;
+
+    @Param( { "0", "1", "4", "8", "16" } )
+    public int iterations;
+
+    @Param( { "false", "true" } )
+    public boolean warmStart;
+
+    private Scenario scenario;
+    private BallStore store;
+    private World world;
+
+    @Setup
+    public void setUp()
+    {
+        scenario = new Scenario();
+        scenario.balls = balls;
+        scenario.width = 4000;
+        scenario.height = 4000;
+        scenario.radius = 8;
+        scenario.ax = 2;
+        scenario.ay = 9;
+        store = scenario.build();
+        world = new World( store );
+        if( iterations > 0 )
+        {
+            ContactSolver solver = new ContactSolver( store );
+            solver.iterations = iterations;
+            solver.warmStart = warmStart;
+            solver.tolerance = 0;
+            world.setSolver( solver );
+        }
+    }
+
+    @Benchmark
+    public float step()
+    {
+        world.step( scenario.ax, scenario.ay, STEP_MILLI );
+        return store.cx[0];
+    }
+}
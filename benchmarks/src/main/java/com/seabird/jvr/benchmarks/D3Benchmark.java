@@ -0,0 +1,102 @@
+package com.seabird.jvr.benchmarks;
+
+import com.seabird.jvr.ballslibrary.D3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The D3 vector operations, each on a rotating set of vectors
+ * pointing in all directions (all quadrants for phi); r, phi and
+ * theta also by FastMath, and the squared length that needs no sqrt.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class D3Benchmark
+{
+    private static final int N = 256;      // power of 2
+
+    private final D3[] v = new D3[N];
+    private final D3 out = new D3();
+    private int k;
+
+    @Setup
+    public void setUp()
+    {
+        Random rnd = new Random( 3 );
+        for( int i = 0; i < N; i++ )
+        {
+            v[i] = new D3( 2*rnd.nextFloat() - 1, 2*rnd.nextFloat() - 1, 2*rnd.nextFloat() - 1 );
+        }
+    }
+
+    private D3 next()
+    {
+        return v[k++ & (N - 1)];
+    }
+
+    @Benchmark
+    public float r()
+    {
+        return next().r();
+    }
+
+    @Benchmark
+    public float phi()
+    {
+        return next().phi();
+    }
+
+    @Benchmark
+    public float theta()
+    {
+        return next().theta();
+    }
+
+    @Benchmark
+    public float rSquared()
+    {
+        return next().rSquared();
+    }
+
+    @Benchmark
+    public float rFast()
+    {
+        return next().rFast();
+    }
+
+    @Benchmark
+    public float phiFast()
+    {
+        return next().phiFast();
+    }
+
+    @Benchmark
+    public float thetaFast()
+    {
+        return next().thetaFast();
+    }
+
+    @Benchmark
+    public float xp()
+    {
+        D3 a = next();
+        a.xp( next(), out );
+        return out.x + out.y + out.z;
+    }
+}
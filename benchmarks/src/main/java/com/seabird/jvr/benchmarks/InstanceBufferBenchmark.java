@@ -0,0 +1,90 @@
+package com.seabird.jvr.benchmarks;
+
+import com.seabird.jvr.ballslibrary.InstanceBuffer;
+import com.seabird.jvr.ballslibrary.StateSnapshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of filling the GL instance buffer from a snapshot:
+ * InstanceBuffer.pack (heap array, one bulk put) against putting
+ * each float into the direct buffer.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class InstanceBufferBenchmark
+{
+    @Param( { "100", "1000", "10000" } )
+    public int balls;
+
+    private final StateSnapshot snapshot = new StateSnapshot();
+    private InstanceBuffer packer;
+    private FloatBuffer direct;
+
+    @Setup
+    public void setUp()
+    {
+        Random rnd = new Random( 1 );
+        snapshot.ensureCapacity( balls );
+        snapshot.count = balls;
+        for( int i = 0; i < balls; i++ )
+        {
+            snapshot.x0[i] = 1000*rnd.nextFloat();
+            snapshot.y0[i] = 1000*rnd.nextFloat();
+            snapshot.x1[i] = snapshot.x0[i] + rnd.nextFloat();
+            snapshot.y1[i] = snapshot.y0[i] + rnd.nextFloat();
+            snapshot.mx[i] = rnd.nextFloat();
+            snapshot.my[i] = rnd.nextFloat();
+            snapshot.radius[i] = 20;
+            snapshot.color[i] = rnd.nextInt();
+        }
+        packer = new InstanceBuffer( balls );
+        direct = new InstanceBuffer( balls ).getBuffer();
+    }
+
+    @Benchmark
+    public int pack()
+    {
+        return packer.pack( snapshot, 0.5f );
+    }
+
+    @Benchmark
+    public int putEach()
+    {
+        StateSnapshot s = snapshot;
+        FloatBuffer b = direct;
+        b.clear();
+        for( int i = 0; i < s.count; i++ )
+        {
+            int c = s.color[i];
+            b.put( s.x0[i] + 0.5f*(s.x1[i] - s.x0[i]) );
+            b.put( s.y0[i] + 0.5f*(s.y1[i] - s.y0[i]) );
+            b.put( s.radius[i] );
+            b.put( s.mx[i] );
+            b.put( s.my[i] );
+            b.put( ((c >> 16) & 0xFF)*(1/255f) );
+            b.put( ((c >> 8) & 0xFF)*(1/255f) );
+            b.put( (c & 0xFF)*(1/255f) );
+        }
+        b.flip();
+        return b.limit();
+    }
+}
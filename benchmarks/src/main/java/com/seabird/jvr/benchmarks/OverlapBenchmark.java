@@ -0,0 +1,107 @@
+package com.seabird.jvr.benchmarks;
+
+import com.seabird.jvr.ballslibrary.BallStore;
+import com.seabird.jvr.ballslibrary.BilliardTable;
+import com.seabird.jvr.ballslibrary.SweepAndPrune;
+import com.seabird.jvr.ballslibrary.UniformGrid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overlap check and resolution for all balls of a store: the all
+ * pairs BallStore.checkBallOverlap, and resolveOverlaps with each
+ * broad phase. Balls are scattered at random, so some overlap.
+ * Resolving moves them, so every invocation first restores the
+ * scattered state (a copy of four arrays, included in the time).
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class OverlapBenchmark
+{
+    @Param( { "10", "100", "1000" } )
+    public int balls;
+
+    @Param( { "1000", "4000" } )
+    public int tableSize;
+
+    private BallStore store;
+    private float[] x, y, vx, vy;
+
+    @Setup
+    public void setUp()
+    {
+        store = new BallStore( new BilliardTable( 0, tableSize, 0, tableSize ), balls );
+        Random rnd = new Random( 11 );
+        for( int i = 0; i < balls; i++ )
+        {
+            float r = 10 + 10*rnd.nextFloat();
+            int k = store.add( r + (tableSize - 2*r)*rnd.nextFloat(),
+                               r + (tableSize - 2*r)*rnd.nextFloat(), r, 0xFFFFFFFF );
+            store.setVelocity( k, 400*(rnd.nextFloat() - 0.5f), 400*(rnd.nextFloat() - 0.5f), 0 );
+        }
+        x  = store.cx.clone();
+        y  = store.cy.clone();
+        vx = store.vx.clone();
+        vy = store.vy.clone();
+    }
+
+    private void restore()
+    {
+        System.arraycopy( x,  0, store.cx, 0, balls );
+        System.arraycopy( y,  0, store.cy, 0, balls );
+        System.arraycopy( vx, 0, store.vx, 0, balls );
+        System.arraycopy( vy, 0, store.vy, 0, balls );
+    }
+
+    @Benchmark
+    public float allPairs()
+    {
+        restore();
+        for( int i = 0; i < balls; i++ )
+        {
+            store.checkBallOverlap( i );
+        }
+        return store.cx[0];
+    }
+
+    @Benchmark
+    public float uniformGrid()
+    {
+        restore();
+        if( !(store.getBroadPhase() instanceof UniformGrid) )
+        {
+            store.setBroadPhase( new UniformGrid() );
+        }
+        store.resolveOverlaps();
+        return store.cx[0];
+    }
+
+    @Benchmark
+    public float sweepAndPrune()
+    {
+        restore();
+        if( !(store.getBroadPhase() instanceof SweepAndPrune) )
+        {
+            store.setBroadPhase( new SweepAndPrune() );
+        }
+        store.resolveOverlaps();
+        return store.cx[0];
+    }
+}
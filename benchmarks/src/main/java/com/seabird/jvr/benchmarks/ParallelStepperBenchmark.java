@@ -0,0 +1,87 @@
+package com.seabird.jvr.benchmarks;
+
+import com.seabird.jvr.ballslibrary.BallStore;
+import com.seabird.jvr.ballslibrary.ParallelStepper;
+import com.seabird.jvr.ballslibrary.Scenario;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread scaling of ParallelStepper: one step of N balls with 1 to 8
+ * threads; threads = 0 is the sequential path (no pool) to compare with.
+ * The scene is a Scenario as in WorldStepBenchmark, scattered on a
+ * large table or piled up on a small one. 1000 balls are below
+ * ParallelStepper.MIN_BALLS: there the threads must cost nothing.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ParallelStepperBenchmark
+{
+    private static final double STEP_MILLI = 5;
+
+    @Param( { "1000", "20000", "200000" } )
+    public int balls;
+
+    @Param( { "0", "1", "2", "4", "8" } )
+    public int threads;
+
+    @Param( { "scattered", "piled" } )
+    public String scene;
+
+    private Scenario scenario;
+    private BallStore store;
+    private ForkJoinPool pool;
+    private ParallelStepper stepper;
+
+    @Setup
+    public void setUp()
+    {
+        scenario = new Scenario();
+        scenario.balls = balls;
+        scenario.radius = 4;
+        // Table side for 5 % or 40 % of it covered with balls
+        double cover = scene.equals( "piled" ) ? 0.4 : 0.05;
+        int side = (int) Math.sqrt( balls*Math.PI*16/cover );
+        scenario.width = side;
+        scenario.height = side;
+        scenario.ax = 2;
+        scenario.ay = 9;
+        store = scenario.build();
+        pool = (threads > 0) ? new ForkJoinPool( threads ) : null;
+        stepper = new ParallelStepper( store, pool );
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        if( pool != null )
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public float step()
+    {
+        stepper.step( scenario.ax, scenario.ay, STEP_MILLI );
+        return store.cx[0];
+    }
+}
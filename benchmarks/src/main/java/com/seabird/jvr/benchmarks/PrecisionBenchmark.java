@@ -0,0 +1,81 @@
+package com.seabird.jvr.benchmarks;
+
+import com.seabird.jvr.ballslibrary.BallStore;
+import com.seabird.jvr.ballslibrary.Scenario;
+import com.seabird.jvr.ballslibrary.World;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of float against double precision state: one World.step
+ * of N balls (the tilted Scenario of WorldStepBenchmark), once only
+ * the integration, once with the overlap resolution, which stays float.
+ * The drift side of the choice is scenarios/drift.properties run by
+ * HeadlessRunner with precision=float and precision=double: 1e7 steps
+ * of one ball between elastic rails, "energy drift" in the report.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class PrecisionBenchmark
+{
+    private static final double STEP_MILLI = 5;
+
+    @Param( { "1000", "10000" } )
+    public int balls;
+
+    @Param( { "float", "double" } )
+    public String precision;
+
+    @Param( { "false", "true" } )
+    public boolean friction;
+
+    private Scenario scenario;
+    private BallStore store;
+    private World world;
+
+    @Setup
+    public void setUp()
+    {
+        scenario = new Scenario();
+        scenario.balls = balls;
+        scenario.width = 4000;
+        scenario.height = 4000;
+        scenario.radius = 8;
+        scenario.ax = 2;
+        scenario.ay = 9;
+        scenario.friction = friction;
+        scenario.precision = precision;
+        store = scenario.build();
+        world = new World( store );
+    }
+
+    @Benchmark
+    public float integrate()
+    {
+        world.integrate( scenario.ax, scenario.ay, STEP_MILLI );
+        return store.cx[0];
+    }
+
+    @Benchmark
+    public float step()
+    {
+        world.step( scenario.ax, scenario.ay, STEP_MILLI );
+        return store.cx[0];
+    }
+}
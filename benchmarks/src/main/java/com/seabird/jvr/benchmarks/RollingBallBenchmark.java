@@ -0,0 +1,73 @@
+package com.seabird.jvr.benchmarks;
+
+import com.seabird.jvr.ballslibrary.BilliardTable;
+import com.seabird.jvr.ballslibrary.D3;
+import com.seabird.jvr.ballslibrary.RollingBall;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One RollingBall.doStep, 16 ms at 1 g, in the three cases of the
+ * rail check: no rail reached, one rail hit, a corner (both rails).
+ * Every invocation starts from the same center and velocity, so the
+ * ball does not wander off; resetting is four array stores.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class RollingBallBenchmark
+{
+    private static final double T_MILLI = 16;
+
+    private final D3 accel = new D3( 3f, 9.3f, 0f );
+    private RollingBall ball;
+
+    @Setup
+    public void setUp()
+    {
+        ball = new RollingBall( 500, 500, 50, RollingBall.RED, new BilliardTable( 0, 1000, 0, 1000 ) );
+    }
+
+    private float step( float x, float y, float vx, float vy )
+    {
+        int i = ball.index;
+        ball.store.cx[i] = x;
+        ball.store.cy[i] = y;
+        ball.store.vx[i] = vx;
+        ball.store.vy[i] = vy;
+        ball.doStep( accel, T_MILLI );
+        return ball.store.cx[i] + ball.store.cy[i];
+    }
+
+    @Benchmark
+    public float doStepFree()
+    {
+        return step( 500, 500, 100, -100 );
+    }
+
+    @Benchmark
+    public float doStepRailHit()
+    {
+        return step( 945, 500, 2000, 0 );
+    }
+
+    @Benchmark
+    public float doStepCornerHit()
+    {
+        return step( 945, 945, 2000, 2000 );
+    }
+}
@@ -0,0 +1,72 @@
+package com.seabird.jvr.benchmarks;
+
+import com.seabird.jvr.ballslibrary.BallStore;
+import com.seabird.jvr.ballslibrary.D3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BallStore.solveQuadratic over a table of coefficients, cycled so
+ * the JIT can neither fold the result nor predict the branches.
+ * mixed has real, complex and degenerate (a = 0) cases as they come
+ * out of the rail check; realRoots only real ones.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class SolveQuadraticBenchmark
+{
+    private static final int N = 1024;     // power of 2
+
+    private final float[] mixed = new float[3*N];
+    private final float[] real  = new float[3*N];
+    private final D3 roots = new D3();
+    private int k;
+
+    @Setup
+    public void setUp()
+    {
+        Random rnd = new Random( 7 );
+        for( int i = 0; i < N; i++ )
+        {
+            float a = (i % 8 == 0) ? 0 : 1000*(rnd.nextFloat() - 0.5f);
+            mixed[3*i]     = a;
+            mixed[3*i + 1] = 2000*(rnd.nextFloat() - 0.5f);
+            mixed[3*i + 2] = 100*(rnd.nextFloat() - 0.5f);
+
+            // c < 0 < a: always two real roots
+            real[3*i]     = 1 + 500*rnd.nextFloat();
+            real[3*i + 1] = 2000*(rnd.nextFloat() - 0.5f);
+            real[3*i + 2] = -1 - 100*rnd.nextFloat();
+        }
+    }
+
+    @Benchmark
+    public float mixed()
+    {
+        int i = 3*(k++ & (N - 1));
+        return BallStore.solveQuadratic( mixed[i], mixed[i + 1], mixed[i + 2], roots );
+    }
+
+    @Benchmark
+    public float realRoots()
+    {
+        int i = 3*(k++ & (N - 1));
+        return BallStore.solveQuadratic( real[i], real[i + 1], real[i + 2], roots );
+    }
+}
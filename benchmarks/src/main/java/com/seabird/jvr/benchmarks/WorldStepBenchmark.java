@@ -0,0 +1,81 @@
+package com.seabird.jvr.benchmarks;
+
+import com.seabird.jvr.ballslibrary.BallStore;
+import com.seabird.jvr.ballslibrary.Scenario;
+import com.seabird.jvr.ballslibrary.SweepAndPrune;
+import com.seabird.jvr.ballslibrary.World;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One World.step of N balls: integration with rail reflection, then
+ * overlap resolution, as the simulation loop does it; ball by ball
+ * or with the BatchIntegrator. The world is
+ * a Scenario (radius 8, tilted table) and keeps evolving from one
+ * invocation to the next, so longer runs measure the settled pile
+ * more than the initial scatter.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class WorldStepBenchmark
+{
+    private static final double STEP_MILLI = 5;
+
+    @Param( { "100", "1000", "10000" } )
+    public int balls;
+
+    @Param( { "2000", "8000" } )
+    public int tableSize;
+
+    @Param( { "grid", "sap" } )
+    public String broadPhase;
+
+    @Param( { "false", "true" } )
+    public boolean batch;
+
+    private Scenario scenario;
+    private BallStore store;
+    private World world;
+
+    @Setup
+    public void setUp()
+    {
+        scenario = new Scenario();
+        scenario.balls = balls;
+        scenario.width = tableSize;
+        scenario.height = tableSize;
+        scenario.radius = 8;
+        scenario.ax = 2;
+        scenario.ay = 9;
+        store = scenario.build();
+        if( broadPhase.equals( "sap" ) )
+        {
+            store.setBroadPhase( new SweepAndPrune() );
+        }
+        world = new World( store );
+        world.setBatch( batch );
+    }
+
+    @Benchmark
+    public float step()
+    {
+        world.step( scenario.ax, scenario.ay, STEP_MILLI );
+        return store.cx[0];
+    }
+}
@@ -0,0 +1,130 @@
+package com.seabird.jvr.benchmarks;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Every benchmark of this module must set up, run and tear down
+ * against the current ballslibrary without JMH: each @Param value
+ * once (the other parameters at their first value), each @Benchmark
+ * method a few times, and no result may be NaN. Timing is left to
+ * gradlew :benchmarks:jmh.
+ */
+public class BenchmarkSmokeTest
+{
+    private static final int CALLS = 3;
+
+    @Test
+    public void allBenchmarks_run() throws Exception
+    {
+        List<Class<?>> classes = benchmarkClasses();
+        assertTrue( classes.size() > 0 );
+        for( Class<?> c : classes )
+        {
+            List<Field> params = fields( c );
+            // First values throughout, then each other value in turn
+            run( c, params, null, 0 );
+            for( Field p : params )
+            {
+                String[] values = p.getAnnotation( Param.class ).value();
+                for( int k = 1; k < values.length; k++ )
+                {
+                    run( c, params, p, k );
+                }
+            }
+        }
+    }
+
+    // The @State classes of this package with @Benchmark methods
+    private static List<Class<?>> benchmarkClasses() throws Exception
+    {
+        String pkg = BenchmarkSmokeTest.class.getPackage().getName();
+        File dir = new File( BenchmarkSmokeTest.class.getClassLoader()
+                             .getResource( pkg.replace( '.', '/' ) ).toURI() );
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        for( String name : dir.list() )
+        {
+            if( !name.endsWith( ".class" ) || name.contains( "$" ) ) continue;
+            Class<?> c = Class.forName( pkg + "." + name.substring( 0, name.length() - 6 ) );
+            if( c.isAnnotationPresent( State.class ) && !methods( c, Benchmark.class ).isEmpty() )
+            {
+                classes.add( c );
+            }
+        }
+        return classes;
+    }
+
+    private static List<Field> fields( Class<?> c )
+    {
+        List<Field> params = new ArrayList<Field>();
+        for( Field f : c.getFields() )
+        {
+            if( f.isAnnotationPresent( Param.class ) ) params.add( f );
+        }
+        return params;
+    }
+
+    private static List<Method> methods( Class<?> c, Class<? extends java.lang.annotation.Annotation> a )
+    {
+        List<Method> found = new ArrayList<Method>();
+        for( Method m : c.getMethods() )
+        {
+            if( m.isAnnotationPresent( a ) ) found.add( m );
+        }
+        return found;
+    }
+
+    // One instance with parameter p at its k-th value, all others at
+    // their first
+    private static void run( Class<?> c, List<Field> params, Field p, int k ) throws Exception
+    {
+        Object bench = c.newInstance();
+        String where = c.getSimpleName();
+        for( Field f : params )
+        {
+            String value = f.getAnnotation( Param.class ).value()[(f == p) ? k : 0];
+            set( bench, f, value );
+            where += " " + f.getName() + "=" + value;
+        }
+        for( Method m : methods( c, Setup.class ) )
+        {
+            m.invoke( bench );
+        }
+        for( Method m : methods( c, Benchmark.class ) )
+        {
+            for( int i = 0; i < CALLS; i++ )
+            {
+                Object result = m.invoke( bench );
+                if( result instanceof Number )
+                {
+                    assertFalse( where + " " + m.getName(), Double.isNaN( ((Number) result).doubleValue() ) );
+                }
+            }
+        }
+        for( Method m : methods( c, TearDown.class ) )
+        {
+            m.invoke( bench );
+        }
+    }
+
+    private static void set( Object bench, Field f, String value ) throws Exception
+    {
+        Class<?> t = f.getType();
+        if( t == int.class )          f.setInt( bench, Integer.parseInt( value ) );
+        else if( t == boolean.class ) f.setBoolean( bench, Boolean.parseBoolean( value ) );
+        else if( t == float.class )   f.setFloat( bench, Float.parseFloat( value ) );
+        else                          f.set( bench, value );
+    }
+}